@@ -10,4 +10,455 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Export export = new Export();
+
+    private final FileStore fileStore = new FileStore();
+
+    private final Upload upload = new Upload();
+
+    private final Mail mail = new Mail();
+
+    public Export getExport() {
+        return export;
+    }
+
+    public FileStore getFileStore() {
+        return fileStore;
+    }
+
+    public Upload getUpload() {
+        return upload;
+    }
+
+    public Mail getMail() {
+        return mail;
+    }
+
+    public static class Export {
+
+        /** Number of rows the JDBC driver fetches per round trip from the export cursor. */
+        private int fetchSize = 1000;
+
+        /** Number of users whose authorities are looked up with a single query. */
+        private int batchSize = 500;
+
+        /** Number of rows an xlsx export keeps in memory before flushing them to disk. */
+        private int rowAccessWindow = 100;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getRowAccessWindow() {
+            return rowAccessWindow;
+        }
+
+        public void setRowAccessWindow(int rowAccessWindow) {
+            this.rowAccessWindow = rowAccessWindow;
+        }
+    }
+
+    public static class FileStore {
+
+        /** Directory where the content-addressed files are stored. */
+        private String root = "data/files";
+
+        public String getRoot() {
+            return root;
+        }
+
+        public void setRoot(String root) {
+            this.root = root;
+        }
+    }
+
+    public static class Upload {
+
+        /** Number of rows validated together by an import worker and written in one transaction. */
+        private int chunkSize = 500;
+
+        /** Number of rows written by one JDBC batch of the user upsert. */
+        private int upsertBatchSize = 250;
+
+        /** Number of shared strings of a workbook kept in heap, the others are read from disk. */
+        private int sharedStringsCacheSize = 10000;
+
+        /** Number of import worker threads, shared by all the imports. */
+        private int workers = Runtime.getRuntime().availableProcessors();
+
+        /** Number of chunks an import reads ahead of the chunk being written. */
+        private int maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+
+        /** Number of import jobs run at the same time. */
+        private int jobWorkers = 2;
+
+        /** Number of import jobs waiting for a free job worker, further uploads are refused. */
+        private int jobQueueCapacity = 20;
+
+        /** Number of uploaded files imported at the same time, shared by all the import jobs. */
+        private int fileWorkers = 4;
+
+        /** Number of files of one import job imported at the same time. */
+        private int maxParallelFilesPerJob = 2;
+
+        /** Maximum number of entries of an uploaded xlsx file. */
+        private int maxZipEntries = 10000;
+
+        /** Maximum total size of the inflated entries of an uploaded xlsx file, in bytes. */
+        private long maxUncompressedSize = 2L * 1024 * 1024 * 1024;
+
+        /** Maximum ratio between the inflated and the compressed size of an xlsx entry. */
+        private int maxCompressionRatio = 100;
+
+        /** Time after which a Server-Sent Events subscription to an import job is closed. */
+        private long eventTimeoutMillis = 30 * 60 * 1000L;
+
+        /** Directory where the uploaded files are spooled until their import job is finished. */
+        private String spoolDirectory = "data/uploads";
+
+        /** Maximum total size of the spooled files of all the uploads, in bytes. */
+        private long maxSpooledSize = 4L * 1024 * 1024 * 1024;
+
+        /** Number of days during which a file identical to an imported one is not imported again. */
+        private int duplicateRetentionDays = 7;
+
+        /** Maximum size of a file uploaded in chunks, in bytes. */
+        private long maxChunkedUploadSize = 512L * 1024 * 1024;
+
+        /** Number of hours without a chunk nor a commit before an upload session is removed. */
+        private int uploadSessionExpiryHours = 24;
+
+        /**
+         * Number of minutes after which a queued or running import job which was not modified is
+         * failed, as its node was stopped. The node running a job refreshes it every minute.
+         */
+        private int staleJobMinutes = 30;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getUpsertBatchSize() {
+            return upsertBatchSize;
+        }
+
+        public void setUpsertBatchSize(int upsertBatchSize) {
+            this.upsertBatchSize = upsertBatchSize;
+        }
+
+        public int getSharedStringsCacheSize() {
+            return sharedStringsCacheSize;
+        }
+
+        public void setSharedStringsCacheSize(int sharedStringsCacheSize) {
+            this.sharedStringsCacheSize = sharedStringsCacheSize;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public int getMaxPendingChunks() {
+            return maxPendingChunks;
+        }
+
+        public void setMaxPendingChunks(int maxPendingChunks) {
+            this.maxPendingChunks = maxPendingChunks;
+        }
+
+        public int getJobWorkers() {
+            return jobWorkers;
+        }
+
+        public void setJobWorkers(int jobWorkers) {
+            this.jobWorkers = jobWorkers;
+        }
+
+        public int getJobQueueCapacity() {
+            return jobQueueCapacity;
+        }
+
+        public void setJobQueueCapacity(int jobQueueCapacity) {
+            this.jobQueueCapacity = jobQueueCapacity;
+        }
+
+        public int getFileWorkers() {
+            return fileWorkers;
+        }
+
+        public void setFileWorkers(int fileWorkers) {
+            this.fileWorkers = fileWorkers;
+        }
+
+        public int getMaxParallelFilesPerJob() {
+            return maxParallelFilesPerJob;
+        }
+
+        public void setMaxParallelFilesPerJob(int maxParallelFilesPerJob) {
+            this.maxParallelFilesPerJob = maxParallelFilesPerJob;
+        }
+
+        public int getMaxZipEntries() {
+            return maxZipEntries;
+        }
+
+        public void setMaxZipEntries(int maxZipEntries) {
+            this.maxZipEntries = maxZipEntries;
+        }
+
+        public long getMaxUncompressedSize() {
+            return maxUncompressedSize;
+        }
+
+        public void setMaxUncompressedSize(long maxUncompressedSize) {
+            this.maxUncompressedSize = maxUncompressedSize;
+        }
+
+        public int getMaxCompressionRatio() {
+            return maxCompressionRatio;
+        }
+
+        public void setMaxCompressionRatio(int maxCompressionRatio) {
+            this.maxCompressionRatio = maxCompressionRatio;
+        }
+
+        public long getEventTimeoutMillis() {
+            return eventTimeoutMillis;
+        }
+
+        public void setEventTimeoutMillis(long eventTimeoutMillis) {
+            this.eventTimeoutMillis = eventTimeoutMillis;
+        }
+
+        public String getSpoolDirectory() {
+            return spoolDirectory;
+        }
+
+        public void setSpoolDirectory(String spoolDirectory) {
+            this.spoolDirectory = spoolDirectory;
+        }
+
+        public long getMaxSpooledSize() {
+            return maxSpooledSize;
+        }
+
+        public void setMaxSpooledSize(long maxSpooledSize) {
+            this.maxSpooledSize = maxSpooledSize;
+        }
+
+        public int getDuplicateRetentionDays() {
+            return duplicateRetentionDays;
+        }
+
+        public void setDuplicateRetentionDays(int duplicateRetentionDays) {
+            this.duplicateRetentionDays = duplicateRetentionDays;
+        }
+
+        public long getMaxChunkedUploadSize() {
+            return maxChunkedUploadSize;
+        }
+
+        public void setMaxChunkedUploadSize(long maxChunkedUploadSize) {
+            this.maxChunkedUploadSize = maxChunkedUploadSize;
+        }
+
+        public int getUploadSessionExpiryHours() {
+            return uploadSessionExpiryHours;
+        }
+
+        public void setUploadSessionExpiryHours(int uploadSessionExpiryHours) {
+            this.uploadSessionExpiryHours = uploadSessionExpiryHours;
+        }
+
+        public int getStaleJobMinutes() {
+            return staleJobMinutes;
+        }
+
+        public void setStaleJobMinutes(int staleJobMinutes) {
+            this.staleJobMinutes = staleJobMinutes;
+        }
+    }
+
+    public static class Mail {
+
+        /** Address the mails are sent from. */
+        private String from = "skeleton@localhost";
+
+        /** URL of the application, for the links of the mails. */
+        private String baseUrl = "http://localhost:8080";
+
+        /**
+         * Whether the parsed mail templates and their resolved messages are kept for the life of
+         * the application; disable to edit templates and messages without a restart.
+         */
+        private boolean templateCache = true;
+
+        /** Number of outbox mails sent over one SMTP connection. */
+        private int batchSize = 100;
+
+        /** Delay between two runs of the dispatcher draining the outbox. */
+        private long dispatchIntervalMillis = 5000;
+
+        /** Number of mail threads, each rendering then sending one batch at a time. */
+        private int workers = 2;
+
+        /** Time after which a batch being sent is considered lost and its mails sent again. */
+        private long claimTimeoutSeconds = 300;
+
+        /** Number of attempts to send a mail before it is marked as dead. */
+        private int maxAttempts = 5;
+
+        /** Delay before the first retry of a mail, doubled after each failed attempt. */
+        private long retryDelaySeconds = 60;
+
+        /** Maximum delay between two attempts to send a mail. */
+        private long maxRetryDelaySeconds = 3600;
+
+        /** Number of days during which the sent mails are kept in the outbox. */
+        private int sentRetentionDays = 7;
+
+        /**
+         * Rate at which each node writes the mails of a bulk mail to the outbox. The nodes do not
+         * share it, so a cluster writes up to this rate times the number of nodes.
+         */
+        private int bulkMessagesPerSecond = 20;
+
+        /** Delay between two batches of a bulk mail. */
+        private long bulkIntervalMillis = 1000;
+
+        /** Number of threads rendering the mails of a batch of a bulk mail, one locale each. */
+        private int bulkWorkers = 2;
+
+        public String getFrom() {
+            return from;
+        }
+
+        public void setFrom(String from) {
+            this.from = from;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public boolean isTemplateCache() {
+            return templateCache;
+        }
+
+        public void setTemplateCache(boolean templateCache) {
+            this.templateCache = templateCache;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getDispatchIntervalMillis() {
+            return dispatchIntervalMillis;
+        }
+
+        public void setDispatchIntervalMillis(long dispatchIntervalMillis) {
+            this.dispatchIntervalMillis = dispatchIntervalMillis;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public long getClaimTimeoutSeconds() {
+            return claimTimeoutSeconds;
+        }
+
+        public void setClaimTimeoutSeconds(long claimTimeoutSeconds) {
+            this.claimTimeoutSeconds = claimTimeoutSeconds;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getRetryDelaySeconds() {
+            return retryDelaySeconds;
+        }
+
+        public void setRetryDelaySeconds(long retryDelaySeconds) {
+            this.retryDelaySeconds = retryDelaySeconds;
+        }
+
+        public long getMaxRetryDelaySeconds() {
+            return maxRetryDelaySeconds;
+        }
+
+        public void setMaxRetryDelaySeconds(long maxRetryDelaySeconds) {
+            this.maxRetryDelaySeconds = maxRetryDelaySeconds;
+        }
+
+        public int getSentRetentionDays() {
+            return sentRetentionDays;
+        }
+
+        public void setSentRetentionDays(int sentRetentionDays) {
+            this.sentRetentionDays = sentRetentionDays;
+        }
+
+        public int getBulkMessagesPerSecond() {
+            return bulkMessagesPerSecond;
+        }
+
+        public void setBulkMessagesPerSecond(int bulkMessagesPerSecond) {
+            this.bulkMessagesPerSecond = bulkMessagesPerSecond;
+        }
+
+        public long getBulkIntervalMillis() {
+            return bulkIntervalMillis;
+        }
+
+        public void setBulkIntervalMillis(long bulkIntervalMillis) {
+            this.bulkIntervalMillis = bulkIntervalMillis;
+        }
+
+        public int getBulkWorkers() {
+            return bulkWorkers;
+        }
+
+        public void setBulkWorkers(int bulkWorkers) {
+            this.bulkWorkers = bulkWorkers;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.lebinh.skeleton.config;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
@@ -24,7 +25,11 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
   private final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
-  public AsyncConfiguration() {}
+  private final ApplicationProperties applicationProperties;
+
+  public AsyncConfiguration(ApplicationProperties applicationProperties) {
+    this.applicationProperties = applicationProperties;
+  }
 
   @Override
   @Bean(name = "taskExecutor")
@@ -39,6 +44,121 @@ public class AsyncConfiguration implements AsyncConfigurer {
     return new ExceptionHandlingAsyncTaskExecutor(executor);
   }
 
+  /**
+   * Bounded pool validating the chunks of the uploaded files. When it is saturated, the thread
+   * reading the file validates its chunk itself, which slows down the reading instead of queueing
+   * without limit.
+   */
+  @Bean(name = "importWorkerExecutor")
+  public ThreadPoolTaskExecutor importWorkerExecutor() {
+    log.debug("Creating Import Worker Executor");
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(upload.getWorkers());
+    executor.setMaxPoolSize(upload.getWorkers());
+    executor.setQueueCapacity(upload.getWorkers() * upload.getMaxPendingChunks());
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setThreadNamePrefix("skeleton-Import-");
+    return executor;
+  }
+
+  /**
+   * Pool running the import jobs, separate from the task executor so that long imports do not
+   * delay the other asynchronous tasks. Uploads are refused once its queue is full.
+   */
+  @Bean(name = "importJobExecutor")
+  public ExceptionHandlingAsyncTaskExecutor importJobExecutor() {
+    log.debug("Creating Import Job Executor");
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(upload.getJobWorkers());
+    executor.setMaxPoolSize(upload.getJobWorkers());
+    executor.setQueueCapacity(upload.getJobQueueCapacity());
+    executor.setThreadNamePrefix("skeleton-ImportJob-");
+    return new ExceptionHandlingAsyncTaskExecutor(executor);
+  }
+
+  /**
+   * Pool importing the files of the running import jobs, whose size bounds the files imported at
+   * the same time by all the jobs. Each job submits at most maxParallelFilesPerJob files at a time,
+   * so the queue can hold the files of every job worker.
+   */
+  @Bean(name = "importFileExecutor")
+  public ThreadPoolTaskExecutor importFileExecutor() {
+    log.debug("Creating Import File Executor");
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(upload.getFileWorkers());
+    executor.setMaxPoolSize(upload.getFileWorkers());
+    executor.setQueueCapacity(upload.getJobWorkers() * upload.getMaxParallelFilesPerJob());
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setThreadNamePrefix("skeleton-ImportFile-");
+    return executor;
+  }
+
+  /**
+   * Pool saving the progress of the running import jobs and sending their events, so that the
+   * threads importing the files wait neither for the database nor for the clients. A job has at
+   * most one flush at a time, so one thread per job worker is enough; when it is saturated, the
+   * thread importing the file flushes the progress itself.
+   */
+  @Bean(name = "importEventExecutor")
+  public ThreadPoolTaskExecutor importEventExecutor() {
+    log.debug("Creating Import Event Executor");
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(upload.getJobWorkers());
+    executor.setMaxPoolSize(upload.getJobWorkers());
+    executor.setQueueCapacity(upload.getJobWorkers());
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setThreadNamePrefix("skeleton-ImportEvent-");
+    return executor;
+  }
+
+  /** Statistics of the tasks of the mail executor. */
+  @Bean
+  public ExecutorStats mailExecutorStats() {
+    return new ExecutorStats();
+  }
+
+  /**
+   * Pool rendering and sending the batches of the mail outbox, separate from the task executor so
+   * that a slow SMTP server does not delay the other asynchronous tasks. The dispatcher keeps at
+   * most one pending stage per worker, so the queue never holds more than one task per worker.
+   */
+  @Bean(name = "mailExecutor")
+  public ThreadPoolTaskExecutor mailExecutor() {
+    log.debug("Creating Mail Executor");
+    ApplicationProperties.Mail mail = applicationProperties.getMail();
+    ExecutorStats stats = mailExecutorStats();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(mail.getWorkers());
+    executor.setMaxPoolSize(mail.getWorkers());
+    executor.setQueueCapacity(mail.getWorkers());
+    executor.setTaskDecorator(stats);
+    executor.setRejectedExecutionHandler(
+        stats.countRejections(new ThreadPoolExecutor.AbortPolicy()));
+    executor.setThreadNamePrefix("skeleton-Mail-");
+    return executor;
+  }
+
+  /**
+   * Pool rendering the mails of a batch of a bulk mail, one locale at a time. When it is
+   * saturated, the thread writing the batch renders the locale itself.
+   */
+  @Bean(name = "bulkMailExecutor")
+  public ThreadPoolTaskExecutor bulkMailExecutor() {
+    log.debug("Creating Bulk Mail Executor");
+    ApplicationProperties.Mail mail = applicationProperties.getMail();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(mail.getBulkWorkers());
+    executor.setMaxPoolSize(mail.getBulkWorkers());
+    executor.setQueueCapacity(mail.getBulkWorkers());
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setThreadNamePrefix("skeleton-BulkMail-");
+    return executor;
+  }
+
   @Override
   public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
     return new SimpleAsyncUncaughtExceptionHandler();
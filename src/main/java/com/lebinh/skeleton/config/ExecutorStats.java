@@ -0,0 +1,133 @@
+package com.lebinh.skeleton.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Statistics of the tasks of an executor, collected by decorating them: the tasks queued and
+ * running, and the time they waited in the queue and ran.
+ *
+ * <p>Set as the task decorator of a {@link
+ * org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor}, with its rejected execution
+ * handler wrapped by {@link #countRejections}, so that a rejected task leaves the queue count.
+ */
+public class ExecutorStats implements TaskDecorator {
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final LongAdder completed = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder waitNanos = new LongAdder();
+
+  private final LongAdder runNanos = new LongAdder();
+
+  private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+  @Override
+  public Runnable decorate(Runnable task) {
+    long submitted = System.nanoTime();
+    queued.incrementAndGet();
+    return () -> {
+      long started = System.nanoTime();
+      queued.decrementAndGet();
+      active.incrementAndGet();
+      waitNanos.add(started - submitted);
+      maxWaitNanos.accumulate(started - submitted);
+      try {
+        task.run();
+      } catch (RuntimeException | Error e) {
+        failed.increment();
+        throw e;
+      } finally {
+        runNanos.add(System.nanoTime() - started);
+        active.decrementAndGet();
+        completed.increment();
+      }
+    };
+  }
+
+  /**
+   * @param handler the handler of the rejected tasks
+   * @return a handler counting the rejected tasks before delegating to the given one
+   */
+  public RejectedExecutionHandler countRejections(RejectedExecutionHandler handler) {
+    return (task, executor) -> {
+      queued.decrementAndGet();
+      rejected.increment();
+      handler.rejectedExecution(task, executor);
+    };
+  }
+
+  /** @return the number of tasks waiting for a thread */
+  public int getQueued() {
+    return queued.get();
+  }
+
+  /** @return the number of tasks running */
+  public int getActive() {
+    return active.get();
+  }
+
+  /** @return the number of tasks run, failed or not */
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  /** @return the number of tasks which threw an exception */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /** @return the average time the run tasks waited in the queue */
+  public double getAverageWaitMillis() {
+    return averageMillis(waitNanos.sum());
+  }
+
+  /** @return the average time the tasks ran */
+  public double getAverageRunMillis() {
+    return averageMillis(runNanos.sum());
+  }
+
+  public double getMaxWaitMillis() {
+    return maxWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private double averageMillis(long totalNanos) {
+    long count = completed.sum();
+    return count == 0 ? 0 : totalNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public String toString() {
+    return "ExecutorStats{"
+        + "queued="
+        + getQueued()
+        + ", active="
+        + getActive()
+        + ", completed="
+        + getCompleted()
+        + ", failed="
+        + getFailed()
+        + ", rejected="
+        + getRejected()
+        + ", averageWaitMillis="
+        + getAverageWaitMillis()
+        + ", averageRunMillis="
+        + getAverageRunMillis()
+        + "}";
+  }
+}
@@ -15,13 +15,17 @@ public class ThymeleafConfiguration {
 
   @Bean
   @Description("Thymeleaf template resolver serving HTML 5 emails")
-  public ClassLoaderTemplateResolver emailTemplateResolver() {
+  public ClassLoaderTemplateResolver emailTemplateResolver(
+      ApplicationProperties applicationProperties) {
     ClassLoaderTemplateResolver emailTemplateResolver = new ClassLoaderTemplateResolver();
     emailTemplateResolver.setPrefix("mails/");
     emailTemplateResolver.setSuffix(".html");
     emailTemplateResolver.setTemplateMode("HTML5");
     emailTemplateResolver.setCharacterEncoding("UTF-8");
     emailTemplateResolver.setOrder(1);
+    // parsed once, then kept for the life of the application
+    emailTemplateResolver.setCacheable(applicationProperties.getMail().isTemplateCache());
+    emailTemplateResolver.setCacheTTLMs(null);
     return emailTemplateResolver;
   }
 }
@@ -0,0 +1,26 @@
+package com.lebinh.skeleton.constant;
+
+/** Layout of the user import workbook accepted by /api/upload. */
+public final class ImportConstant {
+
+  public static final String FILE_EXTENSION = "xlsx";
+
+  // A CSV file holds the data sheet only, with the same header
+  public static final String CSV_EXTENSION = "csv";
+
+  // The workbook has an info sheet followed by the data sheet
+  public static final String INFO_SHEET = "info";
+  public static final String DATA_SHEET = "users";
+  public static final int NUMBER_OF_SHEETS = 2;
+
+  // The first row of the data sheet is the header, naming these columns in any order
+  public static final int HEADER_ROW = 0;
+  public static final String[] DATA_COLUMNS = {
+    "login", "first_name", "last_name", "email", "lang_key", "activated"
+  };
+
+  // Maximum number of row errors kept in an import result
+  public static final int MAX_REPORTED_ERRORS = 100;
+
+  private ImportConstant() {}
+}
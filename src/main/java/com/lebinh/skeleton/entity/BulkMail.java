@@ -0,0 +1,170 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * A mail sent by an administrator to all the activated users, written to the outbox one batch of
+ * users at a time. The id of the last user of the written batches is the checkpoint from which the
+ * mail resumes after a restart.
+ */
+@Entity
+@Table(name = "sys_bulk_mail")
+public class BulkMail extends AbstractAuditingEntity implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The states of a bulk mail: being written to the outbox, written, or cancelled before. */
+  public enum Status {
+    RUNNING,
+    COMPLETED,
+    CANCELLED
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Size(max = 1000)
+  @Column(length = 1000, nullable = false)
+  private String subject;
+
+  /** The text of the mail, written in the template between the greeting and the signature. */
+  @NotNull
+  @Lob
+  @Column(nullable = false)
+  private String content;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  @Column(length = 20, nullable = false)
+  private Status status;
+
+  @Column(name = "last_user_id", nullable = false)
+  private long lastUserId;
+
+  @Column(name = "queued_count", nullable = false)
+  private long queuedCount;
+
+  @Column(name = "finished_date")
+  private Instant finishedDate;
+
+  /** Guards the checkpoint, so that a batch written by two nodes is only committed once. */
+  @Version
+  @Column(nullable = false)
+  private long version;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public void setSubject(String subject) {
+    this.subject = subject;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public long getLastUserId() {
+    return lastUserId;
+  }
+
+  public void setLastUserId(long lastUserId) {
+    this.lastUserId = lastUserId;
+  }
+
+  public long getQueuedCount() {
+    return queuedCount;
+  }
+
+  public void setQueuedCount(long queuedCount) {
+    this.queuedCount = queuedCount;
+  }
+
+  public Instant getFinishedDate() {
+    return finishedDate;
+  }
+
+  public void setFinishedDate(Instant finishedDate) {
+    this.finishedDate = finishedDate;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    BulkMail bulkMail = (BulkMail) o;
+    return !(bulkMail.getId() == null || getId() == null)
+        && Objects.equals(getId(), bulkMail.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "BulkMail{"
+        + "id="
+        + id
+        + ", subject='"
+        + subject
+        + '\''
+        + ", status="
+        + status
+        + ", lastUserId="
+        + lastUserId
+        + ", queuedCount="
+        + queuedCount
+        + "}";
+  }
+}
@@ -0,0 +1,231 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/** An import of the files uploaded by a user, run in the background. */
+@Entity
+@Table(name = "sys_import_job")
+public class ImportJob extends AbstractAuditingEntity implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The states of a job, in the order they are reached. */
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Size(max = 50)
+  @Column(length = 50, nullable = false)
+  private String username;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  @Column(length = 20, nullable = false)
+  private Status status;
+
+  @Column(name = "file_count", nullable = false)
+  private int fileCount;
+
+  @Column(name = "rows_read", nullable = false)
+  private long rowsRead;
+
+  @Column(name = "rows_written", nullable = false)
+  private long rowsWritten;
+
+  @Column(name = "rows_unchanged", nullable = false)
+  private long rowsUnchanged;
+
+  @Column(name = "rows_failed", nullable = false)
+  private long rowsFailed;
+
+  @Size(max = 255)
+  @Column(length = 255)
+  private String message;
+
+  /** The result of the import of each file, as JSON, once the job is finished. */
+  @Lob
+  @Column(name = "result")
+  private String result;
+
+  @Column(name = "started_date")
+  private Instant startedDate;
+
+  @Column(name = "finished_date")
+  private Instant finishedDate;
+
+  /** Guards the saves of the job, so that a job failed as stale is not overwritten by its node. */
+  @Version
+  @Column(nullable = false)
+  private long version;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public int getFileCount() {
+    return fileCount;
+  }
+
+  public void setFileCount(int fileCount) {
+    this.fileCount = fileCount;
+  }
+
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  public void setRowsRead(long rowsRead) {
+    this.rowsRead = rowsRead;
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public void setRowsWritten(long rowsWritten) {
+    this.rowsWritten = rowsWritten;
+  }
+
+  public long getRowsUnchanged() {
+    return rowsUnchanged;
+  }
+
+  public void setRowsUnchanged(long rowsUnchanged) {
+    this.rowsUnchanged = rowsUnchanged;
+  }
+
+  public long getRowsFailed() {
+    return rowsFailed;
+  }
+
+  public void setRowsFailed(long rowsFailed) {
+    this.rowsFailed = rowsFailed;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public String getResult() {
+    return result;
+  }
+
+  public void setResult(String result) {
+    this.result = result;
+  }
+
+  public Instant getStartedDate() {
+    return startedDate;
+  }
+
+  public void setStartedDate(Instant startedDate) {
+    this.startedDate = startedDate;
+  }
+
+  public Instant getFinishedDate() {
+    return finishedDate;
+  }
+
+  public void setFinishedDate(Instant finishedDate) {
+    this.finishedDate = finishedDate;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  /** @return true if the job is completed or failed */
+  public boolean isFinished() {
+    return status == Status.COMPLETED || status == Status.FAILED;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ImportJob importJob = (ImportJob) o;
+    return !(importJob.getId() == null || getId() == null)
+        && Objects.equals(getId(), importJob.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "ImportJob{"
+        + "id="
+        + id
+        + ", username='"
+        + username
+        + '\''
+        + ", status="
+        + status
+        + ", rowsRead="
+        + rowsRead
+        + ", rowsWritten="
+        + rowsWritten
+        + ", rowsUnchanged="
+        + rowsUnchanged
+        + ", rowsFailed="
+        + rowsFailed
+        + "}";
+  }
+}
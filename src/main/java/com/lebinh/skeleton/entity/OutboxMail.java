@@ -0,0 +1,256 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * A mail written to the outbox in the transaction of the change it notifies, and sent later by
+ * the mail dispatcher. A mail of a template is rendered for its user by the dispatcher, before it
+ * is sent.
+ */
+@Entity
+@Table(name = "sys_mail_outbox")
+public class OutboxMail extends AbstractAuditingEntity implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The states of a mail: waiting to be sent or retried, sent, or given up after its attempts. */
+  public enum Status {
+    PENDING,
+    SENT,
+    DEAD
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Size(max = 254)
+  @Column(length = 254, nullable = false)
+  private String recipient;
+
+  @Size(max = 100)
+  @Column(name = "template_name", length = 100)
+  private String templateName;
+
+  @Size(max = 100)
+  @Column(name = "title_key", length = 100)
+  private String titleKey;
+
+  @Column(name = "user_id")
+  private Long userId;
+
+  /** The subject, null until the template is rendered. */
+  @Size(max = 1000)
+  @Column(length = 1000)
+  private String subject;
+
+  /** The content, null until the template is rendered. */
+  @Lob
+  @Column
+  private String content;
+
+  @Column(name = "is_multipart", nullable = false)
+  private boolean multipart;
+
+  @Column(name = "is_html", nullable = false)
+  private boolean html;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  @Column(length = 20, nullable = false)
+  private Status status;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @NotNull
+  @Column(name = "next_attempt_date", nullable = false)
+  private Instant nextAttemptDate;
+
+  @Size(max = 1024)
+  @Column(name = "last_error", length = 1024)
+  private String lastError;
+
+  @Column(name = "sent_date")
+  private Instant sentDate;
+
+  /** Guards the claim of a mail, so that a mail is only claimed by one node at a time. */
+  @Version
+  @Column(nullable = false)
+  private long version;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getRecipient() {
+    return recipient;
+  }
+
+  public void setRecipient(String recipient) {
+    this.recipient = recipient;
+  }
+
+  public String getTemplateName() {
+    return templateName;
+  }
+
+  public void setTemplateName(String templateName) {
+    this.templateName = templateName;
+  }
+
+  public String getTitleKey() {
+    return titleKey;
+  }
+
+  public void setTitleKey(String titleKey) {
+    this.titleKey = titleKey;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Long userId) {
+    this.userId = userId;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public void setSubject(String subject) {
+    this.subject = subject;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public boolean isMultipart() {
+    return multipart;
+  }
+
+  public void setMultipart(boolean multipart) {
+    this.multipart = multipart;
+  }
+
+  public boolean isHtml() {
+    return html;
+  }
+
+  public void setHtml(boolean html) {
+    this.html = html;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public Instant getNextAttemptDate() {
+    return nextAttemptDate;
+  }
+
+  public void setNextAttemptDate(Instant nextAttemptDate) {
+    this.nextAttemptDate = nextAttemptDate;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  public Instant getSentDate() {
+    return sentDate;
+  }
+
+  public void setSentDate(Instant sentDate) {
+    this.sentDate = sentDate;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    OutboxMail outboxMail = (OutboxMail) o;
+    return !(outboxMail.getId() == null || getId() == null)
+        && Objects.equals(getId(), outboxMail.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "OutboxMail{"
+        + "recipient='"
+        + recipient
+        + '\''
+        + ", templateName='"
+        + templateName
+        + '\''
+        + ", subject='"
+        + subject
+        + '\''
+        + ", status="
+        + status
+        + ", attempts="
+        + attempts
+        + ", nextAttemptDate="
+        + nextAttemptDate
+        + "}";
+  }
+}
@@ -0,0 +1,113 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/** A chunk received by an {@link UploadSession}, with the SHA-256 of its bytes. */
+@Entity
+@Table(name = "sys_upload_chunk")
+public class UploadChunk implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Column(name = "upload_session_id", nullable = false)
+  private Long uploadSessionId;
+
+  @Column(name = "start_offset", nullable = false)
+  private long startOffset;
+
+  @Column(nullable = false)
+  private long length;
+
+  @NotNull
+  @Size(min = 64, max = 64)
+  @Column(length = 64, nullable = false)
+  private String sha256;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public Long getUploadSessionId() {
+    return uploadSessionId;
+  }
+
+  public void setUploadSessionId(Long uploadSessionId) {
+    this.uploadSessionId = uploadSessionId;
+  }
+
+  public long getStartOffset() {
+    return startOffset;
+  }
+
+  public void setStartOffset(long startOffset) {
+    this.startOffset = startOffset;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public void setLength(long length) {
+    this.length = length;
+  }
+
+  public String getSha256() {
+    return sha256;
+  }
+
+  public void setSha256(String sha256) {
+    this.sha256 = sha256;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    UploadChunk uploadChunk = (UploadChunk) o;
+    return !(uploadChunk.getId() == null || getId() == null)
+        && Objects.equals(getId(), uploadChunk.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "UploadChunk{"
+        + "uploadSessionId="
+        + uploadSessionId
+        + ", startOffset="
+        + startOffset
+        + ", length="
+        + length
+        + ", sha256='"
+        + sha256
+        + '\''
+        + "}";
+  }
+}
@@ -0,0 +1,103 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/** The SHA-256 of a file uploaded by a user, with the last import job which imported it. */
+@Entity
+@Table(name = "sys_upload_digest")
+public class UploadDigest extends AbstractAuditingEntity implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Size(max = 50)
+  @Column(length = 50, nullable = false)
+  private String username;
+
+  @NotNull
+  @Size(min = 64, max = 64)
+  @Column(length = 64, nullable = false)
+  private String sha256;
+
+  @NotNull
+  @Column(name = "import_job_id", nullable = false)
+  private Long importJobId;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public String getSha256() {
+    return sha256;
+  }
+
+  public void setSha256(String sha256) {
+    this.sha256 = sha256;
+  }
+
+  public Long getImportJobId() {
+    return importJobId;
+  }
+
+  public void setImportJobId(Long importJobId) {
+    this.importJobId = importJobId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    UploadDigest uploadDigest = (UploadDigest) o;
+    return !(uploadDigest.getId() == null || getId() == null)
+        && Objects.equals(getId(), uploadDigest.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "UploadDigest{"
+        + "username='"
+        + username
+        + '\''
+        + ", sha256='"
+        + sha256
+        + '\''
+        + ", importJobId="
+        + importJobId
+        + "}";
+  }
+}
@@ -0,0 +1,158 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * A file uploaded in chunks, assembled in a preallocated spooled file until it is committed to an
+ * import job.
+ */
+@Entity
+@Table(name = "sys_upload_session")
+public class UploadSession extends AbstractAuditingEntity implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The states of a session: receiving chunks, then committed to its import job, or failed if its
+   * file could not be submitted and was deleted.
+   */
+  public enum Status {
+    OPEN,
+    COMMITTED,
+    FAILED
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Size(max = 50)
+  @Column(length = 50, nullable = false)
+  private String username;
+
+  @NotNull
+  @Size(max = 255)
+  @Column(name = "file_name", length = 255, nullable = false)
+  private String fileName;
+
+  @Column(nullable = false)
+  private long size;
+
+  /** The spooled file, until it is handed to the import job. */
+  @Size(max = 1024)
+  @Column(length = 1024)
+  private String path;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  @Column(length = 20, nullable = false)
+  private Status status;
+
+  @Column(name = "import_job_id")
+  private Long importJobId;
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public Long getImportJobId() {
+    return importJobId;
+  }
+
+  public void setImportJobId(Long importJobId) {
+    this.importJobId = importJobId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    UploadSession uploadSession = (UploadSession) o;
+    return !(uploadSession.getId() == null || getId() == null)
+        && Objects.equals(getId(), uploadSession.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "UploadSession{"
+        + "username='"
+        + username
+        + '\''
+        + ", fileName='"
+        + fileName
+        + '\''
+        + ", size="
+        + size
+        + ", status="
+        + status
+        + ", importJobId="
+        + importJobId
+        + "}";
+  }
+}
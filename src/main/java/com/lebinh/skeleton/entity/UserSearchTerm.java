@@ -0,0 +1,92 @@
+package com.lebinh.skeleton.entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/** A normalized search term of a user, indexed for prefix search. */
+@Entity
+@Table(name = "sys_user_search_term")
+public class UserSearchTerm implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final int TERM_MAX_LENGTH = 100;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Column(name = "user_id", nullable = false)
+  private Long userId;
+
+  @NotNull
+  @Size(max = TERM_MAX_LENGTH)
+  @Column(length = TERM_MAX_LENGTH, nullable = false)
+  private String term;
+
+  public UserSearchTerm() {
+    // Empty constructor needed for Hibernate.
+  }
+
+  public UserSearchTerm(Long userId, String term) {
+    this.userId = userId;
+    this.term = term;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Long userId) {
+    this.userId = userId;
+  }
+
+  public String getTerm() {
+    return term;
+  }
+
+  public void setTerm(String term) {
+    this.term = term;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    UserSearchTerm searchTerm = (UserSearchTerm) o;
+    return !(searchTerm.getId() == null || getId() == null)
+        && Objects.equals(getId(), searchTerm.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(getId());
+  }
+
+  @Override
+  public String toString() {
+    return "UserSearchTerm{" + "userId=" + userId + ", term='" + term + '\'' + "}";
+  }
+}
@@ -0,0 +1,327 @@
+package com.lebinh.skeleton.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * An upsert of rows into a table on a unique key column, written with JDBC batches.
+ *
+ * <p>On MySQL each row is an <code>insert ... on duplicate key update</code>, which the driver
+ * sends as one multi-row statement per batch when the datasource URL enables <code>
+ * rewriteBatchedStatements</code>. On H2, used for local testing, it is a <code>merge ... using
+ * </code>. The keys of a batch which already exist are selected first, with one query, so the rows
+ * inserted and updated are known whatever update counts the driver returns.
+ *
+ * <p>MySQL applies the update on a conflict on any unique key of the table: the caller must make
+ * sure that the rows can only conflict on the key column.
+ *
+ * @param <T> the type of the rows
+ */
+public class BatchUpsert<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchUpsert.class);
+
+  /** The SQL dialects supported by the upsert. */
+  public enum Dialect {
+    MYSQL,
+    H2;
+
+    static Dialect of(String databaseProductName) {
+      String name = databaseProductName.toLowerCase(Locale.ENGLISH);
+      if (name.contains("mysql") || name.contains("mariadb")) {
+        return MYSQL;
+      }
+      if (name.contains("h2")) {
+        return H2;
+      }
+      throw new IllegalStateException("Upsert is not supported on " + databaseProductName);
+    }
+  }
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  private final String table;
+
+  private final int batchSize;
+
+  private Column<T> key;
+
+  private final List<Column<T>> columns = new ArrayList<>();
+
+  /**
+   * @param jdbcTemplate the template used to write the rows, in the current transaction if any
+   * @param table the name of the table
+   * @param batchSize the number of rows written by one batch
+   */
+  public BatchUpsert(NamedParameterJdbcTemplate jdbcTemplate, String table, int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.table = table;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Set the unique key column on which the rows are matched. Its values are compared with equals
+   * to the values read from the database, they must be of the same type.
+   *
+   * @param name the name of the column
+   * @param value the value of the column in a row
+   * @return this upsert
+   */
+  public BatchUpsert<T> key(String name, Function<T, ?> value) {
+    this.key = new Column<>(name, value, true, false, null);
+    return this;
+  }
+
+  /**
+   * Add a column written when a row is inserted or updated.
+   *
+   * @param name the name of the column
+   * @param value the JDBC value of the column in a row
+   * @return this upsert
+   */
+  public BatchUpsert<T> column(String name, Function<T, ?> value) {
+    columns.add(new Column<>(name, value, false, false, null));
+    return this;
+  }
+
+  /**
+   * Add a column written when a row is inserted, and when a row is updated only if its value is
+   * not null: a null value keeps the value of the existing row.
+   *
+   * @param name the name of the column
+   * @param value the JDBC value of the column in a row, null to keep the existing value
+   * @param insertDefault the value inserted when the value of a new row is null
+   * @return this upsert
+   */
+  public BatchUpsert<T> keepIfNullColumn(String name, Function<T, ?> value, Object insertDefault) {
+    columns.add(new Column<>(name, value, false, true, insertDefault));
+    return this;
+  }
+
+  /**
+   * Add a column written only when a row is inserted, such as a creation date.
+   *
+   * @param name the name of the column
+   * @param value the JDBC value of the column in a row
+   * @return this upsert
+   */
+  public BatchUpsert<T> insertOnlyColumn(String name, Function<T, ?> value) {
+    columns.add(new Column<>(name, value, true, false, null));
+    return this;
+  }
+
+  /**
+   * Insert or update rows. When several rows have the same key, the last one wins.
+   *
+   * @param rows the rows to write
+   * @return the keys inserted and updated
+   */
+  public Result execute(List<T> rows) {
+    return execute(rows, batchResult -> {});
+  }
+
+  /**
+   * Insert or update rows. When several rows have the same key, the last one wins.
+   *
+   * @param rows the rows to write
+   * @param batchListener called with the keys inserted and updated by each batch
+   * @return the keys inserted and updated by all the batches
+   */
+  public Result execute(List<T> rows, Consumer<Result> batchListener) {
+    if (key == null) {
+      throw new IllegalStateException("The key column of " + table + " is not set");
+    }
+    Map<Object, T> rowsByKey = new LinkedHashMap<>();
+    for (T row : rows) {
+      Object keyValue = key.value.apply(row);
+      rowsByKey.remove(keyValue);
+      rowsByKey.put(keyValue, row);
+    }
+    List<T> distinctRows = new ArrayList<>(rowsByKey.values());
+    Result result = new Result();
+    if (distinctRows.isEmpty()) {
+      return result;
+    }
+    String sql = upsertSql(dialect());
+    for (int from = 0; from < distinctRows.size(); from += batchSize) {
+      List<T> batch = distinctRows.subList(from, Math.min(from + batchSize, distinctRows.size()));
+      Result batchResult = executeBatch(sql, batch);
+      log.debug(
+          "Upserted {} rows into {}: {} inserted, {} updated",
+          batch.size(),
+          table,
+          batchResult.getInserted(),
+          batchResult.getUpdated());
+      batchListener.accept(batchResult);
+      result.insertedKeys.addAll(batchResult.insertedKeys);
+      result.updatedKeys.addAll(batchResult.updatedKeys);
+    }
+    return result;
+  }
+
+  private Result executeBatch(String sql, List<T> batch) {
+    List<Object> keys = batch.stream().map(key.value).collect(Collectors.toList());
+    Set<Object> existingKeys =
+        new HashSet<>(
+            jdbcTemplate.queryForList(
+                "select " + key.name + " from " + table + " where " + key.name + " in (:keys)",
+                Collections.singletonMap("keys", keys),
+                Object.class));
+    jdbcTemplate
+        .getJdbcOperations()
+        .batchUpdate(
+            sql,
+            batch,
+            batch.size(),
+            (ps, row) -> setValues(ps, row, existingKeys.contains(key.value.apply(row))));
+
+    Result result = new Result();
+    for (Object keyValue : keys) {
+      (existingKeys.contains(keyValue) ? result.updatedKeys : result.insertedKeys).add(keyValue);
+    }
+    return result;
+  }
+
+  private void setValues(PreparedStatement ps, T row, boolean exists) throws SQLException {
+    int index = 1;
+    StatementCreatorUtils.setParameterValue(
+        ps, index++, SqlTypeValue.TYPE_UNKNOWN, key.value.apply(row));
+    for (Column<T> column : columns) {
+      Object value = column.value.apply(row);
+      if (value == null && column.keepIfNull && !exists) {
+        value = column.insertDefault;
+      }
+      StatementCreatorUtils.setParameterValue(ps, index++, SqlTypeValue.TYPE_UNKNOWN, value);
+    }
+  }
+
+  private Dialect dialect() {
+    return jdbcTemplate
+        .getJdbcOperations()
+        .execute(
+            (ConnectionCallback<Dialect>)
+                connection -> Dialect.of(connection.getMetaData().getDatabaseProductName()));
+  }
+
+  /** @return the statement writing one row, whose parameters are the key then the columns */
+  String upsertSql(Dialect dialect) {
+    List<String> names = new ArrayList<>();
+    names.add(key.name);
+    columns.forEach(column -> names.add(column.name));
+    List<Column<T>> updatedColumns =
+        columns.stream().filter(column -> !column.insertOnly).collect(Collectors.toList());
+    if (updatedColumns.isEmpty()) {
+      updatedColumns.add(key);
+    }
+
+    if (dialect == Dialect.MYSQL) {
+      return "insert into "
+          + table
+          + " ("
+          + String.join(", ", names)
+          + ") values ("
+          + names.stream().map(name -> "?").collect(Collectors.joining(", "))
+          + ") on duplicate key update "
+          + updatedColumns
+              .stream()
+              .map(column -> column.update("values(" + column.name + ")", column.name))
+              .collect(Collectors.joining(", "));
+    }
+    return "merge into "
+        + table
+        + " t using (select "
+        + names.stream().map(name -> "? as " + name).collect(Collectors.joining(", "))
+        + ") s on (t."
+        + key.name
+        + " = s."
+        + key.name
+        + ") when matched then update set "
+        + updatedColumns
+            .stream()
+            .map(column -> column.update("s." + column.name, "t." + column.name))
+            .collect(Collectors.joining(", "))
+        + " when not matched then insert ("
+        + String.join(", ", names)
+        + ") values ("
+        + names.stream().map(name -> "s." + name).collect(Collectors.joining(", "))
+        + ")";
+  }
+
+  /** The keys of the rows inserted and updated by an upsert. */
+  public static class Result {
+
+    private final List<Object> insertedKeys = new ArrayList<>();
+
+    private final List<Object> updatedKeys = new ArrayList<>();
+
+    public int getInserted() {
+      return insertedKeys.size();
+    }
+
+    public int getUpdated() {
+      return updatedKeys.size();
+    }
+
+    public List<Object> getInsertedKeys() {
+      return insertedKeys;
+    }
+
+    public List<Object> getUpdatedKeys() {
+      return updatedKeys;
+    }
+  }
+
+  private static class Column<T> {
+
+    private final String name;
+
+    private final Function<T, ?> value;
+
+    private final boolean insertOnly;
+
+    private final boolean keepIfNull;
+
+    private final Object insertDefault;
+
+    Column(
+        String name,
+        Function<T, ?> value,
+        boolean insertOnly,
+        boolean keepIfNull,
+        Object insertDefault) {
+      this.name = name;
+      this.value = value;
+      this.insertOnly = insertOnly;
+      this.keepIfNull = keepIfNull;
+      this.insertDefault = insertDefault;
+    }
+
+    /**
+     * @param newValue the expression of the value of the upserted row
+     * @param existingValue the expression of the value of the existing row
+     * @return the assignment of the column by an update
+     */
+    String update(String newValue, String existingValue) {
+      return name
+          + " = "
+          + (keepIfNull ? "coalesce(" + newValue + ", " + existingValue + ")" : newValue);
+    }
+  }
+}
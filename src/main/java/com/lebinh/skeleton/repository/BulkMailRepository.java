@@ -0,0 +1,13 @@
+package com.lebinh.skeleton.repository;
+
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import com.lebinh.skeleton.entity.BulkMail;
+
+/** Spring Data JPA repository for the BulkMail entity. */
+@Repository
+public interface BulkMailRepository extends JpaRepository<BulkMail, Long> {
+
+  Optional<BulkMail> findFirstByStatusOrderById(BulkMail.Status status);
+}
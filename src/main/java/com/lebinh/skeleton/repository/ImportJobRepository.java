@@ -0,0 +1,65 @@
+package com.lebinh.skeleton.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.entity.ImportJob;
+
+/** Spring Data JPA repository for the ImportJob entity. */
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+
+  List<ImportJob> findAllByStatusInAndLastModifiedDateBefore(
+      Collection<ImportJob.Status> statuses, Instant date);
+
+  /**
+   * Refresh the last modified date of jobs which are still in one of the given states. The version
+   * is left unchanged, as the node running the jobs keeps saving its own copy of them.
+   *
+   * @param ids the ids of the jobs
+   * @param statuses the states of the jobs to refresh
+   * @param date the new last modified date
+   * @return the number of jobs refreshed
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update ImportJob j set j.lastModifiedDate = :date"
+          + " where j.id in :ids and j.status in :statuses")
+  int touchAllByIdInAndStatusIn(
+      @Param("ids") Collection<Long> ids,
+      @Param("statuses") Collection<ImportJob.Status> statuses,
+      @Param("date") Instant date);
+
+  /**
+   * Finish a job if it is still in one of the given states and was not modified since a date. The
+   * version is incremented, so that the node which ran the job can no longer save it.
+   *
+   * @param id the id of the job
+   * @param statuses the states in which the job is finished
+   * @param before the date before which the job was last modified
+   * @param status the final state of the job
+   * @param message the message of the job
+   * @param date the date at which the job is finished
+   * @return 1 if the job was finished, 0 if it was finished or modified in between
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update ImportJob j set j.status = :status, j.message = :message, j.finishedDate = :date,"
+          + " j.lastModifiedDate = :date, j.version = j.version + 1"
+          + " where j.id = :id and j.status in :statuses and j.lastModifiedDate < :before")
+  int finishIfNotModifiedSince(
+      @Param("id") Long id,
+      @Param("statuses") Collection<ImportJob.Status> statuses,
+      @Param("before") Instant before,
+      @Param("status") ImportJob.Status status,
+      @Param("message") String message,
+      @Param("date") Instant date);
+}
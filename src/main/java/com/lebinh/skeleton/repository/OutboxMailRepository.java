@@ -0,0 +1,20 @@
+package com.lebinh.skeleton.repository;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import com.lebinh.skeleton.entity.OutboxMail;
+
+/** Spring Data JPA repository for the OutboxMail entity. */
+@Repository
+public interface OutboxMailRepository extends JpaRepository<OutboxMail, Long> {
+
+  List<OutboxMail> findAllByStatusAndNextAttemptDateLessThanEqualOrderById(
+      OutboxMail.Status status, Instant date, Pageable pageable);
+
+  long countByStatus(OutboxMail.Status status);
+
+  void deleteByStatusAndLastModifiedDateBefore(OutboxMail.Status status, Instant date);
+}
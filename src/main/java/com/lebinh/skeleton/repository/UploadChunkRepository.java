@@ -0,0 +1,13 @@
+package com.lebinh.skeleton.repository;
+
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import com.lebinh.skeleton.entity.UploadChunk;
+
+/** Spring Data JPA repository for the UploadChunk entity. */
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+
+  List<UploadChunk> findAllByUploadSessionIdOrderByStartOffset(Long uploadSessionId);
+}
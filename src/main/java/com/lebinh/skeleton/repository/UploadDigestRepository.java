@@ -0,0 +1,16 @@
+package com.lebinh.skeleton.repository;
+
+import java.time.Instant;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import com.lebinh.skeleton.entity.UploadDigest;
+
+/** Spring Data JPA repository for the UploadDigest entity. */
+@Repository
+public interface UploadDigestRepository extends JpaRepository<UploadDigest, Long> {
+
+  Optional<UploadDigest> findOneByUsernameAndSha256(String username, String sha256);
+
+  void deleteByLastModifiedDateBefore(Instant date);
+}
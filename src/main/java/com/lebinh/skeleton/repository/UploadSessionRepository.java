@@ -0,0 +1,33 @@
+package com.lebinh.skeleton.repository;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.entity.UploadSession;
+
+/** Spring Data JPA repository for the UploadSession entity. */
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+
+  List<UploadSession> findAllByLastModifiedDateBefore(Instant date);
+
+  List<UploadSession> findAllByStatus(UploadSession.Status status);
+
+  /**
+   * Refresh the last modified date of a session, without writing its other columns which may be
+   * saved concurrently.
+   *
+   * @param id the id of the session
+   * @param date the new last modified date
+   * @return the number of sessions refreshed
+   */
+  @Modifying
+  @Transactional
+  @Query("update UploadSession s set s.lastModifiedDate = :date where s.id = :id")
+  int touch(@Param("id") Long id, @Param("date") Instant date);
+}
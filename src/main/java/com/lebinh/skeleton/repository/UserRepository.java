@@ -1,6 +1,7 @@
 package com.lebinh.skeleton.repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
@@ -33,5 +34,11 @@ public interface UserRepository extends JpaRepository<User, Long> {
   @EntityGraph(attributePaths = "authorities")
   Optional<User> findOneWithAuthoritiesByEmail(String email);
 
+  @EntityGraph(attributePaths = "authorities")
+  List<User> findAllWithAuthoritiesByIdIn(Collection<Long> ids);
+
   Page<User> findAllByLoginNot(Pageable pageable, String login);
+
+  /** The next activated users after an id, in id order: a keyset cursor over the users. */
+  List<User> findAllByActivatedIsTrueAndIdGreaterThanOrderById(Long id, Pageable pageable);
 }
@@ -0,0 +1,50 @@
+package com.lebinh.skeleton.repository;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import com.lebinh.skeleton.entity.UserSearchTerm;
+
+/** Spring Data JPA repository for the UserSearchTerm entity. */
+@Repository
+public interface UserSearchTermRepository extends JpaRepository<UserSearchTerm, Long> {
+
+  /** The escape character of the patterns given to {@link #findAllByTermLikeAfter}. */
+  char LIKE_ESCAPE = '!';
+
+  List<UserSearchTerm> findAllByUserId(Long userId);
+
+  List<UserSearchTerm> findAllByUserIdIn(Collection<Long> userIds);
+
+  @Modifying
+  @Query("delete from UserSearchTerm t where t.userId = :userId")
+  void deleteAllByUserId(@Param("userId") Long userId);
+
+  /**
+   * Find the terms matching a pattern which follow a given term, in (term, user id) order.
+   *
+   * <p>With a prefix pattern this is a range scan of the (term, user_id) index which starts after
+   * the given term and stops after the requested page, whatever the number of matching terms. A
+   * user matching on several terms is returned once per term.
+   *
+   * @param pattern the LIKE pattern, escaped with {@link #LIKE_ESCAPE}
+   * @param term the term after which to start, empty to start with the first term
+   * @param userId the user id after which to start among the terms equal to the given term
+   * @param pageable the number of terms to return
+   * @return the terms
+   */
+  @Query(
+      "select t from UserSearchTerm t where t.term like :pattern escape '!'"
+          + " and (t.term > :term or (t.term = :term and t.userId > :userId))"
+          + " order by t.term, t.userId")
+  List<UserSearchTerm> findAllByTermLikeAfter(
+      @Param("pattern") String pattern,
+      @Param("term") String term,
+      @Param("userId") Long userId,
+      Pageable pageable);
+}
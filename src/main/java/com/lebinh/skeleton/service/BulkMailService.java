@@ -0,0 +1,245 @@
+package com.lebinh.skeleton.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.BulkMail;
+import com.lebinh.skeleton.entity.OutboxMail;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.repository.BulkMailRepository;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+import com.lebinh.skeleton.repository.UserRepository;
+import com.lebinh.skeleton.service.dto.BulkMailDto;
+
+/**
+ * Service for the mails sent by an administrator to all the activated users.
+ *
+ * <p>The users are read through a keyset cursor, the next batch after the id of the last user
+ * reached, so that a bulk mail never holds more than one batch of users, nor a connection between
+ * two batches. The mails of a batch are rendered on the bulkMailExecutor, one task per locale, then
+ * written to the outbox with the new checkpoint of the bulk mail in one transaction: after a
+ * restart, the mail resumes after the last batch written, without a user mailed twice or skipped.
+ * The {@link MailDispatcher} sends them like the other mails.
+ *
+ * <p>The batches are sized by a token bucket refilled at bulkMessagesPerSecond, so that a bulk
+ * mail fills the outbox no faster than the configured rate, and leaves room to the mails of the
+ * users. The bulk mails are written one after the other, in creation order.
+ *
+ * <p>The bucket is held in memory, so the rate is per node: every node of a cluster writes batches
+ * at the full rate, and the outbox fills up to the rate times the number of nodes.
+ */
+@Service
+public class BulkMailService {
+
+  private static final String TEMPLATE_NAME = "bulkEmail";
+
+  private final Logger log = LoggerFactory.getLogger(BulkMailService.class);
+
+  private final BulkMailRepository bulkMailRepository;
+
+  private final UserRepository userRepository;
+
+  private final OutboxMailRepository outboxMailRepository;
+
+  private final MailTemplateRenderer mailTemplateRenderer;
+
+  private final Executor bulkMailExecutor;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final int messagesPerSecond;
+
+  // mails which can be written at once, after an idle period
+  private final double burst;
+
+  // tokens of the bucket, only used by the scheduler thread
+  private double allowance;
+
+  private long lastRefillNanos;
+
+  public BulkMailService(
+      BulkMailRepository bulkMailRepository,
+      UserRepository userRepository,
+      OutboxMailRepository outboxMailRepository,
+      MailTemplateRenderer mailTemplateRenderer,
+      @Qualifier("bulkMailExecutor") Executor bulkMailExecutor,
+      PlatformTransactionManager transactionManager,
+      ApplicationProperties applicationProperties) {
+    this.bulkMailRepository = bulkMailRepository;
+    this.userRepository = userRepository;
+    this.outboxMailRepository = outboxMailRepository;
+    this.mailTemplateRenderer = mailTemplateRenderer;
+    this.bulkMailExecutor = bulkMailExecutor;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    ApplicationProperties.Mail properties = applicationProperties.getMail();
+    this.messagesPerSecond = properties.getBulkMessagesPerSecond();
+    this.burst = Math.max(1, messagesPerSecond * properties.getBulkIntervalMillis() / 1000.0);
+  }
+
+  /**
+   * Start a bulk mail to all the activated users.
+   *
+   * @param bulkMailDto the subject and the content of the mail
+   * @return the bulk mail, running
+   */
+  public BulkMailDto create(BulkMailDto bulkMailDto) {
+    BulkMail bulkMail = new BulkMail();
+    bulkMail.setSubject(bulkMailDto.getSubject());
+    bulkMail.setContent(bulkMailDto.getContent());
+    bulkMail.setStatus(BulkMail.Status.RUNNING);
+    bulkMail = bulkMailRepository.save(bulkMail);
+    log.debug("Created bulk mail {}", bulkMail.getId());
+    return new BulkMailDto(bulkMail);
+  }
+
+  /**
+   * @param id the id of the bulk mail
+   * @return the bulk mail and its progress, if it exists
+   */
+  public Optional<BulkMailDto> find(Long id) {
+    return bulkMailRepository.findById(id).map(BulkMailDto::new);
+  }
+
+  /**
+   * Cancel a running bulk mail. The mails already written to the outbox are still sent.
+   *
+   * @param id the id of the bulk mail
+   * @return the bulk mail, cancelled unless it was already finished, if it exists
+   */
+  public Optional<BulkMailDto> cancel(Long id) {
+    return bulkMailRepository
+        .findById(id)
+        .map(
+            bulkMail -> {
+              if (bulkMail.getStatus() == BulkMail.Status.RUNNING) {
+                bulkMail.setStatus(BulkMail.Status.CANCELLED);
+                bulkMail.setFinishedDate(Instant.now());
+                bulkMail = bulkMailRepository.save(bulkMail);
+                log.debug("Cancelled bulk mail {}", id);
+              }
+              return new BulkMailDto(bulkMail);
+            });
+  }
+
+  /** Write the next batch of the oldest running bulk mail, as large as the rate allows. */
+  @Scheduled(fixedDelayString = "${application.mail.bulk-interval-millis:1000}")
+  public void queueNextBatch() {
+    Optional<BulkMail> running =
+        bulkMailRepository.findFirstByStatusOrderById(BulkMail.Status.RUNNING);
+    if (!running.isPresent()) {
+      // an idle period does not add to the burst
+      lastRefillNanos = 0;
+      return;
+    }
+    refill();
+    int batchSize = (int) allowance;
+    if (batchSize == 0) {
+      return;
+    }
+
+    BulkMail bulkMail = running.get();
+    List<User> users =
+        userRepository.findAllByActivatedIsTrueAndIdGreaterThanOrderById(
+            bulkMail.getLastUserId(), PageRequest.of(0, batchSize));
+    List<OutboxMail> mails;
+    if (users.isEmpty()) {
+      mails = Collections.emptyList();
+      bulkMail.setStatus(BulkMail.Status.COMPLETED);
+      bulkMail.setFinishedDate(Instant.now());
+    } else {
+      mails = render(bulkMail, users);
+      bulkMail.setLastUserId(users.get(users.size() - 1).getId());
+      bulkMail.setQueuedCount(bulkMail.getQueuedCount() + mails.size());
+      allowance -= users.size();
+    }
+    try {
+      // the mails and the checkpoint are committed together
+      transactionTemplate.execute(
+          status -> {
+            outboxMailRepository.saveAll(mails);
+            return bulkMailRepository.save(bulkMail);
+          });
+      log.debug("Bulk mail {} queued up to user {}", bulkMail.getId(), bulkMail.getLastUserId());
+    } catch (OptimisticLockingFailureException e) {
+      // cancelled, or the batch was written by another node
+      log.debug("Bulk mail {} changed while queuing a batch", bulkMail.getId());
+    }
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    if (lastRefillNanos == 0) {
+      allowance = burst;
+    } else {
+      double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+      allowance = Math.min(burst, allowance + elapsedSeconds * messagesPerSecond);
+    }
+    lastRefillNanos = now;
+  }
+
+  /** Render the mails of a batch, the users of each locale by a task of the executor. */
+  private List<OutboxMail> render(BulkMail bulkMail, List<User> users) {
+    String[] lines = bulkMail.getContent().split("\\R");
+    Map<String, List<User>> usersByLangKey =
+        users
+            .stream()
+            .filter(user -> user.getEmail() != null)
+            .collect(
+                Collectors.groupingBy(
+                    user -> StringUtils.defaultString(user.getLangKey()),
+                    LinkedHashMap::new,
+                    Collectors.toList()));
+    List<CompletableFuture<List<OutboxMail>>> rendered = new ArrayList<>();
+    usersByLangKey.forEach(
+        (langKey, localeUsers) ->
+            rendered.add(
+                CompletableFuture.supplyAsync(
+                    () -> render(bulkMail, lines, Locale.forLanguageTag(langKey), localeUsers),
+                    bulkMailExecutor)));
+    List<OutboxMail> mails = new ArrayList<>(users.size());
+    rendered.forEach(future -> mails.addAll(future.join()));
+    return mails;
+  }
+
+  private List<OutboxMail> render(
+      BulkMail bulkMail, String[] lines, Locale locale, List<User> users) {
+    Map<String, Object> variables = new HashMap<>();
+    variables.put("subject", bulkMail.getSubject());
+    variables.put("lines", lines);
+    Instant now = Instant.now();
+    List<OutboxMail> mails = new ArrayList<>(users.size());
+    for (User user : users) {
+      variables.put("user", user);
+      OutboxMail mail = new OutboxMail();
+      mail.setRecipient(user.getEmail());
+      mail.setSubject(bulkMail.getSubject());
+      mail.setContent(mailTemplateRenderer.render(TEMPLATE_NAME, locale, variables));
+      mail.setHtml(true);
+      mail.setStatus(OutboxMail.Status.PENDING);
+      mail.setNextAttemptDate(now);
+      mails.add(mail);
+    }
+    return mails;
+  }
+}
@@ -0,0 +1,96 @@
+package com.lebinh.skeleton.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.utils.FileUtil;
+
+/**
+ * Service for storing files on local disk under the SHA-256 of their content.
+ *
+ * <p>The public files are served to any authenticated user by their hash. The private files, such
+ * as the error workbooks of the imports, are kept in a separate directory and only served by the
+ * resource which checks who owns them.
+ */
+@Service
+public class FileStoreService {
+
+  private final Logger log = LoggerFactory.getLogger(FileStoreService.class);
+
+  private static final String PRIVATE_DIRECTORY = "private";
+
+  private final Path root;
+
+  private final Path privateRoot;
+
+  public FileStoreService(ApplicationProperties applicationProperties) {
+    this.root = Paths.get(applicationProperties.getFileStore().getRoot()).toAbsolutePath();
+    this.privateRoot = root.resolve(PRIVATE_DIRECTORY);
+  }
+
+  /**
+   * Store the content of a stream. Storing the same content twice keeps a single file.
+   *
+   * @param in the content to store, read until its end and closed
+   * @return the hex SHA-256 of the content, which identifies the file
+   * @throws IOException if the content could not be stored
+   */
+  public String store(InputStream in) throws IOException {
+    return store(root, in);
+  }
+
+  /**
+   * Store the content of a stream as a private file, which is not found by {@link #find}.
+   *
+   * @param in the content to store, read until its end and closed
+   * @return the hex SHA-256 of the content, which identifies the file
+   * @throws IOException if the content could not be stored
+   */
+  public String storePrivate(InputStream in) throws IOException {
+    return store(privateRoot, in);
+  }
+
+  /**
+   * Find a stored file.
+   *
+   * @param hash the hex SHA-256 of the file
+   * @return the path of the file, or empty if the hash is invalid or the file is not stored
+   */
+  public Optional<Path> find(String hash) {
+    return find(root, hash);
+  }
+
+  /**
+   * Find a private file.
+   *
+   * @param hash the hex SHA-256 of the file
+   * @return the path of the file, or empty if the hash is invalid or the file is not stored
+   */
+  public Optional<Path> findPrivate(String hash) {
+    return find(privateRoot, hash);
+  }
+
+  private String store(Path directory, InputStream in) throws IOException {
+    try (ReadableByteChannel source = Channels.newChannel(in)) {
+      String hash = FileUtil.store(directory, source);
+      log.debug("Stored file {}", hash);
+      return hash;
+    }
+  }
+
+  private static Optional<Path> find(Path directory, String hash) {
+    if (!FileUtil.isSha256(hash)) {
+      return Optional.empty();
+    }
+    return Optional.of(FileUtil.resolve(directory, hash)).filter(Files::isRegularFile);
+  }
+}
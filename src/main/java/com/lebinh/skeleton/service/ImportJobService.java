@@ -0,0 +1,732 @@
+package com.lebinh.skeleton.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.constant.ImportConstant;
+import com.lebinh.skeleton.entity.ImportJob;
+import com.lebinh.skeleton.entity.UploadDigest;
+import com.lebinh.skeleton.repository.ImportJobRepository;
+import com.lebinh.skeleton.repository.UploadDigestRepository;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
+import com.lebinh.skeleton.service.dto.ImportResultDto;
+import com.lebinh.skeleton.utils.FileCheckUtil;
+
+/**
+ * Service running the imports of uploaded files in the background.
+ *
+ * <p>An upload creates an {@link ImportJob} and returns at once; the files are imported by the
+ * importJobExecutor. The progress of the job after each written chunk is persisted, and pushed to
+ * the clients subscribed to its Server-Sent Events, by the importEventExecutor. Clients poll the
+ * job or subscribe to its events.
+ *
+ * <p>The files of a job are imported in parallel by the importFileExecutor, whose pool is shared
+ * by all the jobs, with at most maxParallelFilesPerJob files of the same job at a time. Each file
+ * has its own result in the job, updated as it progresses, and a file whose import fails does not
+ * stop the others.
+ *
+ * <p>The jobs only live in the executors of the node which queued them, which refreshes their last
+ * modified date every minute while they are queued or running. A job left queued or running by a
+ * node which was stopped is failed by any node once it was not modified for staleJobMinutes, so
+ * that its clients stop waiting and can upload its files again. The job is failed by a conditional
+ * update which increments its version, so a node which comes back cannot overwrite the failure.
+ */
+@Service
+public class ImportJobService {
+
+  private static final TypeReference<List<ImportResultDto>> RESULTS_TYPE =
+      new TypeReference<List<ImportResultDto>>() {};
+
+  private final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+  private final ImportJobRepository importJobRepository;
+
+  private final UserImportService userImportService;
+
+  private final UploadSpoolService uploadSpoolService;
+
+  private final UploadDigestRepository uploadDigestRepository;
+
+  private final AsyncTaskExecutor importJobExecutor;
+
+  private final Executor importFileExecutor;
+
+  private final Executor importEventExecutor;
+
+  private final ObjectMapper objectMapper;
+
+  private final long eventTimeoutMillis;
+
+  private final int duplicateRetentionDays;
+
+  private final int maxParallelFilesPerJob;
+
+  private final int staleJobMinutes;
+
+  private final FileCheckUtil.ZipLimits zipLimits;
+
+  private static final List<ImportJob.Status> UNFINISHED_STATUSES =
+      Collections.unmodifiableList(
+          Arrays.asList(ImportJob.Status.QUEUED, ImportJob.Status.RUNNING));
+
+  private final Map<Long, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+  // jobs queued or running on this node, kept fresh by the heartbeat
+  private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+
+  public ImportJobService(
+      ImportJobRepository importJobRepository,
+      UserImportService userImportService,
+      UploadSpoolService uploadSpoolService,
+      UploadDigestRepository uploadDigestRepository,
+      @Qualifier("importJobExecutor") AsyncTaskExecutor importJobExecutor,
+      @Qualifier("importFileExecutor") Executor importFileExecutor,
+      @Qualifier("importEventExecutor") Executor importEventExecutor,
+      ObjectMapper objectMapper,
+      ApplicationProperties applicationProperties) {
+    this.importJobRepository = importJobRepository;
+    this.userImportService = userImportService;
+    this.uploadSpoolService = uploadSpoolService;
+    this.uploadDigestRepository = uploadDigestRepository;
+    this.importJobExecutor = importJobExecutor;
+    this.importFileExecutor = importFileExecutor;
+    this.importEventExecutor = importEventExecutor;
+    this.objectMapper = objectMapper;
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    this.eventTimeoutMillis = upload.getEventTimeoutMillis();
+    this.duplicateRetentionDays = upload.getDuplicateRetentionDays();
+    this.maxParallelFilesPerJob = upload.getMaxParallelFilesPerJob();
+    this.staleJobMinutes = upload.getStaleJobMinutes();
+    this.zipLimits =
+        new FileCheckUtil.ZipLimits(
+            upload.getMaxZipEntries(),
+            upload.getMaxUncompressedSize(),
+            upload.getMaxCompressionRatio());
+  }
+
+  /**
+   * Create an import job for uploaded files and queue it.
+   *
+   * <p>The uploads are spooled to files owned by the job by {@link UploadSpoolService}, as the
+   * container deletes its own copies at the end of the request. Only the extension of each file is
+   * checked on the calling thread. Its content is checked by the job, before the file is imported:
+   * the zip structure is streamed with {@link FileCheckUtil#checkXlsxContent}, so that a zip bomb
+   * is rejected before it reaches the parser, then the workbook structure is checked by {@link
+   * UserImportService#preflight}. A CSV file has no zip structure, only its header is checked. A
+   * file rejected by these checks fails in the result of the job.
+   *
+   * <p>Unless forced, a file whose SHA-256 matches a file imported by the same user during the
+   * last days is not imported again. If every file of the upload was imported by the same earlier
+   * job, that job is returned instead of a new one. The other files are imported differentially,
+   * skipping the rows which did not change since their last import, unless forced.
+   *
+   * @param username the user who uploads the files
+   * @param files the uploaded files
+   * @param force true to import the files and all their rows even if they were already imported
+   * @return the queued job, or the earlier job which imported the same files
+   * @throws UploadCapacityExceededException if there is no space left to spool the uploads
+   * @throws ImportQueueFullException if too many jobs are already queued
+   * @throws IOException if an upload could not be spooled
+   */
+  public ImportJobDto submit(String username, MultipartFile[] files, boolean force)
+      throws IOException {
+    List<UploadSpoolService.SpooledFile> spooledFiles =
+        uploadSpoolService.spool(Arrays.asList(files));
+    List<String> fileNames = new ArrayList<>(files.length);
+    for (MultipartFile file : files) {
+      fileNames.add(StringUtils.defaultString(file.getOriginalFilename(), file.getName()));
+    }
+    return submit(username, fileNames, spooledFiles, force);
+  }
+
+  /**
+   * Create an import job for files already spooled, such as a committed chunked upload, like
+   * {@link #submit(String, MultipartFile[], boolean)}. The job takes over the spooled files, which
+   * are deleted once imported or rejected.
+   *
+   * @param username the user who uploads the files
+   * @param fileNames the name of each uploaded file
+   * @param spooledFiles the spooled file of each upload, in the same order
+   * @param force true to import the files and all their rows even if they were already imported
+   * @return the queued job, or the earlier job which imported the same files
+   * @throws ImportQueueFullException if too many jobs are already queued
+   */
+  public ImportJobDto submit(
+      String username,
+      List<String> fileNames,
+      List<UploadSpoolService.SpooledFile> spooledFiles,
+      boolean force) {
+    List<UploadedFile> uploads = new ArrayList<>(spooledFiles.size());
+    try {
+      for (int i = 0; i < spooledFiles.size(); i++) {
+        String fileName = fileNames.get(i);
+        UploadSpoolService.SpooledFile spooledFile = spooledFiles.get(i);
+        Optional<Long> previousJobId =
+            force ? Optional.empty() : findPreviousJobId(username, spooledFile.getSha256());
+        Optional<String> rejection =
+            previousJobId.isPresent() ? Optional.empty() : checkExtension(fileName);
+        Path path = spooledFile.getPath();
+        if (previousJobId.isPresent() || rejection.isPresent()) {
+          uploadSpoolService.delete(path);
+          path = null;
+        }
+        uploads.add(
+            new UploadedFile(
+                fileName,
+                path,
+                spooledFile.getSha256(),
+                rejection.orElse(null),
+                previousJobId.orElse(null)));
+      }
+    } catch (RuntimeException e) {
+      spooledFiles.forEach(spooledFile -> uploadSpoolService.delete(spooledFile.getPath()));
+      throw e;
+    }
+
+    Optional<ImportJobDto> previousJob = findPreviousJob(uploads);
+    if (previousJob.isPresent()) {
+      log.debug("Upload of {} is identical to import job {}", username, previousJob.get().getId());
+      return previousJob.get();
+    }
+
+    ImportJob job = new ImportJob();
+    job.setUsername(username);
+    job.setStatus(ImportJob.Status.QUEUED);
+    job.setFileCount(uploads.size());
+    ImportJob queuedJob = importJobRepository.save(job);
+    activeJobs.add(queuedJob.getId());
+    try {
+      importJobExecutor.execute(() -> run(queuedJob, uploads, !force));
+    } catch (RejectedExecutionException e) {
+      activeJobs.remove(queuedJob.getId());
+      delete(uploads);
+      importJobRepository.delete(queuedJob);
+      throw new ImportQueueFullException("Too many imports in progress, please retry later");
+    }
+    log.debug(
+        "Queued import job {} of {} files for {}", queuedJob.getId(), uploads.size(), username);
+    return toDto(queuedJob);
+  }
+
+  /**
+   * Find the job which imported a file, the last time the user uploaded it. Only a completed job
+   * imported it: the digest of a file is saved once its import succeeded, but its job may still be
+   * running or have failed since. A job older than the retention of the digests does not count.
+   */
+  private Optional<Long> findPreviousJobId(String username, String sha256) {
+    Instant since = Instant.now().minus(duplicateRetentionDays, ChronoUnit.DAYS);
+    return uploadDigestRepository
+        .findOneByUsernameAndSha256(username, sha256)
+        .filter(digest -> digest.getLastModifiedDate().isAfter(since))
+        .flatMap(digest -> importJobRepository.findById(digest.getImportJobId()))
+        .filter(job -> job.getStatus() == ImportJob.Status.COMPLETED)
+        .map(ImportJob::getId);
+  }
+
+  /** @return the earlier job which imported all the uploads, if there is one */
+  private Optional<ImportJobDto> findPreviousJob(List<UploadedFile> uploads) {
+    Long previousJobId = uploads.isEmpty() ? null : uploads.get(0).duplicateOf;
+    if (previousJobId == null
+        || uploads.stream().anyMatch(upload -> !previousJobId.equals(upload.duplicateOf))) {
+      return Optional.empty();
+    }
+    return importJobRepository
+        .findById(previousJobId)
+        .map(this::toDto)
+        .map(
+            jobDto -> {
+              jobDto.setDuplicate(true);
+              return jobDto;
+            });
+  }
+
+  private void saveDigest(String username, String sha256, Long importJobId) {
+    UploadDigest digest =
+        uploadDigestRepository
+            .findOneByUsernameAndSha256(username, sha256)
+            .orElseGet(UploadDigest::new);
+    digest.setUsername(username);
+    digest.setSha256(sha256);
+    digest.setImportJobId(importJobId);
+    try {
+      uploadDigestRepository.save(digest);
+    } catch (DataIntegrityViolationException e) {
+      // the same file was uploaded concurrently, either job will do
+      log.debug("Digest {} of {} already saved", sha256, username);
+    }
+  }
+
+  /**
+   * Remove the digests of the files which were uploaded before the retention period.
+   *
+   * <p>This is scheduled to get fired everyday, at 01:30 (am).
+   */
+  @Scheduled(cron = "0 30 1 * * ?")
+  @Transactional
+  public void removeExpiredDigests() {
+    uploadDigestRepository.deleteByLastModifiedDateBefore(
+        Instant.now().minus(duplicateRetentionDays, ChronoUnit.DAYS));
+  }
+
+  private static Optional<String> checkExtension(String fileName) {
+    File file = new File(fileName);
+    if (FileCheckUtil.checkFileExtension(file, ImportConstant.CSV_EXTENSION)
+        || FileCheckUtil.checkFileExtension(file, ImportConstant.FILE_EXTENSION)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        "Invalid file extension, expected "
+            + ImportConstant.FILE_EXTENSION
+            + " or "
+            + ImportConstant.CSV_EXTENSION);
+  }
+
+  /** Check the content of a file whose extension was accepted, on the import file executor. */
+  private Optional<String> checkContent(String fileName, Path path) throws IOException {
+    if (!FileCheckUtil.checkFileExtension(new File(fileName), ImportConstant.CSV_EXTENSION)) {
+      Optional<String> rejection;
+      try (InputStream in = Files.newInputStream(path)) {
+        rejection = FileCheckUtil.checkXlsxContent(in, zipLimits);
+      }
+      if (rejection.isPresent()) {
+        return rejection;
+      }
+    }
+    return userImportService.preflight(fileName, path);
+  }
+
+  /**
+   * @param id the id of the job
+   * @return the job, if it exists
+   */
+  public Optional<ImportJobDto> find(Long id) {
+    return importJobRepository.findById(id).map(this::toDto);
+  }
+
+  /**
+   * Subscribe to the progress of a job. The current state is sent at once as a "progress" event,
+   * followed by a "progress" event after each written chunk, and a final "finished" event after
+   * which the stream is completed.
+   *
+   * @param id the id of the job
+   * @return the emitter of the events, if the job exists
+   */
+  public Optional<SseEmitter> subscribe(Long id) {
+    if (!importJobRepository.existsById(id)) {
+      return Optional.empty();
+    }
+    SseEmitter emitter = new SseEmitter(eventTimeoutMillis);
+    emitters.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>()).add(emitter);
+    emitter.onCompletion(() -> unsubscribe(id, emitter));
+    emitter.onTimeout(() -> unsubscribe(id, emitter));
+    // read the job once registered, so that no event can be missed in between
+    importJobRepository.findById(id).map(this::toDto).ifPresent(job -> send(emitter, job));
+    return Optional.of(emitter);
+  }
+
+  private void unsubscribe(Long id, SseEmitter emitter) {
+    emitters.computeIfPresent(
+        id,
+        (key, jobEmitters) -> {
+          jobEmitters.remove(emitter);
+          return jobEmitters.isEmpty() ? null : jobEmitters;
+        });
+  }
+
+  /**
+   * Refresh the last modified date of the jobs queued or running on this node, so that no node
+   * fails them as stale however long they wait or run.
+   *
+   * <p>This is scheduled to get fired every minute.
+   */
+  @Scheduled(cron = "0 * * * * ?")
+  public void touchActiveJobs() {
+    if (!activeJobs.isEmpty()) {
+      importJobRepository.touchAllByIdInAndStatusIn(
+          new ArrayList<>(activeJobs), UNFINISHED_STATUSES, Instant.now());
+    }
+  }
+
+  /**
+   * Fail the jobs left queued or running by a stopped node, which were not modified for
+   * staleJobMinutes.
+   *
+   * <p>This is scheduled to get fired every 5 minutes.
+   */
+  @Scheduled(cron = "0 */5 * * * ?")
+  public void failStaleJobs() {
+    Instant before = Instant.now().minus(staleJobMinutes, ChronoUnit.MINUTES);
+    List<ImportJob> jobs =
+        importJobRepository.findAllByStatusInAndLastModifiedDateBefore(UNFINISHED_STATUSES, before);
+    for (ImportJob job : jobs) {
+      // the job may have been refreshed or finished since it was read
+      int failed =
+          importJobRepository.finishIfNotModifiedSince(
+              job.getId(),
+              UNFINISHED_STATUSES,
+              before,
+              ImportJob.Status.FAILED,
+              "Import interrupted, please upload the files again",
+              Instant.now());
+      if (failed > 0) {
+        log.warn("Failed stale import job {}", job.getId());
+        importJobRepository
+            .findById(job.getId())
+            .ifPresent(failedJob -> publish(failedJob, toDto(failedJob).getResults()));
+      }
+    }
+  }
+
+  private void run(ImportJob job, List<UploadedFile> uploads, boolean differential) {
+    JobProgress progress = new JobProgress(job, uploads);
+    int submitted = 0;
+    try {
+      if (importJobRepository.findById(job.getId()).map(ImportJob::isFinished).orElse(true)) {
+        // failed as stale by another node while it was queued
+        log.debug("Skipping finished import job {}", job.getId());
+        return;
+      }
+      progress.start();
+      Semaphore permits = new Semaphore(maxParallelFilesPerJob);
+      List<CompletableFuture<Void>> imports = new ArrayList<>();
+      for (; submitted < uploads.size(); submitted++) {
+        UploadedFile upload = uploads.get(submitted);
+        if (upload.path == null) {
+          continue;
+        }
+        int index = submitted;
+        permits.acquire();
+        imports.add(
+            CompletableFuture.runAsync(
+                    () -> importFile(job, progress, index, upload, differential),
+                    importFileExecutor)
+                .whenComplete((nothing, e) -> permits.release()));
+      }
+      CompletableFuture.allOf(imports.toArray(new CompletableFuture<?>[0])).join();
+      progress.finish(null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      progress.finish(e);
+    } catch (RuntimeException e) {
+      progress.finish(e);
+    } finally {
+      // the submitted files are deleted by their import
+      delete(uploads.subList(submitted, uploads.size()));
+      activeJobs.remove(job.getId());
+    }
+  }
+
+  /**
+   * Check and import a file of a job, on the import file executor, and record its result. The
+   * digest of the file is only saved once it was imported, so that a file which failed can be
+   * uploaded again.
+   */
+  private void importFile(
+      ImportJob job, JobProgress progress, int index, UploadedFile upload, boolean differential) {
+    try {
+      Optional<String> rejection = checkContent(upload.fileName, upload.path);
+      if (rejection.isPresent()) {
+        progress.fail(index, rejection.get());
+        return;
+      }
+      ImportResultDto result =
+          userImportService.importFile(
+              upload.fileName,
+              upload.path,
+              differential,
+              current -> progress.update(index, current.copy()));
+      progress.update(index, result);
+      if (!result.hasFileError()) {
+        saveDigest(job.getUsername(), upload.sha256, job.getId());
+      }
+    } catch (IOException e) {
+      log.warn("Could not check {}: {}", upload.fileName, e.getMessage());
+      progress.fail(index, "Could not read the file: " + e.getMessage());
+    } catch (RuntimeException e) {
+      log.error("Import of {} failed", upload.fileName, e);
+      progress.fail(index, "Import failed: " + e.getMessage());
+    } finally {
+      uploadSpoolService.delete(upload.path);
+    }
+  }
+
+  private ImportJob save(ImportJob job, List<ImportResultDto> results) {
+    ImportJob savedJob = importJobRepository.save(job);
+    publish(savedJob, results);
+    return savedJob;
+  }
+
+  /** Send the state of a saved job to its subscribers, and complete them once it is finished. */
+  private void publish(ImportJob savedJob, List<ImportResultDto> results) {
+    ImportJobDto jobDto = new ImportJobDto(savedJob, results);
+    List<SseEmitter> jobEmitters =
+        savedJob.isFinished()
+            ? emitters.remove(savedJob.getId())
+            : emitters.get(savedJob.getId());
+    if (jobEmitters != null) {
+      jobEmitters.forEach(emitter -> send(emitter, jobDto));
+    }
+  }
+
+  private void send(SseEmitter emitter, ImportJobDto job) {
+    try {
+      emitter.send(SseEmitter.event().name("progress").data(job));
+      if (job.getStatus() == ImportJob.Status.COMPLETED
+          || job.getStatus() == ImportJob.Status.FAILED) {
+        emitter.send(SseEmitter.event().name("finished").data(job));
+        emitter.complete();
+      }
+    } catch (IOException e) {
+      // the client went away
+      emitter.completeWithError(e);
+    } catch (IllegalStateException e) {
+      // the emitter is already completed
+    }
+  }
+
+  private ImportJobDto toDto(ImportJob job) {
+    List<ImportResultDto> results = Collections.emptyList();
+    if (job.getResult() != null) {
+      try {
+        results = objectMapper.readValue(job.getResult(), RESULTS_TYPE);
+      } catch (IOException e) {
+        log.warn("Unreadable result of import job {}: {}", job.getId(), e.getMessage());
+      }
+    }
+    return new ImportJobDto(job, results);
+  }
+
+  private void delete(List<UploadedFile> uploads) {
+    for (UploadedFile upload : uploads) {
+      if (upload.path != null) {
+        uploadSpoolService.delete(upload.path);
+      }
+    }
+  }
+
+  /**
+   * The state of a running job and the results of its files, updated by the threads importing the
+   * files. The results are copies owned by the job, so that they can be serialized while the
+   * imports go on.
+   *
+   * <p>An update only replaces a result under the lock. The job is saved and its events are sent by
+   * the importEventExecutor, one flush at a time: the updates made during a flush are coalesced
+   * into the next one, so the threads importing the files never wait for the database nor for a
+   * client, and the last state of the job is always saved last.
+   */
+  private class JobProgress {
+
+    // only used by the thread flushing the job, once started
+    private ImportJob job;
+
+    private final ImportResultDto[] results;
+
+    // the final state of the job, null while it is running
+    private ImportJob.Status status;
+
+    private String message;
+
+    private String result;
+
+    private Instant finishedDate;
+
+    // a result changed since the last flush
+    private boolean dirty;
+
+    // a flush is queued or running
+    private boolean flushing;
+
+    // the job was failed by another node, only used by the thread flushing the job
+    private boolean superseded;
+
+    JobProgress(ImportJob job, List<UploadedFile> uploads) {
+      this.job = job;
+      this.results = new ImportResultDto[uploads.size()];
+      for (int i = 0; i < results.length; i++) {
+        UploadedFile upload = uploads.get(i);
+        results[i] = new ImportResultDto(upload.fileName);
+        if (upload.rejection != null) {
+          results[i].fail(upload.rejection);
+        }
+        results[i].setDuplicateOf(upload.duplicateOf);
+      }
+    }
+
+    /** Mark the job as running, on the job thread before any file is imported. */
+    synchronized void start() {
+      job.setStatus(ImportJob.Status.RUNNING);
+      job.setStartedDate(Instant.now());
+      job = save(job, Arrays.asList(results));
+    }
+
+    /** Replace the result of a file, then persist the totals of the job and notify. */
+    void update(int index, ImportResultDto result) {
+      boolean flush;
+      synchronized (this) {
+        results[index] = result;
+        flush = markDirty();
+      }
+      if (flush) {
+        importEventExecutor.execute(this::flush);
+      }
+    }
+
+    /** Record the error which stopped the import of a file, keeping its last progress. */
+    void fail(int index, String message) {
+      ImportResultDto result;
+      synchronized (this) {
+        result = results[index].copy();
+      }
+      result.fail(message);
+      update(index, result);
+    }
+
+    /**
+     * Complete the job with the results of its files, or fail it.
+     *
+     * @param failure the error which stopped the job, null if all its files were imported
+     */
+    void finish(Exception failure) {
+      Exception error = failure;
+      boolean flush;
+      synchronized (this) {
+        if (error == null) {
+          try {
+            result = objectMapper.writeValueAsString(Arrays.asList(results));
+            status = ImportJob.Status.COMPLETED;
+          } catch (JsonProcessingException e) {
+            error = e;
+          }
+        }
+        if (error != null) {
+          status = ImportJob.Status.FAILED;
+          message = StringUtils.left(error.getMessage(), 255);
+        }
+        finishedDate = Instant.now();
+        flush = markDirty();
+      }
+      if (error != null) {
+        log.error("Import job {} failed", job.getId(), error);
+      }
+      if (flush) {
+        importEventExecutor.execute(this::flush);
+      }
+    }
+
+    /** @return true if the caller must start a flush, as none is queued or running */
+    private boolean markDirty() {
+      dirty = true;
+      if (flushing) {
+        return false;
+      }
+      flushing = true;
+      return true;
+    }
+
+    /** Save the job and send its events until no update is left, on the event executor. */
+    private void flush() {
+      while (true) {
+        List<ImportResultDto> snapshot;
+        synchronized (this) {
+          if (!dirty) {
+            flushing = false;
+            return;
+          }
+          dirty = false;
+          snapshot = Arrays.asList(results.clone());
+          if (superseded) {
+            continue;
+          }
+          if (status != null) {
+            job.setStatus(status);
+            job.setMessage(message);
+            job.setResult(result);
+            job.setFinishedDate(finishedDate);
+          }
+        }
+        long rowsRead = 0;
+        long rowsWritten = 0;
+        long rowsUnchanged = 0;
+        long rowsFailed = 0;
+        for (ImportResultDto fileResult : snapshot) {
+          rowsRead += fileResult.getRowsRead();
+          rowsWritten += fileResult.getRowsWritten();
+          rowsUnchanged += fileResult.getRowsUnchanged();
+          rowsFailed += fileResult.getRowsFailed();
+        }
+        job.setRowsRead(rowsRead);
+        job.setRowsWritten(rowsWritten);
+        job.setRowsUnchanged(rowsUnchanged);
+        job.setRowsFailed(rowsFailed);
+        try {
+          job = save(job, snapshot);
+        } catch (OptimisticLockingFailureException e) {
+          // failed as stale by another node, its failure is kept
+          log.warn("Import job {} was failed by another node", job.getId());
+          superseded = true;
+        } catch (RuntimeException e) {
+          // the next flush saves the job again, a job left running is failed once stale
+          log.warn("Could not save the progress of import job {}: {}", job.getId(), e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * An uploaded file, spooled to a file owned by the job unless it was rejected or was already
+   * imported.
+   */
+  private static class UploadedFile {
+
+    private final String fileName;
+
+    private final Path path;
+
+    private final String sha256;
+
+    private final String rejection;
+
+    private final Long duplicateOf;
+
+    UploadedFile(String fileName, Path path, String sha256, String rejection, Long duplicateOf) {
+      this.fileName = fileName;
+      this.path = path;
+      this.sha256 = sha256;
+      this.rejection = rejection;
+      this.duplicateOf = duplicateOf;
+    }
+  }
+}
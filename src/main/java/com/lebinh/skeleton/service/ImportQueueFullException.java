@@ -0,0 +1,11 @@
+package com.lebinh.skeleton.service;
+
+/** This exception is thrown when an import job cannot be queued, as too many are in progress. */
+public class ImportQueueFullException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ImportQueueFullException(String message) {
+    super(message);
+  }
+}
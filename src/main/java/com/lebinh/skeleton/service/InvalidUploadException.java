@@ -0,0 +1,14 @@
+package com.lebinh.skeleton.service;
+
+/**
+ * This exception is thrown when an upload session is used in a way its state does not allow, such
+ * as a chunk out of the file or a commit with missing chunks.
+ */
+public class InvalidUploadException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public InvalidUploadException(String message) {
+    super(message);
+  }
+}
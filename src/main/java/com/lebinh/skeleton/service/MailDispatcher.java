@@ -0,0 +1,284 @@
+package com.lebinh.skeleton.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.config.ExecutorStats;
+import com.lebinh.skeleton.entity.OutboxMail;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+import com.lebinh.skeleton.service.dto.MailStatsDto;
+
+/**
+ * Service sending the mails of the outbox written by {@link MailService}.
+ *
+ * <p>The outbox is drained in batches of the oldest pending mails. The scheduler thread only
+ * claims a batch, by moving its next attempt after the claim timeout in one transaction checking
+ * the version of each mail, so that two nodes never claim the same mail, and hands it to the
+ * mailExecutor, which runs the two stages of the batch: the mails of a template are rendered, then
+ * the batch is sent with {@link JavaMailSender#send(MimeMessage...)}, which sends all its messages
+ * over one SMTP connection, so the connection and the handshake are paid once per batch instead of
+ * once per mail. At most one batch per mail worker is in flight, so a slow SMTP server only delays
+ * the mails, neither the scheduler nor the other executors.
+ *
+ * <p>A mail which fails is retried after a delay doubled at each attempt, and marked as dead once
+ * it has used all its attempts. A batch lost with its node is sent again once its claim expires.
+ */
+@Service
+public class MailDispatcher {
+
+  private static final int MAX_ERROR_LENGTH = 1024;
+
+  private final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+  private final OutboxMailRepository outboxMailRepository;
+
+  private final MailService mailService;
+
+  private final JavaMailSender javaMailSender;
+
+  private final Executor mailExecutor;
+
+  private final ExecutorStats mailExecutorStats;
+
+  private final ApplicationProperties.Mail properties;
+
+  // batches claimed and not completed yet
+  private final Semaphore inFlight;
+
+  public MailDispatcher(
+      OutboxMailRepository outboxMailRepository,
+      MailService mailService,
+      JavaMailSender javaMailSender,
+      @Qualifier("mailExecutor") Executor mailExecutor,
+      ExecutorStats mailExecutorStats,
+      ApplicationProperties applicationProperties) {
+    this.outboxMailRepository = outboxMailRepository;
+    this.mailService = mailService;
+    this.javaMailSender = javaMailSender;
+    this.mailExecutor = mailExecutor;
+    this.mailExecutorStats = mailExecutorStats;
+    this.properties = applicationProperties.getMail();
+    this.inFlight = new Semaphore(properties.getWorkers());
+  }
+
+  /**
+   * Claim the pending mails due for an attempt, batch after batch, as long as a mail worker is
+   * free and mails are left.
+   */
+  @Scheduled(fixedDelayString = "${application.mail.dispatch-interval-millis:5000}")
+  public void dispatch() {
+    while (inFlight.tryAcquire()) {
+      List<OutboxMail> batch;
+      try {
+        batch = claim();
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
+      }
+      if (batch.isEmpty()) {
+        inFlight.release();
+        return;
+      }
+      Map<OutboxMail, Exception> failures = new ConcurrentHashMap<>();
+      try {
+        CompletableFuture.supplyAsync(() -> render(batch, failures), mailExecutor)
+            .thenApplyAsync(rendered -> send(rendered, failures), mailExecutor)
+            .whenComplete(
+                (mails, error) -> {
+                  try {
+                    complete(batch, failures, error);
+                  } catch (RuntimeException e) {
+                    // the mails are sent again once their claim expires
+                    log.warn("Could not complete a mail batch: {}", e.getMessage());
+                  } finally {
+                    inFlight.release();
+                  }
+                });
+      } catch (RejectedExecutionException e) {
+        // claimed mails are sent again once their claim expires
+        inFlight.release();
+        log.warn("Mail batch rejected: {}", e.getMessage());
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the next batch, whose mails are not due again before the claim timeout, empty if
+   *     another node claimed one of its mails first
+   */
+  private List<OutboxMail> claim() {
+    Instant now = Instant.now();
+    List<OutboxMail> batch =
+        outboxMailRepository.findAllByStatusAndNextAttemptDateLessThanEqualOrderById(
+            OutboxMail.Status.PENDING, now, PageRequest.of(0, properties.getBatchSize()));
+    if (!batch.isEmpty()) {
+      Instant claimExpiry = now.plusSeconds(properties.getClaimTimeoutSeconds());
+      batch.forEach(mail -> mail.setNextAttemptDate(claimExpiry));
+      try {
+        return outboxMailRepository.saveAll(batch);
+      } catch (OptimisticLockingFailureException e) {
+        // the whole claim is rolled back, the mails left are claimed at the next dispatch
+        log.debug("Mail batch claimed by another node: {}", e.getMessage());
+        return Collections.emptyList();
+      }
+    }
+    return batch;
+  }
+
+  /** Render stage: render the mails of a template which were not rendered yet. */
+  private List<OutboxMail> render(List<OutboxMail> batch, Map<OutboxMail, Exception> failures) {
+    List<OutboxMail> rendered = new ArrayList<>(batch.size());
+    for (OutboxMail mail : batch) {
+      try {
+        if (mail.getContent() == null) {
+          mailService.render(mail);
+        }
+        rendered.add(mail);
+      } catch (RuntimeException e) {
+        failures.put(mail, e);
+      }
+    }
+    return rendered;
+  }
+
+  /** Send stage: send the rendered mails over one connection. */
+  private List<OutboxMail> send(List<OutboxMail> mails, Map<OutboxMail, Exception> failures) {
+    // in outbox order; a MimeMessage is only equal to itself
+    Map<MimeMessage, OutboxMail> messages = new LinkedHashMap<>();
+    for (OutboxMail mail : mails) {
+      try {
+        messages.put(toMimeMessage(mail), mail);
+      } catch (MessagingException e) {
+        failures.put(mail, e);
+      }
+    }
+    if (!messages.isEmpty()) {
+      try {
+        javaMailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+      } catch (MailSendException e) {
+        // the messages which were not sent, all of them if the connection failed
+        e.getFailedMessages()
+            .forEach(
+                (message, cause) -> {
+                  OutboxMail mail = messages.get(message);
+                  if (mail != null) {
+                    failures.put(mail, cause);
+                  }
+                });
+      } catch (MailException e) {
+        messages.values().forEach(mail -> failures.put(mail, e));
+      }
+    }
+    return mails;
+  }
+
+  /** Record the outcome of each mail of a batch. */
+  private void complete(
+      List<OutboxMail> batch, Map<OutboxMail, Exception> failures, Throwable error) {
+    Throwable batchError = error instanceof CompletionException ? error.getCause() : error;
+    Instant now = Instant.now();
+    for (OutboxMail mail : batch) {
+      Throwable failure = batchError != null ? batchError : failures.get(mail);
+      if (failure == null) {
+        mail.setStatus(OutboxMail.Status.SENT);
+        mail.setSentDate(now);
+        mail.setLastError(null);
+      } else {
+        fail(mail, failure, now);
+      }
+      mail.setAttempts(mail.getAttempts() + 1);
+    }
+    outboxMailRepository.saveAll(batch);
+    log.debug("Dispatched {} mails, {} failed", batch.size(), failures.size());
+  }
+
+  private MimeMessage toMimeMessage(OutboxMail mail) throws MessagingException {
+    MimeMessage mimeMessage = javaMailSender.createMimeMessage();
+    MimeMessageHelper message = new MimeMessageHelper(mimeMessage, mail.isMultipart(), "UTF-8");
+    message.setTo(mail.getRecipient());
+    message.setFrom(properties.getFrom());
+    message.setSubject(mail.getSubject());
+    message.setText(mail.getContent(), mail.isHtml());
+    return mimeMessage;
+  }
+
+  /** Schedule the next attempt of a failed mail, or mark it as dead after its last attempt. */
+  private void fail(OutboxMail mail, Throwable failure, Instant now) {
+    int attempts = mail.getAttempts() + 1;
+    mail.setLastError(
+        StringUtils.abbreviate(String.valueOf(failure.getMessage()), MAX_ERROR_LENGTH));
+    if (attempts >= properties.getMaxAttempts()) {
+      mail.setStatus(OutboxMail.Status.DEAD);
+      log.warn(
+          "Email could not be sent to '{}' after {} attempts: {}",
+          mail.getRecipient(),
+          attempts,
+          failure.getMessage());
+      return;
+    }
+    long delay =
+        Math.min(
+            properties.getRetryDelaySeconds() << Math.min(attempts - 1, 30),
+            properties.getMaxRetryDelaySeconds());
+    mail.setNextAttemptDate(now.plusSeconds(delay));
+    if (log.isDebugEnabled()) {
+      log.warn(
+          "Email could not be sent to '{}', retrying in {}s", mail.getRecipient(), delay, failure);
+    } else {
+      log.warn(
+          "Email could not be sent to '{}', retrying in {}s: {}",
+          mail.getRecipient(),
+          delay,
+          failure.getMessage());
+    }
+  }
+
+  /** @return the mails waiting in the outbox and the tasks of the mail executor */
+  public MailStatsDto getStats() {
+    return new MailStatsDto(
+        outboxMailRepository.countByStatus(OutboxMail.Status.PENDING),
+        outboxMailRepository.countByStatus(OutboxMail.Status.DEAD),
+        properties.getWorkers() - inFlight.availablePermits(),
+        mailExecutorStats);
+  }
+
+  /**
+   * Remove the mails sent before the retention period.
+   *
+   * <p>This is scheduled to get fired everyday, at 02:00 (am).
+   */
+  @Scheduled(cron = "0 0 2 * * ?")
+  @Transactional
+  public void removeSentMails() {
+    outboxMailRepository.deleteByStatusAndLastModifiedDateBefore(
+        OutboxMail.Status.SENT,
+        Instant.now().minus(properties.getSentRetentionDays(), ChronoUnit.DAYS));
+  }
+}
@@ -1,103 +1,115 @@
 package com.lebinh.skeleton.service;
 
+import java.time.Instant;
+import java.util.Collections;
 import java.util.Locale;
-import javax.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.MessageSource;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.entity.OutboxMail;
 import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+import com.lebinh.skeleton.repository.UserRepository;
 
 /**
  * Service for sending emails.
  *
- * <p>We use the @Async annotation to send emails asynchronously.
+ * <p>The mails are not sent by the caller: they are written to the outbox, in the transaction of
+ * the change they notify, so that a mail is kept if and only if the change is committed. The
+ * {@link MailDispatcher} sends them later in batches, retrying those which fail.
+ *
+ * <p>A mail of a template only records the template and its user, so that the transaction of the
+ * change does not pay for its rendering. It is rendered by {@link #render(OutboxMail)}, the first
+ * stage of the dispatcher, with the user as it is then, by the {@link MailTemplateRenderer}.
  */
 @Service
+@Transactional
 public class MailService {
 
   private final Logger log = LoggerFactory.getLogger(MailService.class);
 
   private static final String USER = "user";
 
-  private static final String BASE_URL = "baseUrl";
-
-  private final JavaMailSender javaMailSender;
+  private final OutboxMailRepository outboxMailRepository;
 
-  private final MessageSource messageSource;
+  private final UserRepository userRepository;
 
-  private final SpringTemplateEngine templateEngine;
+  private final MailTemplateRenderer mailTemplateRenderer;
 
   public MailService(
-      JavaMailSender javaMailSender,
-      MessageSource messageSource,
-      SpringTemplateEngine templateEngine) {
-    this.javaMailSender = javaMailSender;
-    this.messageSource = messageSource;
-    this.templateEngine = templateEngine;
+      OutboxMailRepository outboxMailRepository,
+      UserRepository userRepository,
+      MailTemplateRenderer mailTemplateRenderer) {
+    this.outboxMailRepository = outboxMailRepository;
+    this.userRepository = userRepository;
+    this.mailTemplateRenderer = mailTemplateRenderer;
   }
 
-  @Async
   public void sendEmail(
       String to, String subject, String content, boolean isMultipart, boolean isHtml) {
     log.debug(
-        "Send email[multipart '{}' and html '{}'] to '{}' with subject '{}' and content={}",
+        "Queue email[multipart '{}' and html '{}'] to '{}' with subject '{}' and content={}",
         isMultipart,
         isHtml,
         to,
         subject,
         content);
 
-    // Prepare message using a Spring helper
-    MimeMessage mimeMessage = javaMailSender.createMimeMessage();
-    try {
-      MimeMessageHelper message = new MimeMessageHelper(mimeMessage, isMultipart, "UTF-8");
-      message.setTo(to);
-      // TODO
-      message.setFrom("XXX");
-      message.setSubject(subject);
-      message.setText(content, isHtml);
-      javaMailSender.send(mimeMessage);
-      log.debug("Sent email to User '{}'", to);
-    } catch (Exception e) {
-      if (log.isDebugEnabled()) {
-        log.warn("Email could not be sent to user '{}'", to, e);
-      } else {
-        log.warn("Email could not be sent to user '{}': {}", to, e.getMessage());
-      }
-    }
+    OutboxMail mail = new OutboxMail();
+    mail.setRecipient(to);
+    mail.setSubject(subject);
+    mail.setContent(content);
+    mail.setMultipart(isMultipart);
+    mail.setHtml(isHtml);
+    mail.setStatus(OutboxMail.Status.PENDING);
+    mail.setNextAttemptDate(Instant.now());
+    outboxMailRepository.save(mail);
   }
 
-  @Async
   public void sendEmailFromTemplate(User user, String templateName, String titleKey) {
+    log.debug("Queue email '{}' to '{}'", templateName, user.getEmail());
+    OutboxMail mail = new OutboxMail();
+    mail.setRecipient(user.getEmail());
+    mail.setTemplateName(templateName);
+    mail.setTitleKey(titleKey);
+    mail.setUserId(user.getId());
+    mail.setHtml(true);
+    mail.setStatus(OutboxMail.Status.PENDING);
+    mail.setNextAttemptDate(Instant.now());
+    outboxMailRepository.save(mail);
+  }
+
+  /**
+   * Render the subject and the content of a mail of a template, in the language of its user.
+   *
+   * @param mail a mail of a template, whose subject and content are set
+   * @throws IllegalStateException if the user of the mail no longer exists
+   */
+  @Transactional(readOnly = true)
+  public void render(OutboxMail mail) {
+    Long userId = mail.getUserId();
+    User user =
+        userRepository
+            .findById(userId)
+            .orElseThrow(() -> new IllegalStateException("User " + userId + " not found"));
     Locale locale = Locale.forLanguageTag(user.getLangKey());
-    Context context = new Context(locale);
-    context.setVariable(USER, user);
-    // TODO
-    context.setVariable(BASE_URL, "XXX");
-    String content = templateEngine.process(templateName, context);
-    String subject = messageSource.getMessage(titleKey, null, locale);
-    sendEmail(user.getEmail(), subject, content, false, true);
+    mail.setContent(
+        mailTemplateRenderer.render(
+            mail.getTemplateName(), locale, Collections.singletonMap(USER, user)));
+    mail.setSubject(mailTemplateRenderer.renderSubject(mail.getTitleKey(), locale));
   }
 
-  @Async
   public void sendActivationEmail(User user) {
     log.debug("Sending activation email to '{}'", user.getEmail());
     sendEmailFromTemplate(user, "activationEmail", "email.activation.title");
   }
 
-  @Async
   public void sendCreationEmail(User user) {
     log.debug("Sending creation email to '{}'", user.getEmail());
     sendEmailFromTemplate(user, "creationEmail", "email.activation.title");
   }
 
-  @Async
   public void sendPasswordResetMail(User user) {
     log.debug("Sending password reset email to '{}'", user.getEmail());
     sendEmailFromTemplate(user, "passwordResetEmail", "email.reset.title");
@@ -0,0 +1,160 @@
+package com.lebinh.skeleton.service;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceResolvable;
+import org.springframework.context.NoSuchMessageException;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ITemplateResolver;
+import com.lebinh.skeleton.config.ApplicationProperties;
+
+/**
+ * Renders the mails of the templates of the email template resolver.
+ *
+ * <p>The renderer has its own template engine, so that the mail templates do not depend on the
+ * cache settings of the web templates: a template is parsed once, on its first mail, and the engine
+ * then replays its parsed events, whose static fragments are kept as they are. Its messages, the
+ * subjects included, are resolved once per code and locale, then memoized; a message with
+ * arguments keeps its parsed {@link MessageFormat}. Both caches can be disabled by {@link
+ * ApplicationProperties.Mail#isTemplateCache()}, to edit the templates and the messages without a
+ * restart.
+ */
+@Service
+public class MailTemplateRenderer {
+
+  private static final String BASE_URL = "baseUrl";
+
+  private final SpringTemplateEngine templateEngine;
+
+  private final MessageSource messageSource;
+
+  private final String baseUrl;
+
+  public MailTemplateRenderer(
+      @Qualifier("emailTemplateResolver") ITemplateResolver emailTemplateResolver,
+      MessageSource messageSource,
+      ApplicationProperties applicationProperties) {
+    ApplicationProperties.Mail properties = applicationProperties.getMail();
+    this.messageSource =
+        properties.isTemplateCache() ? new CachingMessageSource(messageSource) : messageSource;
+    this.baseUrl = properties.getBaseUrl();
+    this.templateEngine = new SpringTemplateEngine();
+    templateEngine.setTemplateResolver(emailTemplateResolver);
+    templateEngine.setTemplateEngineMessageSource(this.messageSource);
+    templateEngine.setEnableSpringELCompiler(true);
+  }
+
+  /**
+   * @param templateName the name of the template
+   * @param locale the language of the mail
+   * @param variables the variables of the template, besides the base URL of the application
+   * @return the content of the mail
+   */
+  public String render(String templateName, Locale locale, Map<String, Object> variables) {
+    Context context = new Context(locale, variables);
+    context.setVariable(BASE_URL, baseUrl);
+    return templateEngine.process(templateName, context);
+  }
+
+  /**
+   * @param titleKey the message key of the subject
+   * @param locale the language of the mail
+   * @return the subject of the mail
+   */
+  public String renderSubject(String titleKey, Locale locale) {
+    return messageSource.getMessage(titleKey, null, locale);
+  }
+
+  /**
+   * A message source memoizing the messages of another one per code and locale. The messages
+   * without arguments are kept resolved; the others keep their format, used by one thread at a
+   * time. The messages which are not found are not memoized.
+   */
+  static class CachingMessageSource implements MessageSource {
+
+    private final MessageSource delegate;
+
+    private final Map<Key, String> messages = new ConcurrentHashMap<>();
+
+    private final Map<Key, MessageFormat> formats = new ConcurrentHashMap<>();
+
+    CachingMessageSource(MessageSource delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getMessage(String code, Object[] args, String defaultMessage, Locale locale) {
+      try {
+        return getMessage(code, args, locale);
+      } catch (NoSuchMessageException e) {
+        return delegate.getMessage(code, args, defaultMessage, locale);
+      }
+    }
+
+    @Override
+    public String getMessage(String code, Object[] args, Locale locale) {
+      Key key = new Key(code, locale);
+      // the message, unformatted when it is resolved without arguments
+      String message =
+          messages.computeIfAbsent(key, k -> delegate.getMessage(k.code, null, k.locale));
+      if (args == null || args.length == 0) {
+        return message;
+      }
+      MessageFormat format = formats.computeIfAbsent(key, k -> new MessageFormat(message, locale));
+      synchronized (format) {
+        return format.format(args);
+      }
+    }
+
+    @Override
+    public String getMessage(MessageSourceResolvable resolvable, Locale locale) {
+      String[] codes = resolvable.getCodes();
+      if (codes != null) {
+        for (String code : codes) {
+          try {
+            return getMessage(code, resolvable.getArguments(), locale);
+          } catch (NoSuchMessageException e) {
+            // try the next code
+          }
+        }
+      }
+      return delegate.getMessage(resolvable, locale);
+    }
+
+    private static class Key {
+
+      private final String code;
+
+      private final Locale locale;
+
+      Key(String code, Locale locale) {
+        this.code = code;
+        this.locale = locale;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) {
+          return true;
+        }
+        if (!(o instanceof Key)) {
+          return false;
+        }
+        Key key = (Key) o;
+        return code.equals(key.code) && Objects.equals(locale, key.locale);
+      }
+
+      @Override
+      public int hashCode() {
+        return Objects.hash(code, locale);
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.lebinh.skeleton.service;
+
+/**
+ * This exception is thrown when an upload would exceed the space left to the spooled uploads.
+ */
+public class UploadCapacityExceededException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public UploadCapacityExceededException(String message) {
+    super(message);
+  }
+}
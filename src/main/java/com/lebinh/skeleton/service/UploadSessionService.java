@@ -0,0 +1,407 @@
+package com.lebinh.skeleton.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.UploadChunk;
+import com.lebinh.skeleton.entity.UploadSession;
+import com.lebinh.skeleton.repository.UploadChunkRepository;
+import com.lebinh.skeleton.repository.UploadSessionRepository;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
+import com.lebinh.skeleton.service.dto.UploadSessionDto;
+
+/**
+ * Service for the resumable uploads of large files, sent in chunks.
+ *
+ * <p>A session preallocates the spooled file to its full size with {@link UploadSpoolService}.
+ * Each chunk is written at its offset by a positional write, and recorded with its SHA-256 once
+ * its bytes match the checksum sent by the client, so a client can send the chunks in any order,
+ * in parallel, and resend the chunks missing from {@link UploadSessionDto#getReceivedRanges()}
+ * after an interruption. The file only enters the import pipeline when the session is committed,
+ * once every byte was received, through {@link ImportJobService#submit(String, List, List,
+ * boolean)}.
+ *
+ * <p>The chunks of a session are written under the read lock of the session, so they can be written
+ * in parallel, and its commit and expiry under the write lock: a commit waits for the chunks being
+ * written, and a chunk sent during a commit is rejected instead of changing the file being
+ * submitted.
+ */
+@Service
+public class UploadSessionService {
+
+  private final Logger log = LoggerFactory.getLogger(UploadSessionService.class);
+
+  private final UploadSessionRepository uploadSessionRepository;
+
+  private final UploadChunkRepository uploadChunkRepository;
+
+  private final UploadSpoolService uploadSpoolService;
+
+  private final ImportJobService importJobService;
+
+  private final long maxChunkedUploadSize;
+
+  private final int uploadSessionExpiryHours;
+
+  // locks of the sessions used on this node, removed once the session is committed, failed or
+  // expired
+  private final Map<Long, ReadWriteLock> locks = new ConcurrentHashMap<>();
+
+  public UploadSessionService(
+      UploadSessionRepository uploadSessionRepository,
+      UploadChunkRepository uploadChunkRepository,
+      UploadSpoolService uploadSpoolService,
+      ImportJobService importJobService,
+      ApplicationProperties applicationProperties) {
+    this.uploadSessionRepository = uploadSessionRepository;
+    this.uploadChunkRepository = uploadChunkRepository;
+    this.uploadSpoolService = uploadSpoolService;
+    this.importJobService = importJobService;
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    this.maxChunkedUploadSize = upload.getMaxChunkedUploadSize();
+    this.uploadSessionExpiryHours = upload.getUploadSessionExpiryHours();
+  }
+
+  /**
+   * Open a session for a file and preallocate its spooled file.
+   *
+   * @param username the user who uploads the file
+   * @param fileName the name of the file
+   * @param size the size of the file, in bytes
+   * @return the open session
+   * @throws InvalidUploadException if the size is not positive or above the maximum
+   * @throws UploadCapacityExceededException if there is no space left to spool the file
+   * @throws IOException if the spooled file could not be allocated
+   */
+  public UploadSessionDto create(String username, String fileName, long size) throws IOException {
+    if (size <= 0 || size > maxChunkedUploadSize) {
+      throw new InvalidUploadException(
+          "The size of " + fileName + " must be between 1 and " + maxChunkedUploadSize);
+    }
+    Path path = uploadSpoolService.allocate(size);
+    UploadSession session = new UploadSession();
+    session.setUsername(username);
+    session.setFileName(fileName);
+    session.setSize(size);
+    session.setPath(path.toString());
+    session.setStatus(UploadSession.Status.OPEN);
+    try {
+      session = uploadSessionRepository.save(session);
+    } catch (RuntimeException e) {
+      uploadSpoolService.delete(path);
+      throw e;
+    }
+    log.debug("Opened upload session {} of {} bytes for {}", session.getId(), size, username);
+    return toDto(session, Collections.emptyList());
+  }
+
+  /**
+   * @param id the id of the session
+   * @param username the user who uploads the file
+   * @return the session with the ranges received so far, if it exists and belongs to the user
+   */
+  public Optional<UploadSessionDto> find(Long id, String username) {
+    return findOwned(id, username).map(session -> toDto(session, findChunks(session.getId())));
+  }
+
+  /**
+   * Write a chunk of the file of an open session. A chunk sent again replaces the chunks it
+   * overlaps, which are only received again once it is written and its checksum verified.
+   *
+   * @param id the id of the session
+   * @param username the user who uploads the file
+   * @param offset the offset of the chunk in the file
+   * @param length the length of the chunk
+   * @param sha256 the hex SHA-256 of the chunk sent by the client, or null not to verify it
+   * @param in the content of the chunk
+   * @return the session with the ranges received so far, if it exists and belongs to the user
+   * @throws InvalidUploadException if the session is being committed, committed or failed, the
+   *     chunk is out of the file or its checksum does not match
+   * @throws IOException if the chunk could not be written or was incomplete
+   */
+  public Optional<UploadSessionDto> writeChunk(
+      Long id, String username, long offset, long length, String sha256, InputStream in)
+      throws IOException {
+    if (!findOwned(id, username).isPresent()) {
+      return Optional.empty();
+    }
+    Lock lock = lock(id).readLock();
+    if (!lock.tryLock()) {
+      throw new InvalidUploadException("Upload session " + id + " is being committed or removed");
+    }
+    try {
+      // read again under the lock, the session may have been committed in between
+      Optional<UploadSession> found = uploadSessionRepository.findById(id);
+      if (!found.isPresent()) {
+        return Optional.empty();
+      }
+      return Optional.of(writeChunk(found.get(), offset, length, sha256, in));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private UploadSessionDto writeChunk(
+      UploadSession session, long offset, long length, String sha256, InputStream in)
+      throws IOException {
+    Long id = session.getId();
+    checkOpen(session);
+    if (offset < 0 || length <= 0 || offset + length > session.getSize()) {
+      throw new InvalidUploadException(
+          "Chunk of " + length + " bytes at " + offset + " out of " + session.getSize() + " bytes");
+    }
+
+    List<UploadChunk> overlapped =
+        findChunks(id)
+            .stream()
+            .filter(
+                chunk ->
+                    chunk.getStartOffset() < offset + length
+                        && offset < chunk.getStartOffset() + chunk.getLength())
+            .collect(Collectors.toList());
+    if (!overlapped.isEmpty()) {
+      uploadChunkRepository.deleteInBatch(overlapped);
+    }
+    String written = uploadSpoolService.write(Paths.get(session.getPath()), offset, length, in);
+    if (sha256 != null && !sha256.equalsIgnoreCase(written)) {
+      throw new InvalidUploadException("Checksum mismatch of the chunk at " + offset);
+    }
+
+    UploadChunk chunk = new UploadChunk();
+    chunk.setUploadSessionId(id);
+    chunk.setStartOffset(offset);
+    chunk.setLength(length);
+    chunk.setSha256(written);
+    try {
+      uploadChunkRepository.save(chunk);
+    } catch (DataIntegrityViolationException e) {
+      // the same chunk was written concurrently, either record will do
+      log.debug("Chunk at {} of upload session {} already saved", offset, id);
+    }
+    // each chunk keeps the session from expiring
+    uploadSessionRepository.touch(id, Instant.now());
+    return toDto(session, findChunks(id));
+  }
+
+  /**
+   * Commit the file of a session to a new import job, once all its bytes were received. A session
+   * already committed returns its job, so a commit can be retried.
+   *
+   * @param id the id of the session
+   * @param username the user who uploads the file
+   * @param force true to import the file and all its rows even if they were already imported
+   * @return the import job of the file, marked as duplicate if it was returned by an earlier
+   *     commit or import, if the session exists and belongs to the user
+   * @throws InvalidUploadException if bytes are missing or the session failed
+   * @throws IOException if the file could not be read
+   */
+  public Optional<ImportJobDto> commit(Long id, String username, boolean force)
+      throws IOException {
+    if (!findOwned(id, username).isPresent()) {
+      return Optional.empty();
+    }
+    // a retried commit waits for the first one, then returns its job
+    Lock lock = lock(id).writeLock();
+    lock.lock();
+    try {
+      Optional<UploadSession> found = uploadSessionRepository.findById(id);
+      if (!found.isPresent()) {
+        return Optional.empty();
+      }
+      UploadSession session = found.get();
+      if (session.getStatus() == UploadSession.Status.COMMITTED) {
+        return importJobService.find(session.getImportJobId()).map(this::asDuplicate);
+      }
+      checkOpen(session);
+      return Optional.of(commit(session, force));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ImportJobDto commit(UploadSession session, boolean force) throws IOException {
+    Long id = session.getId();
+    List<UploadChunk> chunks = findChunks(id);
+    long received = receivedEnd(chunks);
+    if (received < session.getSize()) {
+      throw new InvalidUploadException(
+          "Upload session " + id + " is missing the bytes from " + received);
+    }
+    Path path = Paths.get(session.getPath());
+    UploadSpoolService.SpooledFile spooledFile = uploadSpoolService.digest(path);
+    ImportJobDto job;
+    try {
+      job =
+          importJobService.submit(
+              session.getUsername(),
+              Collections.singletonList(session.getFileName()),
+              Collections.singletonList(spooledFile),
+              force);
+    } catch (RuntimeException e) {
+      // the spooled file was handed over to the import job, which may have deleted it
+      uploadSpoolService.delete(path);
+      close(session, UploadSession.Status.FAILED, null, chunks);
+      log.debug("Upload session {} failed: {}", id, e.getMessage());
+      throw e;
+    }
+    // the spooled file is now owned by the import job
+    close(session, UploadSession.Status.COMMITTED, job.getId(), chunks);
+    log.debug("Committed upload session {} to import job {}", id, job.getId());
+    return job;
+  }
+
+  /** Record the final status of a session, which no longer has a spooled file nor chunks. */
+  private void close(
+      UploadSession session,
+      UploadSession.Status status,
+      Long importJobId,
+      List<UploadChunk> chunks) {
+    session.setStatus(status);
+    session.setImportJobId(importJobId);
+    session.setPath(null);
+    uploadSessionRepository.save(session);
+    uploadChunkRepository.deleteInBatch(chunks);
+    // the chunks written later read the final status under a new lock
+    locks.remove(session.getId());
+  }
+
+  /**
+   * Delete the spooled files left by the last stop, keeping the files of the open sessions, whose
+   * chunks can still be sent. This runs once the context is refreshed, before the server accepts
+   * uploads.
+   */
+  @EventListener(ContextRefreshedEvent.class)
+  public void recoverSpooledFiles() {
+    List<Path> paths =
+        uploadSessionRepository
+            .findAllByStatus(UploadSession.Status.OPEN)
+            .stream()
+            .filter(session -> session.getPath() != null)
+            .map(session -> Paths.get(session.getPath()))
+            .collect(Collectors.toList());
+    try {
+      int deleted = uploadSpoolService.recover(paths);
+      log.info("Kept the spooled files of {} upload sessions, deleted {}", paths.size(), deleted);
+    } catch (IOException e) {
+      log.warn("Could not recover the spooled files: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Remove the sessions which received no chunk nor commit during their expiry, with the spooled
+   * files of those which were not committed. A session whose chunks or commit are in progress on
+   * this node is skipped until the next run.
+   *
+   * <p>This is scheduled to get fired every hour, at minute 15.
+   */
+  @Scheduled(cron = "0 15 * * * ?")
+  public void removeExpiredSessions() {
+    Instant before = Instant.now().minus(uploadSessionExpiryHours, ChronoUnit.HOURS);
+    for (UploadSession expired : uploadSessionRepository.findAllByLastModifiedDateBefore(before)) {
+      Long id = expired.getId();
+      Lock lock = lock(id).writeLock();
+      if (!lock.tryLock()) {
+        log.debug("Upload session {} is in use, not removing it", id);
+        continue;
+      }
+      try {
+        // read again under the lock, a chunk may have been written in between
+        uploadSessionRepository
+            .findById(id)
+            .filter(session -> session.getLastModifiedDate().isBefore(before))
+            .ifPresent(this::remove);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void remove(UploadSession session) {
+    log.debug("Removing expired upload session {}", session.getId());
+    if (session.getStatus() == UploadSession.Status.OPEN) {
+      uploadSpoolService.delete(Paths.get(session.getPath()));
+      close(session, UploadSession.Status.FAILED, null, findChunks(session.getId()));
+    }
+    uploadSessionRepository.delete(session);
+    locks.remove(session.getId());
+  }
+
+  /** @return the session, if it exists and belongs to the user, as if it did not exist otherwise */
+  private Optional<UploadSession> findOwned(Long id, String username) {
+    return uploadSessionRepository
+        .findById(id)
+        .filter(session -> session.getUsername().equals(username));
+  }
+
+  private ReadWriteLock lock(Long id) {
+    return locks.computeIfAbsent(id, key -> new ReentrantReadWriteLock());
+  }
+
+  private void checkOpen(UploadSession session) {
+    if (session.getStatus() == UploadSession.Status.FAILED) {
+      throw new InvalidUploadException(
+          "Upload session " + session.getId() + " failed, please upload the file again");
+    }
+    if (session.getStatus() != UploadSession.Status.OPEN) {
+      throw new InvalidUploadException("Upload session " + session.getId() + " is committed");
+    }
+  }
+
+  private List<UploadChunk> findChunks(Long id) {
+    return uploadChunkRepository.findAllByUploadSessionIdOrderByStartOffset(id);
+  }
+
+  /** @return the offset of the first byte missing from the chunks, sorted by offset */
+  private static long receivedEnd(List<UploadChunk> chunks) {
+    long end = 0;
+    for (UploadChunk chunk : chunks) {
+      if (chunk.getStartOffset() > end) {
+        break;
+      }
+      end = Math.max(end, chunk.getStartOffset() + chunk.getLength());
+    }
+    return end;
+  }
+
+  private ImportJobDto asDuplicate(ImportJobDto job) {
+    job.setDuplicate(true);
+    return job;
+  }
+
+  private UploadSessionDto toDto(UploadSession session, List<UploadChunk> chunks) {
+    List<UploadSessionDto.Range> ranges = new ArrayList<>();
+    UploadSessionDto.Range last = null;
+    for (UploadChunk chunk : chunks) {
+      long start = chunk.getStartOffset();
+      long end = start + chunk.getLength();
+      if (last != null && start <= last.getEnd()) {
+        last.setEnd(Math.max(last.getEnd(), end));
+      } else {
+        last = new UploadSessionDto.Range(start, end);
+        ranges.add(last);
+      }
+    }
+    return new UploadSessionDto(session, ranges);
+  }
+}
@@ -0,0 +1,291 @@
+package com.lebinh.skeleton.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.utils.FileUtil;
+
+/**
+ * Service spooling uploaded files to disk, within a global limit of spooled bytes.
+ *
+ * <p>The container keeps a part in memory only below spring.servlet.multipart.file-size-threshold
+ * and rejects a request above spring.servlet.multipart.max-request-size while parsing it. The
+ * parts are then copied through a direct buffer to files owned by the application, which are
+ * counted until they are deleted, so that concurrent uploads can neither fill the heap nor the
+ * disk. The SHA-256 of each file is computed while it is copied.
+ *
+ * <p>A file uploaded in chunks is instead preallocated to its full size, and each chunk is written
+ * at its offset with positional writes, so that chunks can arrive in any order or be retried.
+ *
+ * <p>The spool directory belongs to one node: the files left by a stop are deleted at the next
+ * start by {@link #recover(Collection)}, except the files of the open upload sessions, whose space
+ * is reserved again.
+ */
+@Service
+public class UploadSpoolService {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Logger log = LoggerFactory.getLogger(UploadSpoolService.class);
+
+  private final Path directory;
+
+  private final long maxSpooledSize;
+
+  private final AtomicLong spooledSize = new AtomicLong();
+
+  // size reserved by each spooled file, released when it is deleted
+  private final Map<Path, Long> spooledFiles = new ConcurrentHashMap<>();
+
+  public UploadSpoolService(ApplicationProperties applicationProperties) {
+    ApplicationProperties.Upload upload = applicationProperties.getUpload();
+    this.directory = Paths.get(upload.getSpoolDirectory()).toAbsolutePath();
+    this.maxSpooledSize = upload.getMaxSpooledSize();
+  }
+
+  /**
+   * Spool the files of an upload. The space of all the files is reserved first, so an upload is
+   * either spooled entirely or rejected before anything is written.
+   *
+   * @param files the uploaded files
+   * @return the spooled file of each upload, in the same order, to be deleted with {@link
+   *     #delete(Path)}
+   * @throws UploadCapacityExceededException if the files would exceed the maximum spooled size
+   * @throws IOException if a file could not be spooled
+   */
+  public List<SpooledFile> spool(List<MultipartFile> files) throws IOException {
+    long reserved = files.stream().mapToLong(MultipartFile::getSize).sum();
+    reserve(reserved);
+    List<SpooledFile> spooled = new ArrayList<>(files.size());
+    List<Path> paths = new ArrayList<>(files.size());
+    try {
+      Files.createDirectories(directory);
+      for (MultipartFile file : files) {
+        Path path = Files.createTempFile(directory, "upload-", ".part");
+        spooledFiles.put(path, file.getSize());
+        reserved -= file.getSize();
+        paths.add(path);
+        spooled.add(new SpooledFile(path, copy(file, path)));
+      }
+    } catch (IOException | RuntimeException e) {
+      spooledSize.addAndGet(-reserved);
+      paths.forEach(this::delete);
+      throw e;
+    }
+    return spooled;
+  }
+
+  /**
+   * Reserve the space of a file uploaded in chunks and preallocate it.
+   *
+   * @param size the size of the file
+   * @return the spooled file, to be written with {@link #write} and deleted with {@link
+   *     #delete(Path)}
+   * @throws UploadCapacityExceededException if the file would exceed the maximum spooled size
+   * @throws IOException if the file could not be created
+   */
+  public Path allocate(long size) throws IOException {
+    reserve(size);
+    Path path = null;
+    try {
+      Files.createDirectories(directory);
+      path = Files.createTempFile(directory, "upload-", ".part");
+      spooledFiles.put(path, size);
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        file.setLength(size);
+      }
+    } catch (IOException | RuntimeException e) {
+      if (path == null || !spooledFiles.containsKey(path)) {
+        spooledSize.addAndGet(-size);
+      }
+      if (path != null) {
+        delete(path);
+      }
+      throw e;
+    }
+    return path;
+  }
+
+  /**
+   * Write a chunk of a file allocated by {@link #allocate(long)} at its offset, without moving the
+   * other chunks. Chunks can be written concurrently.
+   *
+   * @param path the spooled file
+   * @param position the offset of the chunk in the file
+   * @param length the length of the chunk
+   * @param in the content of the chunk, read up to its length and not closed
+   * @return the hex SHA-256 of the chunk
+   * @throws IOException if the chunk could not be written or is shorter than its length
+   */
+  public String write(Path path, long position, long length, InputStream in) throws IOException {
+    long written = 0;
+    MessageDigest digest = FileUtil.sha256();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    ReadableByteChannel source = Channels.newChannel(in);
+    try (FileChannel target = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      while (written < length) {
+        buffer.limit((int) Math.min(BUFFER_SIZE, length - written));
+        if (source.read(buffer) == -1) {
+          break;
+        }
+        buffer.flip();
+        digest.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          written += target.write(buffer, position + written);
+        }
+        buffer.clear();
+      }
+    }
+    if (written != length) {
+      throw new IOException("Incomplete chunk at " + position + " of " + path.getFileName());
+    }
+    return FileUtil.toHex(digest.digest());
+  }
+
+  /**
+   * @param path a spooled file
+   * @return the file with the SHA-256 of its content
+   * @throws IOException if the file could not be read
+   */
+  public SpooledFile digest(Path path) throws IOException {
+    MessageDigest digest = FileUtil.sha256();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (source.read(buffer) != -1) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return new SpooledFile(path, FileUtil.toHex(digest.digest()));
+  }
+
+  /**
+   * Delete a spooled file and release its space.
+   *
+   * @param path the spooled file
+   */
+  public void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("Could not delete {}: {}", path, e.getMessage());
+    }
+    Long size = spooledFiles.remove(path);
+    if (size != null) {
+      spooledSize.addAndGet(-size);
+    }
+  }
+
+  /**
+   * Account the spooled files kept from the last run, and delete the others, left by the uploads
+   * and the import jobs interrupted by the stop. The files spooled since the start are left alone.
+   *
+   * @param kept the spooled files still in use, such as the files of the open upload sessions
+   * @return the number of deleted files
+   * @throws IOException if the spool directory could not be listed
+   */
+  public int recover(Collection<Path> kept) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return 0;
+    }
+    Set<Path> keptFiles =
+        kept.stream().map(path -> path.toAbsolutePath().normalize()).collect(Collectors.toSet());
+    int deleted = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "upload-*.part")) {
+      for (Path file : files) {
+        if (spooledFiles.containsKey(file)) {
+          continue;
+        }
+        if (keptFiles.contains(file.toAbsolutePath().normalize())) {
+          long size = Files.size(file);
+          if (spooledFiles.putIfAbsent(file, size) == null) {
+            spooledSize.addAndGet(size);
+          }
+        } else {
+          delete(file);
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private void reserve(long size) {
+    long current;
+    do {
+      current = spooledSize.get();
+      if (current + size > maxSpooledSize) {
+        throw new UploadCapacityExceededException(
+            "Too many uploads in progress, please retry later");
+      }
+    } while (!spooledSize.compareAndSet(current, current + size));
+  }
+
+  /** @return the hex SHA-256 of the copied content */
+  private String copy(MultipartFile file, Path path) throws IOException {
+    long size = 0;
+    MessageDigest digest = FileUtil.sha256();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (ReadableByteChannel source = Channels.newChannel(file.getInputStream());
+        FileChannel target = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      while (source.read(buffer) != -1) {
+        buffer.flip();
+        digest.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          size += target.write(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    if (size != file.getSize()) {
+      throw new IOException("Incomplete upload " + file.getOriginalFilename());
+    }
+    return FileUtil.toHex(digest.digest());
+  }
+
+  /** An uploaded file spooled to disk. */
+  public static class SpooledFile {
+
+    private final Path path;
+
+    private final String sha256;
+
+    SpooledFile(Path path, String sha256) {
+      this.path = path;
+      this.sha256 = sha256;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /** @return the hex SHA-256 of the content of the file */
+    public String getSha256() {
+      return sha256;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package com.lebinh.skeleton.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.constant.CommonConstant;
+import com.lebinh.skeleton.service.dto.UserDto;
+import com.lebinh.skeleton.utils.SpreadSheetUtil;
+
+/**
+ * Service for exporting the whole user directory.
+ *
+ * <p>Users are read through a forward-only JDBC cursor (the MySQL driver only honours the fetch
+ * size when the datasource URL enables <code>useCursorFetch</code>) and their authorities are
+ * looked up one batch at a time, so the memory used by an export does not depend on the number of
+ * users. The authorities are read on the connection of the cursor, which a server side cursor
+ * allows, so an export holds a single pooled connection.
+ */
+@Service
+public class UserExportService {
+
+  private final Logger log = LoggerFactory.getLogger(UserExportService.class);
+
+  private static final String SELECT_USERS =
+      "select id, login, first_name, last_name, email, image_url, activated, lang_key,"
+          + " created_by, created_date, last_modified_by, last_modified_date"
+          + " from sys_user where login <> ? order by id";
+
+  private static final String SELECT_AUTHORITIES =
+      "select user_id, authority_name from sys_user_authority where user_id in (:ids)";
+
+  private static final String[] COLUMNS = {
+    "id", "login", "first_name", "last_name", "email", "image_url", "activated", "lang_key",
+    "created_date", "authorities"
+  };
+
+  /** Supported export formats. */
+  public enum Format {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson"),
+    XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+    private final String contentType;
+
+    private final String extension;
+
+    Format(String contentType, String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final ObjectWriter ndjsonWriter;
+
+  private final int fetchSize;
+
+  private final int batchSize;
+
+  private final int rowAccessWindow;
+
+  public UserExportService(
+      DataSource dataSource, ObjectMapper objectMapper, ApplicationProperties properties) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.ndjsonWriter =
+        objectMapper
+            .writer()
+            .without(SerializationFeature.INDENT_OUTPUT)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.fetchSize = properties.getExport().getFetchSize();
+    this.batchSize = properties.getExport().getBatchSize();
+    this.rowAccessWindow = properties.getExport().getRowAccessWindow();
+  }
+
+  /**
+   * Write all managed users to the given stream.
+   *
+   * @param format the output format
+   * @param out the stream to write to, not closed
+   * @throws IOException if the stream could not be written
+   */
+  public void exportUsers(Format format, OutputStream out) throws IOException {
+    log.debug("Exporting users as {}", format);
+    try {
+      if (format == Format.NDJSON) {
+        exportNdjson(out);
+      } else if (format == Format.XLSX) {
+        exportXlsx(out);
+      } else {
+        exportCsv(out);
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Read all managed users in id order and hand them over batch by batch, with their authorities.
+   *
+   * @param batchHandler receives each batch; the list is reused and must not be kept
+   */
+  public void forEachUserBatch(Consumer<List<UserDto>> batchHandler) {
+    jdbcTemplate.execute(
+        (ConnectionCallback<Void>)
+            connection -> {
+              JdbcTemplate cursorTemplate =
+                  new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+              cursorTemplate.setFetchSize(fetchSize);
+              NamedParameterJdbcTemplate authorityTemplate =
+                  new NamedParameterJdbcTemplate(cursorTemplate);
+              List<UserDto> batch = new ArrayList<>(batchSize);
+              cursorTemplate.query(
+                  SELECT_USERS,
+                  rs -> {
+                    batch.add(toUserDto(rs));
+                    if (batch.size() == batchSize) {
+                      flushBatch(authorityTemplate, batch, batchHandler);
+                    }
+                  },
+                  CommonConstant.ANONYMOUS_USER);
+              if (!batch.isEmpty()) {
+                flushBatch(authorityTemplate, batch, batchHandler);
+              }
+              return null;
+            });
+  }
+
+  private void exportCsv(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writeCsvLine(writer, (Object[]) COLUMNS);
+    forEachUserBatch(
+        batch -> {
+          try {
+            for (UserDto user : batch) {
+              writeCsvLine(writer, toColumns(user));
+            }
+            writer.flush();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+    writer.flush();
+  }
+
+  private void exportXlsx(OutputStream out) throws IOException {
+    try (SpreadSheetUtil.StreamingSheetWriter writer =
+        SpreadSheetUtil.createStreamingWriter("users", rowAccessWindow, COLUMNS)) {
+      forEachUserBatch(
+          batch -> {
+            for (UserDto user : batch) {
+              writer.writeRow(toColumns(user));
+            }
+          });
+      writer.finish(out);
+    }
+  }
+
+  private void exportNdjson(OutputStream out) throws IOException {
+    JsonGenerator generator = ndjsonWriter.getFactory().createGenerator(out);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    // one value per line, without the space Jackson writes between root values
+    generator.setRootValueSeparator(null);
+    forEachUserBatch(
+        batch -> {
+          try {
+            for (UserDto user : batch) {
+              ndjsonWriter.writeValue(generator, user);
+              generator.writeRaw('\n');
+            }
+            generator.flush();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+    generator.close();
+  }
+
+  private void flushBatch(
+      NamedParameterJdbcTemplate authorityTemplate,
+      List<UserDto> batch,
+      Consumer<List<UserDto>> batchHandler) {
+    Map<Long, Set<String>> authorities = new HashMap<>();
+    authorityTemplate.query(
+        SELECT_AUTHORITIES,
+        Collections.singletonMap(
+            "ids", batch.stream().map(UserDto::getId).collect(Collectors.toList())),
+        rs -> {
+          authorities
+              .computeIfAbsent(rs.getLong("user_id"), id -> new HashSet<>())
+              .add(rs.getString("authority_name"));
+        });
+    for (UserDto user : batch) {
+      user.setAuthorities(authorities.getOrDefault(user.getId(), Collections.emptySet()));
+    }
+    batchHandler.accept(batch);
+    batch.clear();
+  }
+
+  private static Object[] toColumns(UserDto user) {
+    return new Object[] {
+      user.getId(),
+      user.getLogin(),
+      user.getFirstName(),
+      user.getLastName(),
+      user.getEmail(),
+      user.getImageUrl(),
+      user.isActivated(),
+      user.getLangKey(),
+      user.getCreatedDate(),
+      String.join(";", user.getAuthorities())
+    };
+  }
+
+  private static UserDto toUserDto(ResultSet rs) throws SQLException {
+    UserDto user = new UserDto();
+    user.setId(rs.getLong("id"));
+    user.setLogin(rs.getString("login"));
+    user.setFirstName(rs.getString("first_name"));
+    user.setLastName(rs.getString("last_name"));
+    user.setEmail(rs.getString("email"));
+    user.setImageUrl(rs.getString("image_url"));
+    user.setActivated(rs.getBoolean("activated"));
+    user.setLangKey(rs.getString("lang_key"));
+    user.setCreatedBy(rs.getString("created_by"));
+    user.setCreatedDate(toInstant(rs.getTimestamp("created_date")));
+    user.setLastModifiedBy(rs.getString("last_modified_by"));
+    user.setLastModifiedDate(toInstant(rs.getTimestamp("last_modified_date")));
+    return user;
+  }
+
+  private static Instant toInstant(Timestamp timestamp) {
+    return timestamp == null ? null : timestamp.toInstant();
+  }
+
+  private static void writeCsvLine(Writer writer, Object... values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        writer.write(',');
+      }
+      if (values[i] != null) {
+        writeCsvValue(writer, values[i].toString());
+      }
+    }
+    writer.write("\r\n");
+  }
+
+  private static void writeCsvValue(Writer writer, String value) throws IOException {
+    boolean quoted = false;
+    for (int i = 0; i < value.length() && !quoted; i++) {
+      char c = value.charAt(i);
+      quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quoted) {
+      writer.write(value);
+      return;
+    }
+    writer.write('"');
+    writer.write(value.replace("\"", "\"\""));
+    writer.write('"');
+  }
+}
@@ -0,0 +1,552 @@
+package com.lebinh.skeleton.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.security.MessageDigest;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.constant.ImportConstant;
+import com.lebinh.skeleton.repository.BatchUpsert;
+import com.lebinh.skeleton.service.dto.ImportResultDto;
+import com.lebinh.skeleton.service.dto.UserDto;
+import com.lebinh.skeleton.utils.CsvReader;
+import com.lebinh.skeleton.utils.FileCheckUtil;
+import com.lebinh.skeleton.utils.FileUtil;
+import com.lebinh.skeleton.utils.RandomUtil;
+import com.lebinh.skeleton.utils.SheetRecord;
+import com.lebinh.skeleton.utils.SheetSchema;
+import com.lebinh.skeleton.utils.SheetSchema.ColumnType;
+import com.lebinh.skeleton.utils.SpreadSheetUtil;
+import com.lebinh.skeleton.utils.WorkbookInfo;
+
+/**
+ * Service importing users from the xlsx workbooks uploaded to /api/upload, run by {@link
+ * ImportJobService}.
+ *
+ * <p>The data sheet is read row by row with {@link SpreadSheetUtil#readSheet}, so a workbook is
+ * never loaded in memory, and its shared strings are kept on disk but for a bounded cache. The
+ * columns are found by name in the header row. Each valid row creates or updates the user with the
+ * same login; invalid rows are reported in the {@link ImportResultDto} and do not stop the import.
+ * The login and activated columns are required. The other columns may be left out, and a blank
+ * cell or a left out column keeps the value of an existing user.
+ *
+ * <p>A CSV file holds the data sheet alone. It is memory mapped by {@link CsvReader} and cut in
+ * ranges of chunkSize records, which the import workers parse and validate in parallel, so its
+ * rows go through the same validation and writes as the rows of a workbook.
+ *
+ * <p>A differential import skips the rows identical to the row which last imported their user,
+ * comparing a hash of the row values with the hashes saved by {@link UserService#importUsers}.
+ *
+ * <p>The failed rows are also written, with their original cells and their error, to a workbook
+ * streamed while the file is imported and kept as a private file of the {@link
+ * FileStoreService}, so they can be fixed and uploaded again without going through the list of
+ * errors.
+ */
+@Service
+public class UserImportService {
+
+  // Schema index of each column of ImportConstant.DATA_COLUMNS
+  private static final int LOGIN = 0;
+  private static final int FIRST_NAME = 1;
+  private static final int LAST_NAME = 2;
+  private static final int EMAIL = 3;
+  private static final int LANG_KEY = 4;
+  private static final int ACTIVATED = 5;
+
+  private static final SheetSchema SCHEMA =
+      new SheetSchema(ImportConstant.HEADER_ROW)
+          .column(ImportConstant.DATA_COLUMNS[LOGIN], ColumnType.STRING, true)
+          .column(ImportConstant.DATA_COLUMNS[FIRST_NAME], ColumnType.STRING, false)
+          .column(ImportConstant.DATA_COLUMNS[LAST_NAME], ColumnType.STRING, false)
+          .column(ImportConstant.DATA_COLUMNS[EMAIL], ColumnType.STRING, false)
+          .column(ImportConstant.DATA_COLUMNS[LANG_KEY], ColumnType.STRING, false)
+          .column(ImportConstant.DATA_COLUMNS[ACTIVATED], ColumnType.BOOLEAN, true);
+
+  // The data columns followed by the line of the row in the uploaded file and its error
+  private static final String[] ERROR_HEADER =
+      ArrayUtils.addAll(ImportConstant.DATA_COLUMNS, "line", "error");
+
+  private final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+  private final UserService userService;
+
+  private final PasswordEncoder passwordEncoder;
+
+  private final Validator validator;
+
+  private final FileStoreService fileStoreService;
+
+  private final Executor workers;
+
+  private final int chunkSize;
+
+  private final int maxPendingChunks;
+
+  private final int sharedStringsCacheSize;
+
+  public UserImportService(
+      UserService userService,
+      PasswordEncoder passwordEncoder,
+      Validator validator,
+      FileStoreService fileStoreService,
+      @Qualifier("importWorkerExecutor") Executor workers,
+      ApplicationProperties applicationProperties) {
+    this.userService = userService;
+    this.passwordEncoder = passwordEncoder;
+    this.validator = validator;
+    this.fileStoreService = fileStoreService;
+    this.workers = workers;
+    this.chunkSize = applicationProperties.getUpload().getChunkSize();
+    this.maxPendingChunks = applicationProperties.getUpload().getMaxPendingChunks();
+    this.sharedStringsCacheSize = applicationProperties.getUpload().getSharedStringsCacheSize();
+  }
+
+  /**
+   * Check the structure of a workbook before importing it, reading only its workbook part and the
+   * first row of its sheets: it must have exactly the info and data sheets, and the data sheet must
+   * start with a header naming the required columns. A CSV file must start with that header.
+   *
+   * @param fileName the original name of the file
+   * @param file the xlsx or CSV file
+   * @return the reason why the workbook is rejected, or empty if it can be imported
+   */
+  public Optional<String> preflight(String fileName, Path file) {
+    if (isCsv(fileName)) {
+      try {
+        CsvReader.open(file, SCHEMA);
+      } catch (IOException e) {
+        return Optional.of("Could not read the file: " + e.getMessage());
+      } catch (IllegalArgumentException e) {
+        return Optional.of(e.getMessage());
+      }
+      return Optional.empty();
+    }
+    WorkbookInfo workbook;
+    try {
+      workbook = WorkbookInfo.read(file);
+    } catch (IOException e) {
+      return Optional.of("Could not read the file: " + e.getMessage());
+    }
+    List<String> sheetNames = workbook.getSheetNames();
+    if (sheetNames.size() != ImportConstant.NUMBER_OF_SHEETS
+        || !sheetNames.contains(ImportConstant.INFO_SHEET)
+        || !sheetNames.contains(ImportConstant.DATA_SHEET)) {
+      return Optional.of(
+          "Expected the sheets "
+              + ImportConstant.INFO_SHEET
+              + ", "
+              + ImportConstant.DATA_SHEET
+              + " but found "
+              + String.join(", ", sheetNames));
+    }
+    WorkbookInfo.SheetInfo dataSheet = workbook.getSheet(ImportConstant.DATA_SHEET).get();
+    if (dataSheet.getFirstRowNo() != SCHEMA.getHeaderRow()) {
+      return Optional.of("Missing header on line " + (SCHEMA.getHeaderRow() + 1));
+    }
+    try {
+      SCHEMA.resolve(dataSheet.getFirstRow());
+    } catch (IllegalArgumentException e) {
+      return Optional.of(e.getMessage());
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Import the users of the data sheet of a workbook.
+   *
+   * <p>The rows are read on the calling thread and grouped in chunks, which are validated and
+   * mapped in parallel by the import workers. The calling thread then writes the chunks in reading
+   * order, one transaction per chunk, so the outcome and the reported lines do not depend on the
+   * scheduling of the workers. At most {@code maxPendingChunks} chunks are read ahead of the
+   * chunk being written, which bounds the memory used.
+   *
+   * @param fileName the original name of the file
+   * @param file the xlsx or CSV file
+   * @param differential true to skip the rows which did not change since their last import
+   * @param progressListener receives the result of the import after each written chunk
+   * @return the result of the import, with the hash of the workbook of the failed rows if any, and
+   *     a file level error if the file could not be read or a chunk could not be written
+   */
+  public ImportResultDto importFile(
+      String fileName,
+      Path file,
+      boolean differential,
+      Consumer<ImportResultDto> progressListener) {
+    ImportResultDto result = new ImportResultDto(fileName);
+    // imported users have no usable password until they reset it, hash it once per file as
+    // BCrypt is deliberately slow
+    String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
+    ErrorWorkbook errorWorkbook = new ErrorWorkbook();
+    ChunkPipeline pipeline =
+        new ChunkPipeline(result, encryptedPassword, differential, errorWorkbook, progressListener);
+    try {
+      if (isCsv(fileName)) {
+        CsvReader reader = CsvReader.open(file, SCHEMA);
+        reader.split(chunkSize, range -> pipeline.submit(() -> reader.read(range)));
+      } else if (!SpreadSheetUtil.readSheet(
+          file, ImportConstant.DATA_SHEET, SCHEMA, sharedStringsCacheSize, pipeline::add)) {
+        result.fail("Missing sheet " + ImportConstant.DATA_SHEET);
+      }
+      pipeline.finish();
+    } catch (IllegalArgumentException e) {
+      result.fail(e.getMessage());
+    } catch (IOException e) {
+      log.warn("Could not read {}: {}", fileName, e.getMessage());
+      result.fail("Could not read the file: " + e.getMessage());
+    } catch (DataAccessException e) {
+      // the chunk was rolled back, the chunks written before it are kept
+      log.warn("Could not write the users of {}: {}", fileName, e.getMessage());
+      result.fail("Could not write the users: " + e.getMessage());
+    } finally {
+      pipeline.cancel();
+      storeErrorWorkbook(fileName, result, errorWorkbook);
+    }
+    log.debug("Imported {}", result);
+    return result;
+  }
+
+  /** Store the workbook of the failed rows, even if the import stopped early, and release it. */
+  private void storeErrorWorkbook(
+      String fileName, ImportResultDto result, ErrorWorkbook errorWorkbook) {
+    try {
+      result.setErrorFile(errorWorkbook.store());
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not store the failed rows of {}: {}", fileName, e.getMessage());
+    } finally {
+      errorWorkbook.close();
+    }
+  }
+
+  private static boolean isCsv(String fileName) {
+    return FileCheckUtil.checkFileExtension(new File(fileName), ImportConstant.CSV_EXTENSION);
+  }
+
+  /** Validate and map a chunk of rows, on an import worker. */
+  private List<ImportRow> validateChunk(List<SheetRecord> records) {
+    List<ImportRow> rows = new ArrayList<>(records.size());
+    for (SheetRecord record : records) {
+      UserDto userDto = toUserDto(record);
+      String error = record.isValid() ? validate(userDto) : record.getError();
+      String hash = error == null ? hash(userDto) : null;
+      String[] texts = new String[SCHEMA.size()];
+      for (int i = 0; i < texts.length; i++) {
+        texts[i] = record.getText(i);
+      }
+      rows.add(new ImportRow(record.getLine(), texts, userDto, hash, error));
+    }
+    return rows;
+  }
+
+  /**
+   * Write a validated chunk and record its outcome, in row order. In a differential import, the
+   * rows of a login whose last row in the chunk is identical to its last import are skipped.
+   */
+  private void writeChunk(
+      List<ImportRow> rows,
+      String encryptedPassword,
+      boolean differential,
+      ImportResultDto result,
+      ErrorWorkbook errorWorkbook) {
+    Map<String, ImportRow> lastRows = new LinkedHashMap<>();
+    for (ImportRow row : rows) {
+      if (row.error == null) {
+        lastRows.put(row.login(), row);
+      }
+    }
+    if (differential && !lastRows.isEmpty()) {
+      Map<String, String> importHashes = userService.findImportHashes(lastRows.keySet());
+      for (ImportRow row : rows) {
+        row.unchanged =
+            row.error == null
+                && lastRows.get(row.login()).hash.equals(importHashes.get(row.login()));
+      }
+    }
+    List<ImportRow> changedRows =
+        rows.stream()
+            .filter(row -> row.error == null && !row.unchanged)
+            .collect(Collectors.toList());
+    if (!changedRows.isEmpty()) {
+      Map<String, String> rowHashes = new HashMap<>();
+      changedRows.forEach(row -> rowHashes.put(row.login(), lastRows.get(row.login()).hash));
+      try {
+        BatchUpsert.Result written =
+            userService.importUsers(
+                changedRows.stream().map(row -> row.userDto).collect(Collectors.toList()),
+                rowHashes,
+                encryptedPassword);
+        result.usersWritten(written.getInserted(), written.getUpdated());
+      } catch (DataIntegrityViolationException e) {
+        // the chunk was rolled back, write its rows one by one to find the failing ones
+        for (ImportRow row : changedRows) {
+          try {
+            BatchUpsert.Result written =
+                userService.importUser(row.userDto, row.hash, encryptedPassword);
+            result.usersWritten(written.getInserted(), written.getUpdated());
+          } catch (DataIntegrityViolationException rowException) {
+            row.error = "login or email already used";
+          }
+        }
+      }
+    }
+    for (ImportRow row : rows) {
+      result.rowRead();
+      if (row.error != null) {
+        result.rowFailed(row.line, row.error);
+        errorWorkbook.add(row);
+      } else if (row.unchanged) {
+        result.rowUnchanged();
+      } else {
+        result.rowWritten();
+      }
+    }
+  }
+
+  private static UserDto toUserDto(SheetRecord record) {
+    UserDto userDto = new UserDto();
+    userDto.setLogin(record.getString(LOGIN));
+    userDto.setFirstName(record.getString(FIRST_NAME));
+    userDto.setLastName(record.getString(LAST_NAME));
+    userDto.setEmail(record.getString(EMAIL));
+    userDto.setLangKey(record.getString(LANG_KEY));
+    userDto.setActivated(Boolean.TRUE.equals(record.getBoolean(ACTIVATED)));
+    return userDto;
+  }
+
+  private String validate(UserDto userDto) {
+    Set<ConstraintViolation<UserDto>> violations = validator.validate(userDto);
+    if (violations.isEmpty()) {
+      return null;
+    }
+    return violations
+        .stream()
+        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+        .sorted()
+        .collect(Collectors.joining(", "));
+  }
+
+  /** @return the hex SHA-256 of the imported values of a row */
+  private static String hash(UserDto userDto) {
+    MessageDigest digest = FileUtil.sha256();
+    for (Object value :
+        new Object[] {
+          userDto.getLogin().toLowerCase(Locale.ENGLISH),
+          userDto.getFirstName(),
+          userDto.getLastName(),
+          userDto.getEmail(),
+          userDto.getLangKey(),
+          userDto.isActivated()
+        }) {
+      // a separator which cannot appear in a cell, and a distinct marker for the empty cells
+      String text = value == null ? "\u0001" : value.toString();
+      digest.update(text.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return FileUtil.toHex(digest.digest());
+  }
+
+  /** A validated row of a chunk. */
+  private static class ImportRow {
+
+    private final int line;
+
+    // the cells of the row as read, in schema order
+    private final String[] texts;
+
+    private final UserDto userDto;
+
+    private final String hash;
+
+    private String error;
+
+    private boolean unchanged;
+
+    ImportRow(int line, String[] texts, UserDto userDto, String hash, String error) {
+      this.line = line;
+      this.texts = texts;
+      this.userDto = userDto;
+      this.hash = hash;
+      this.error = error;
+    }
+
+    String login() {
+      return userDto.getLogin().toLowerCase(Locale.ENGLISH);
+    }
+  }
+
+  /**
+   * The workbook of the failed rows of a file, created with the first failed row. Only the last
+   * rows are kept in memory, the others are flushed to temporary files until it is stored.
+   */
+  private class ErrorWorkbook implements Closeable {
+
+    private SpreadSheetUtil.StreamingSheetWriter writer;
+
+    void add(ImportRow row) {
+      if (writer == null) {
+        writer =
+            SpreadSheetUtil.createStreamingWriter(
+                ImportConstant.DATA_SHEET, SpreadSheetUtil.DEFAULT_ROW_ACCESS_WINDOW, ERROR_HEADER);
+      }
+      Object[] values = Arrays.copyOf(row.texts, ERROR_HEADER.length, Object[].class);
+      values[row.texts.length] = row.line;
+      values[row.texts.length + 1] = row.error;
+      writer.writeRow(values);
+    }
+
+    /**
+     * Write the workbook to a temporary file and store it.
+     *
+     * @return the hash of the stored workbook, or null if no row failed
+     * @throws IOException if the workbook could not be stored
+     */
+    String store() throws IOException {
+      if (writer == null) {
+        return null;
+      }
+      Path file = Files.createTempFile("import-errors-", ".xlsx");
+      try {
+        try (OutputStream out = Files.newOutputStream(file)) {
+          writer.finish(out);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+          return fileStoreService.storePrivate(in);
+        }
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    }
+
+    /** Delete the temporary files of the workbook. */
+    @Override
+    public void close() {
+      if (writer == null) {
+        return;
+      }
+      try {
+        writer.close();
+      } catch (IOException e) {
+        log.warn("Could not delete the temporary files of a workbook: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Groups the rows read from a sheet in chunks, hands them to the import workers and writes the
+   * validated chunks in reading order.
+   */
+  private class ChunkPipeline {
+
+    private final ImportResultDto result;
+
+    private final String encryptedPassword;
+
+    private final boolean differential;
+
+    private final ErrorWorkbook errorWorkbook;
+
+    private final Consumer<ImportResultDto> progressListener;
+
+    private final Deque<CompletableFuture<List<ImportRow>>> pendingChunks = new ArrayDeque<>();
+
+    private List<SheetRecord> records = new ArrayList<>(chunkSize);
+
+    ChunkPipeline(
+        ImportResultDto result,
+        String encryptedPassword,
+        boolean differential,
+        ErrorWorkbook errorWorkbook,
+        Consumer<ImportResultDto> progressListener) {
+      this.result = result;
+      this.encryptedPassword = encryptedPassword;
+      this.differential = differential;
+      this.errorWorkbook = errorWorkbook;
+      this.progressListener = progressListener;
+    }
+
+    boolean add(SheetRecord record) {
+      records.add(record.copy());
+      if (records.size() == chunkSize) {
+        submitRecords();
+      }
+      return true;
+    }
+
+    /**
+     * Submit a chunk read by an import worker, such as a range of a CSV file.
+     *
+     * @param chunk reads the records of the chunk
+     */
+    void submit(Supplier<List<SheetRecord>> chunk) {
+      pendingChunks.add(CompletableFuture.supplyAsync(() -> validateChunk(chunk.get()), workers));
+      while (pendingChunks.size() > maxPendingChunks) {
+        writeNext();
+      }
+    }
+
+    /** Submit the last chunk and write all the pending chunks. */
+    void finish() {
+      if (!records.isEmpty()) {
+        submitRecords();
+      }
+      while (!pendingChunks.isEmpty()) {
+        writeNext();
+      }
+    }
+
+    /** Drop the chunks which were not written, when the import stops early. */
+    void cancel() {
+      pendingChunks.forEach(chunk -> chunk.cancel(false));
+      pendingChunks.clear();
+    }
+
+    private void submitRecords() {
+      List<SheetRecord> chunk = records;
+      records = new ArrayList<>(chunkSize);
+      submit(() -> chunk);
+    }
+
+    private void writeNext() {
+      List<ImportRow> rows;
+      try {
+        rows = pendingChunks.poll().join();
+      } catch (CompletionException e) {
+        // rethrow the error of the worker, as if the chunk was validated on this thread
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+      writeChunk(rows, encryptedPassword, differential, result, errorWorkbook);
+      progressListener.accept(result);
+    }
+  }
+}
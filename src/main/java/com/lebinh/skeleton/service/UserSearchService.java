@@ -0,0 +1,196 @@
+package com.lebinh.skeleton.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.constant.CommonConstant;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.entity.UserSearchTerm;
+import com.lebinh.skeleton.repository.UserRepository;
+import com.lebinh.skeleton.repository.UserSearchTermRepository;
+import com.lebinh.skeleton.service.dto.UserDto;
+
+/**
+ * Service for the prefix search over users.
+ *
+ * <p>Each user owns a set of lower-cased terms (login, email, first name, last name, full name and
+ * each word of the names) stored in sys_user_search_term, which is indexed on (term, user_id). A
+ * search walks that index from the prefix, one page of terms at a time, and stops as soon as it has
+ * found the requested number of distinct users. It reads a few index rows per user returned, so it
+ * costs the same whatever the number of users. The terms are maintained by {@link UserService} in
+ * the same transaction as the user change.
+ */
+@Service
+@Transactional
+public class UserSearchService {
+
+  private final Logger log = LoggerFactory.getLogger(UserSearchService.class);
+
+  /** Upper bound of the number of users returned by a search. */
+  public static final int MAX_RESULTS = 50;
+
+  private final UserSearchTermRepository userSearchTermRepository;
+
+  private final UserRepository userRepository;
+
+  public UserSearchService(
+      UserSearchTermRepository userSearchTermRepository, UserRepository userRepository) {
+    this.userSearchTermRepository = userSearchTermRepository;
+    this.userRepository = userRepository;
+  }
+
+  /**
+   * Bring the search terms of a saved user up to date, writing only the terms that changed.
+   *
+   * @param user the user, which must have an id
+   */
+  public void index(User user) {
+    index(Collections.singletonList(user));
+  }
+
+  /**
+   * Bring the search terms of saved users up to date, writing only the terms that changed. The
+   * existing terms of all the users are read with a single query.
+   *
+   * @param users the users, which must have an id
+   */
+  public void index(Collection<User> users) {
+    if (users.isEmpty()) {
+      return;
+    }
+    Map<Long, Set<String>> termsByUserId = new HashMap<>();
+    for (User user : users) {
+      termsByUserId.put(user.getId(), termsOf(user));
+    }
+    List<UserSearchTerm> existingTerms =
+        userSearchTermRepository.findAllByUserIdIn(termsByUserId.keySet());
+    List<UserSearchTerm> removedTerms = new ArrayList<>();
+    for (UserSearchTerm existingTerm : existingTerms) {
+      if (!termsByUserId.get(existingTerm.getUserId()).remove(existingTerm.getTerm())) {
+        removedTerms.add(existingTerm);
+      }
+    }
+    if (!removedTerms.isEmpty()) {
+      userSearchTermRepository.deleteInBatch(removedTerms);
+    }
+    List<UserSearchTerm> addedTerms = new ArrayList<>();
+    termsByUserId.forEach(
+        (userId, terms) -> terms.forEach(term -> addedTerms.add(new UserSearchTerm(userId, term))));
+    if (!addedTerms.isEmpty()) {
+      userSearchTermRepository.saveAll(addedTerms);
+    }
+    log.debug(
+        "Indexed {} Users: {} terms removed, {} terms added",
+        users.size(),
+        removedTerms.size(),
+        addedTerms.size());
+  }
+
+  /**
+   * Remove the search terms of a user, before the user is deleted.
+   *
+   * @param user the user
+   */
+  public void remove(User user) {
+    userSearchTermRepository.deleteAllByUserId(user.getId());
+  }
+
+  /**
+   * Find the users having a login, email or name starting with the query.
+   *
+   * @param query the prefix to search, case insensitive
+   * @param limit the maximum number of users to return, capped to {@link #MAX_RESULTS}
+   * @return the matching users, ordered by their best matching term
+   */
+  @Transactional(readOnly = true)
+  public List<UserDto> search(String query, int limit) {
+    String prefix = normalize(query);
+    if (prefix.isEmpty() || limit <= 0) {
+      return Collections.emptyList();
+    }
+    int size = Math.min(limit, MAX_RESULTS);
+    String pattern = escapeLike(prefix) + "%";
+    Set<Long> distinctUserIds = new LinkedHashSet<>();
+    // a user matching on several terms is found several times, continue after the last term read
+    // until the page of distinct users is full or the matching terms are exhausted
+    String lastTerm = "";
+    Long lastUserId = 0L;
+    List<UserSearchTerm> terms;
+    do {
+      terms =
+          userSearchTermRepository.findAllByTermLikeAfter(
+              pattern, lastTerm, lastUserId, PageRequest.of(0, size));
+      for (UserSearchTerm term : terms) {
+        if (distinctUserIds.size() < size) {
+          distinctUserIds.add(term.getUserId());
+        }
+        lastTerm = term.getTerm();
+        lastUserId = term.getUserId();
+      }
+    } while (terms.size() == size && distinctUserIds.size() < size);
+    if (distinctUserIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Long> userIds = new ArrayList<>(distinctUserIds);
+    Map<Long, User> users =
+        userRepository
+            .findAllWithAuthoritiesByIdIn(userIds)
+            .stream()
+            .collect(Collectors.toMap(User::getId, Function.identity()));
+    return userIds
+        .stream()
+        .map(users::get)
+        .filter(user -> user != null && !CommonConstant.ANONYMOUS_USER.equals(user.getLogin()))
+        .map(UserDto::new)
+        .collect(Collectors.toList());
+  }
+
+  private static Set<String> termsOf(User user) {
+    Set<String> terms = new LinkedHashSet<>();
+    addTerm(terms, user.getLogin());
+    addTerm(terms, user.getEmail());
+    addTerm(terms, user.getFirstName());
+    addTerm(terms, user.getLastName());
+    addTerm(terms, StringUtils.joinWith(" ", user.getFirstName(), user.getLastName()));
+    for (String name : new String[] {user.getFirstName(), user.getLastName()}) {
+      for (String word : StringUtils.split(StringUtils.defaultString(name))) {
+        addTerm(terms, word);
+      }
+    }
+    return terms;
+  }
+
+  private static void addTerm(Set<String> terms, String value) {
+    String term = StringUtils.left(normalize(value), UserSearchTerm.TERM_MAX_LENGTH);
+    if (!term.isEmpty()) {
+      terms.add(term);
+    }
+  }
+
+  private static String normalize(String value) {
+    return StringUtils.defaultString(
+        StringUtils.normalizeSpace(StringUtils.lowerCase(value, Locale.ENGLISH)));
+  }
+
+  private static String escapeLike(String value) {
+    String escape = String.valueOf(UserSearchTermRepository.LIKE_ESCAPE);
+    return value
+        .replace(escape, escape + escape)
+        .replace("%", escape + "%")
+        .replace("_", escape + "_");
+  }
+}
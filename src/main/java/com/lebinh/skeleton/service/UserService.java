@@ -1,24 +1,36 @@
 package com.lebinh.skeleton.service;
 
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import com.lebinh.skeleton.config.ApplicationProperties;
 import com.lebinh.skeleton.constant.CommonConstant;
 import com.lebinh.skeleton.entity.Authority;
 import com.lebinh.skeleton.entity.User;
 import com.lebinh.skeleton.repository.AuthorityRepository;
+import com.lebinh.skeleton.repository.BatchUpsert;
 import com.lebinh.skeleton.repository.UserRepository;
 import com.lebinh.skeleton.security.AuthoritiesConstants;
 import com.lebinh.skeleton.security.SecurityUtils;
@@ -32,19 +44,50 @@ public class UserService {
 
   private final Logger log = LoggerFactory.getLogger(UserService.class);
 
+  private static final String SELECT_IMPORTED_USERS =
+      "select id, login, first_name, last_name, email from sys_user where login in (:logins)";
+
+  private static final String SELECT_LOGINS_BY_EMAIL =
+      "select login, email from sys_user where email in (:emails)";
+
+  private static final String SELECT_IMPORT_HASHES =
+      "select u.login, h.row_hash from sys_user u"
+          + " join sys_user_import_hash h"
+          + " on h.user_id = u.id and h.imported_date = u.last_modified_date"
+          + " where u.login in (:logins)";
+
+  private static final String INSERT_USER_AUTHORITY =
+      "insert into sys_user_authority (user_id, authority_name) values (?, ?)";
+
   private final UserRepository userRepository;
 
   private final PasswordEncoder passwordEncoder;
 
   private final AuthorityRepository authorityRepository;
 
+  private final UserSearchService userSearchService;
+
+  private final MailService mailService;
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  private final int upsertBatchSize;
+
   public UserService(
       UserRepository userRepository,
       PasswordEncoder passwordEncoder,
-      AuthorityRepository authorityRepository) {
+      AuthorityRepository authorityRepository,
+      UserSearchService userSearchService,
+      MailService mailService,
+      NamedParameterJdbcTemplate jdbcTemplate,
+      ApplicationProperties applicationProperties) {
     this.userRepository = userRepository;
     this.passwordEncoder = passwordEncoder;
     this.authorityRepository = authorityRepository;
+    this.userSearchService = userSearchService;
+    this.mailService = mailService;
+    this.jdbcTemplate = jdbcTemplate;
+    this.upsertBatchSize = applicationProperties.getUpload().getUpsertBatchSize();
   }
 
   public Optional<User> activateRegistration(String key) {
@@ -84,6 +127,7 @@ public class UserService {
             user -> {
               user.setResetKey(RandomUtil.generateResetKey());
               user.setResetDate(Instant.now());
+              mailService.sendPasswordResetMail(user);
               return user;
             });
   }
@@ -109,6 +153,8 @@ public class UserService {
     authorities.add(authority);
     newUser.setAuthorities(authorities);
     userRepository.save(newUser);
+    userSearchService.index(newUser);
+    mailService.sendActivationEmail(newUser);
     log.debug("Created Information for User: {}", newUser);
     return newUser;
   }
@@ -140,10 +186,165 @@ public class UserService {
     user.setResetDate(Instant.now());
     user.setActivated(true);
     userRepository.save(user);
+    userSearchService.index(user);
+    mailService.sendCreationEmail(user);
     log.debug("Created Information for User: {}", user);
     return user;
   }
 
+  /**
+   * Find the hashes of the rows which last imported users, for a differential import. A user
+   * modified since its last import has no hash, so that its row is imported again.
+   *
+   * @param logins the lower case logins
+   * @return the row hash of each login which has one
+   */
+  @Transactional(readOnly = true)
+  public Map<String, String> findImportHashes(Collection<String> logins) {
+    Map<String, String> hashes = new HashMap<>();
+    if (!logins.isEmpty()) {
+      jdbcTemplate.query(
+          SELECT_IMPORT_HASHES,
+          Collections.singletonMap("logins", logins),
+          rs -> {
+            hashes.put(rs.getString("login"), rs.getString("row_hash"));
+          });
+    }
+    return hashes;
+  }
+
+  /**
+   * Create or update a user from an imported row, matching on the login.
+   *
+   * @param userDto the imported user
+   * @param rowHash the hash of the imported row
+   * @param encryptedPassword the password hash of a new user
+   * @return the login inserted or updated
+   * @see #importUsers(List, Map, String)
+   */
+  public BatchUpsert.Result importUser(UserDto userDto, String rowHash, String encryptedPassword) {
+    return importUsers(
+        Collections.singletonList(userDto),
+        Collections.singletonMap(lowerCase(userDto.getLogin()), rowHash),
+        encryptedPassword);
+  }
+
+  /**
+   * Create or update the users of a chunk of imported rows, matching on the login.
+   *
+   * <p>The rows are written with {@link BatchUpsert}, in batches of upsert-batch-size rows, instead
+   * of loading and saving an entity per row. A new user gets the USER authority, the given password
+   * hash and a reset key, so that the password must be reset before the first login. The password
+   * and the authorities of an existing user are left unchanged, as are its names, email and
+   * language when they are null in the imported row. When a login appears several times, the last
+   * row wins. The search terms of the written users are then brought up to date, and the hashes of
+   * their rows are saved for {@link #findImportHashes}.
+   *
+   * @param userDtos the imported users, in row order
+   * @param rowHashes the hash of the imported row of each lower case login
+   * @param encryptedPassword the password hash of the new users
+   * @return the logins inserted and updated
+   * @throws DataIntegrityViolationException if an email is already used by another login
+   */
+  public BatchUpsert.Result importUsers(
+      List<UserDto> userDtos, Map<String, String> rowHashes, String encryptedPassword) {
+    checkImportedEmails(userDtos);
+    String auditor = SecurityUtils.getCurrentUserLogin().orElse(CommonConstant.SYSTEM_ACCOUNT);
+    Timestamp now = Timestamp.from(Instant.now());
+    BatchUpsert.Result result =
+        new BatchUpsert<UserDto>(jdbcTemplate, "sys_user", upsertBatchSize)
+            .key("login", userDto -> lowerCase(userDto.getLogin()))
+            .keepIfNullColumn("first_name", UserDto::getFirstName, null)
+            .keepIfNullColumn("last_name", UserDto::getLastName, null)
+            .keepIfNullColumn("email", UserDto::getEmail, null)
+            .keepIfNullColumn("lang_key", UserDto::getLangKey, CommonConstant.DEFAULT_LANGUAGE)
+            .column("activated", UserDto::isActivated)
+            .column("last_modified_by", userDto -> auditor)
+            .column("last_modified_date", userDto -> now)
+            .insertOnlyColumn("password_hash", userDto -> encryptedPassword)
+            .insertOnlyColumn("reset_key", userDto -> RandomUtil.generateResetKey())
+            .insertOnlyColumn("reset_date", userDto -> now)
+            .insertOnlyColumn("created_by", userDto -> auditor)
+            .insertOnlyColumn("created_date", userDto -> now)
+            .execute(userDtos);
+
+    List<Object> logins = new ArrayList<>(result.getInsertedKeys());
+    logins.addAll(result.getUpdatedKeys());
+    List<User> users =
+        jdbcTemplate.query(
+            SELECT_IMPORTED_USERS,
+            Collections.singletonMap("logins", logins),
+            (rs, rowNum) -> {
+              User user = new User();
+              user.setId(rs.getLong("id"));
+              user.setLogin(rs.getString("login"));
+              user.setFirstName(rs.getString("first_name"));
+              user.setLastName(rs.getString("last_name"));
+              user.setEmail(rs.getString("email"));
+              return user;
+            });
+    Set<Object> insertedLogins = new HashSet<>(result.getInsertedKeys());
+    List<Object[]> authorities =
+        users
+            .stream()
+            .filter(user -> insertedLogins.contains(user.getLogin()))
+            .map(user -> new Object[] {user.getId(), AuthoritiesConstants.USER})
+            .collect(Collectors.toList());
+    if (!authorities.isEmpty()) {
+      jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_USER_AUTHORITY, authorities);
+    }
+    userSearchService.index(users);
+    new BatchUpsert<User>(jdbcTemplate, "sys_user_import_hash", upsertBatchSize)
+        .key("user_id", User::getId)
+        .column("row_hash", user -> rowHashes.get(user.getLogin()))
+        .column("imported_date", user -> now)
+        .execute(
+            users
+                .stream()
+                .filter(user -> rowHashes.containsKey(user.getLogin()))
+                .collect(Collectors.toList()));
+    log.debug(
+        "Imported Information for {} Users: {} inserted, {} updated",
+        users.size(),
+        result.getInserted(),
+        result.getUpdated());
+    return result;
+  }
+
+  /**
+   * Check that the imported emails are not used by other logins, as MySQL would update the user
+   * owning the email instead of failing on the unique email.
+   */
+  private void checkImportedEmails(List<UserDto> userDtos) {
+    Map<String, String> loginsByEmail = new HashMap<>();
+    for (UserDto userDto : userDtos) {
+      if (userDto.getEmail() == null) {
+        continue;
+      }
+      String login = lowerCase(userDto.getLogin());
+      String otherLogin = loginsByEmail.putIfAbsent(lowerCase(userDto.getEmail()), login);
+      if (otherLogin != null && !otherLogin.equals(login)) {
+        throw new DataIntegrityViolationException("Email already used: " + userDto.getEmail());
+      }
+    }
+    if (loginsByEmail.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.query(
+        SELECT_LOGINS_BY_EMAIL,
+        Collections.singletonMap("emails", loginsByEmail.keySet()),
+        rs -> {
+          String email = lowerCase(rs.getString("email"));
+          if (!rs.getString("login").equals(loginsByEmail.get(email))) {
+            throw new DataIntegrityViolationException("Email already used: " + email);
+          }
+        });
+  }
+
+  private static String lowerCase(String value) {
+    return StringUtils.lowerCase(value, Locale.ENGLISH);
+  }
+
   /**
    * Update basic information (first name, last name, email, language) for the current user.
    *
@@ -164,6 +365,7 @@ public class UserService {
               user.setEmail(email);
               user.setLangKey(langKey);
               user.setImageUrl(imageUrl);
+              userSearchService.index(user);
               log.debug("Changed Information for User: {}", user);
             });
   }
@@ -185,24 +387,45 @@ public class UserService {
               user.setImageUrl(userDto.getImageUrl());
               user.setActivated(userDto.isActivated());
               user.setLangKey(userDto.getLangKey());
-              Set<Authority> managedAuthorities = user.getAuthorities();
-              managedAuthorities.clear();
-              userDto
-                  .getAuthorities()
-                  .stream()
-                  .map(authorityRepository::getOne)
-                  .forEach(managedAuthorities::add);
+              if (userDto.getAuthorities() != null) {
+                updateAuthorities(user.getAuthorities(), userDto.getAuthorities());
+              }
+              userSearchService.index(user);
               log.debug("Changed Information for User: {}", user);
               return user;
             })
         .map(UserDto::new);
   }
 
+  /**
+   * Apply the requested authorities to the managed collection as a set difference.
+   *
+   * <p>Only the authorities that were actually added or removed touch the collection, so Hibernate
+   * leaves it clean when nothing changed and otherwise writes just the differing rows of
+   * sys_user_authority. Authorities are compared by name, as {@link
+   * AuthorityRepository#getOne(Object)} returns proxies which are not equal to loaded entities.
+   *
+   * @param managedAuthorities the authorities collection of a managed user
+   * @param requestedAuthorities the names of the authorities the user must end up with
+   */
+  private void updateAuthorities(
+      Set<Authority> managedAuthorities, Set<String> requestedAuthorities) {
+    Set<String> currentAuthorities =
+        managedAuthorities.stream().map(Authority::getName).collect(Collectors.toSet());
+    managedAuthorities.removeIf(authority -> !requestedAuthorities.contains(authority.getName()));
+    requestedAuthorities
+        .stream()
+        .filter(name -> !currentAuthorities.contains(name))
+        .map(authorityRepository::getOne)
+        .forEach(managedAuthorities::add);
+  }
+
   public void deleteUser(String login) {
     userRepository
         .findOneByLogin(login)
         .ifPresent(
             user -> {
+              userSearchService.remove(user);
               userRepository.delete(user);
               log.debug("Deleted User: {}", user);
             });
@@ -252,6 +475,7 @@ public class UserService {
             Instant.now().minus(3, ChronoUnit.DAYS));
     for (User user : users) {
       log.debug("Deleting not activated user {}", user.getLogin());
+      userSearchService.remove(user);
       userRepository.delete(user);
     }
   }
@@ -0,0 +1,139 @@
+package com.lebinh.skeleton.service.dto;
+
+import java.time.Instant;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import com.lebinh.skeleton.entity.BulkMail;
+
+/** A Dto representing a bulk mail and its progress. */
+public class BulkMailDto {
+
+  private Long id;
+
+  @NotNull
+  @Size(min = 1, max = 1000)
+  private String subject;
+
+  @NotNull
+  @Size(min = 1)
+  private String content;
+
+  private BulkMail.Status status;
+
+  private long lastUserId;
+
+  private long queuedCount;
+
+  private String createdBy;
+
+  private Instant createdDate;
+
+  private Instant finishedDate;
+
+  public BulkMailDto() {
+    // Empty constructor needed for Jackson.
+  }
+
+  public BulkMailDto(BulkMail bulkMail) {
+    this.id = bulkMail.getId();
+    this.subject = bulkMail.getSubject();
+    this.content = bulkMail.getContent();
+    this.status = bulkMail.getStatus();
+    this.lastUserId = bulkMail.getLastUserId();
+    this.queuedCount = bulkMail.getQueuedCount();
+    this.createdBy = bulkMail.getCreatedBy();
+    this.createdDate = bulkMail.getCreatedDate();
+    this.finishedDate = bulkMail.getFinishedDate();
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public void setSubject(String subject) {
+    this.subject = subject;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public BulkMail.Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(BulkMail.Status status) {
+    this.status = status;
+  }
+
+  /** @return the id of the last user whose mail was written to the outbox */
+  public long getLastUserId() {
+    return lastUserId;
+  }
+
+  public void setLastUserId(long lastUserId) {
+    this.lastUserId = lastUserId;
+  }
+
+  /** @return the number of mails written to the outbox */
+  public long getQueuedCount() {
+    return queuedCount;
+  }
+
+  public void setQueuedCount(long queuedCount) {
+    this.queuedCount = queuedCount;
+  }
+
+  public String getCreatedBy() {
+    return createdBy;
+  }
+
+  public void setCreatedBy(String createdBy) {
+    this.createdBy = createdBy;
+  }
+
+  public Instant getCreatedDate() {
+    return createdDate;
+  }
+
+  public void setCreatedDate(Instant createdDate) {
+    this.createdDate = createdDate;
+  }
+
+  public Instant getFinishedDate() {
+    return finishedDate;
+  }
+
+  public void setFinishedDate(Instant finishedDate) {
+    this.finishedDate = finishedDate;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkMailDto{"
+        + "id="
+        + id
+        + ", subject='"
+        + subject
+        + '\''
+        + ", status="
+        + status
+        + ", lastUserId="
+        + lastUserId
+        + ", queuedCount="
+        + queuedCount
+        + "}";
+  }
+}
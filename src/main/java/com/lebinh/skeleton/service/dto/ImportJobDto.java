@@ -0,0 +1,188 @@
+package com.lebinh.skeleton.service.dto;
+
+import java.time.Instant;
+import java.util.List;
+import com.lebinh.skeleton.entity.ImportJob;
+
+/** A Dto representing an import job and its progress. */
+public class ImportJobDto {
+
+  private Long id;
+
+  private String username;
+
+  private ImportJob.Status status;
+
+  private int fileCount;
+
+  private long rowsRead;
+
+  private long rowsWritten;
+
+  private long rowsUnchanged;
+
+  private long rowsFailed;
+
+  private String message;
+
+  private List<ImportResultDto> results;
+
+  private Instant createdDate;
+
+  private Instant startedDate;
+
+  private Instant finishedDate;
+
+  // true if this earlier job is returned for an upload of identical files, instead of a new job
+  private boolean duplicate;
+
+  public ImportJobDto() {
+    // Empty constructor needed for Jackson.
+  }
+
+  public ImportJobDto(ImportJob importJob, List<ImportResultDto> results) {
+    this.id = importJob.getId();
+    this.username = importJob.getUsername();
+    this.status = importJob.getStatus();
+    this.fileCount = importJob.getFileCount();
+    this.rowsRead = importJob.getRowsRead();
+    this.rowsWritten = importJob.getRowsWritten();
+    this.rowsUnchanged = importJob.getRowsUnchanged();
+    this.rowsFailed = importJob.getRowsFailed();
+    this.message = importJob.getMessage();
+    this.results = results;
+    this.createdDate = importJob.getCreatedDate();
+    this.startedDate = importJob.getStartedDate();
+    this.finishedDate = importJob.getFinishedDate();
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public ImportJob.Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(ImportJob.Status status) {
+    this.status = status;
+  }
+
+  public int getFileCount() {
+    return fileCount;
+  }
+
+  public void setFileCount(int fileCount) {
+    this.fileCount = fileCount;
+  }
+
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  public void setRowsRead(long rowsRead) {
+    this.rowsRead = rowsRead;
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public void setRowsWritten(long rowsWritten) {
+    this.rowsWritten = rowsWritten;
+  }
+
+  public long getRowsUnchanged() {
+    return rowsUnchanged;
+  }
+
+  public void setRowsUnchanged(long rowsUnchanged) {
+    this.rowsUnchanged = rowsUnchanged;
+  }
+
+  public long getRowsFailed() {
+    return rowsFailed;
+  }
+
+  public void setRowsFailed(long rowsFailed) {
+    this.rowsFailed = rowsFailed;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public List<ImportResultDto> getResults() {
+    return results;
+  }
+
+  public void setResults(List<ImportResultDto> results) {
+    this.results = results;
+  }
+
+  public Instant getCreatedDate() {
+    return createdDate;
+  }
+
+  public void setCreatedDate(Instant createdDate) {
+    this.createdDate = createdDate;
+  }
+
+  public Instant getStartedDate() {
+    return startedDate;
+  }
+
+  public void setStartedDate(Instant startedDate) {
+    this.startedDate = startedDate;
+  }
+
+  public Instant getFinishedDate() {
+    return finishedDate;
+  }
+
+  public void setFinishedDate(Instant finishedDate) {
+    this.finishedDate = finishedDate;
+  }
+
+  public boolean isDuplicate() {
+    return duplicate;
+  }
+
+  public void setDuplicate(boolean duplicate) {
+    this.duplicate = duplicate;
+  }
+
+  @Override
+  public String toString() {
+    return "ImportJobDto{"
+        + "id="
+        + id
+        + ", status="
+        + status
+        + ", rowsRead="
+        + rowsRead
+        + ", rowsWritten="
+        + rowsWritten
+        + ", rowsUnchanged="
+        + rowsUnchanged
+        + ", rowsFailed="
+        + rowsFailed
+        + "}";
+  }
+}
@@ -0,0 +1,247 @@
+package com.lebinh.skeleton.service.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.lebinh.skeleton.constant.ImportConstant;
+
+/** A Dto representing the outcome of the import of one uploaded file. */
+public class ImportResultDto {
+
+  private String fileName;
+
+  private long rowsRead;
+
+  private long rowsWritten;
+
+  private long rowsInserted;
+
+  private long rowsUpdated;
+
+  private long rowsUnchanged;
+
+  private long rowsFailed;
+
+  private List<RowError> errors = new ArrayList<>();
+
+  // id of the earlier job which imported an identical file, this one was not imported again
+  private Long duplicateOf;
+
+  // hash in the file store of the workbook of the failed rows, null if no row failed
+  private String errorFile;
+
+  public ImportResultDto() {
+    // Empty constructor needed for Jackson.
+  }
+
+  public ImportResultDto(String fileName) {
+    this.fileName = fileName;
+  }
+
+  /**
+   * Copy the result, so that it can be read by other threads while the import goes on.
+   *
+   * @return a result with the same counters and errors
+   */
+  public ImportResultDto copy() {
+    ImportResultDto copy = new ImportResultDto(fileName);
+    copy.rowsRead = rowsRead;
+    copy.rowsWritten = rowsWritten;
+    copy.rowsInserted = rowsInserted;
+    copy.rowsUpdated = rowsUpdated;
+    copy.rowsUnchanged = rowsUnchanged;
+    copy.rowsFailed = rowsFailed;
+    copy.errors = new ArrayList<>(errors);
+    copy.duplicateOf = duplicateOf;
+    copy.errorFile = errorFile;
+    return copy;
+  }
+
+  /**
+   * Record a file level error, which stops the import of the file.
+   *
+   * @param message the error message
+   */
+  public void fail(String message) {
+    errors.add(new RowError(null, message));
+  }
+
+  /** @return true if a file level error stopped the import of the file */
+  public boolean hasFileError() {
+    return errors.stream().anyMatch(error -> error.getLine() == null);
+  }
+
+  /**
+   * Record a row which could not be imported. Only the first errors are kept.
+   *
+   * @param line the 1-based line number of the row, as displayed by Excel
+   * @param message the error message
+   */
+  public void rowFailed(int line, String message) {
+    rowsFailed++;
+    if (errors.size() < ImportConstant.MAX_REPORTED_ERRORS) {
+      errors.add(new RowError(line, message));
+    }
+  }
+
+  public void rowRead() {
+    rowsRead++;
+  }
+
+  public void rowWritten() {
+    rowsWritten++;
+  }
+
+  /** Record a row skipped by a differential import, as it did not change since its last import. */
+  public void rowUnchanged() {
+    rowsUnchanged++;
+  }
+
+  /**
+   * Record the users created and updated by a write, which may be less than the rows written when
+   * a login appears on several rows.
+   *
+   * @param inserted the number of users created
+   * @param updated the number of users updated
+   */
+  public void usersWritten(int inserted, int updated) {
+    rowsInserted += inserted;
+    rowsUpdated += updated;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  public void setRowsRead(long rowsRead) {
+    this.rowsRead = rowsRead;
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public void setRowsWritten(long rowsWritten) {
+    this.rowsWritten = rowsWritten;
+  }
+
+  public long getRowsInserted() {
+    return rowsInserted;
+  }
+
+  public void setRowsInserted(long rowsInserted) {
+    this.rowsInserted = rowsInserted;
+  }
+
+  public long getRowsUpdated() {
+    return rowsUpdated;
+  }
+
+  public void setRowsUpdated(long rowsUpdated) {
+    this.rowsUpdated = rowsUpdated;
+  }
+
+  public long getRowsUnchanged() {
+    return rowsUnchanged;
+  }
+
+  public void setRowsUnchanged(long rowsUnchanged) {
+    this.rowsUnchanged = rowsUnchanged;
+  }
+
+  public long getRowsFailed() {
+    return rowsFailed;
+  }
+
+  public void setRowsFailed(long rowsFailed) {
+    this.rowsFailed = rowsFailed;
+  }
+
+  public List<RowError> getErrors() {
+    return errors;
+  }
+
+  public void setErrors(List<RowError> errors) {
+    this.errors = errors;
+  }
+
+  public Long getDuplicateOf() {
+    return duplicateOf;
+  }
+
+  public void setDuplicateOf(Long duplicateOf) {
+    this.duplicateOf = duplicateOf;
+  }
+
+  public String getErrorFile() {
+    return errorFile;
+  }
+
+  public void setErrorFile(String errorFile) {
+    this.errorFile = errorFile;
+  }
+
+  @Override
+  public String toString() {
+    return "ImportResultDto{"
+        + "fileName='"
+        + fileName
+        + '\''
+        + ", rowsRead="
+        + rowsRead
+        + ", rowsWritten="
+        + rowsWritten
+        + ", rowsInserted="
+        + rowsInserted
+        + ", rowsUpdated="
+        + rowsUpdated
+        + ", rowsUnchanged="
+        + rowsUnchanged
+        + ", rowsFailed="
+        + rowsFailed
+        + ", errorFile='"
+        + errorFile
+        + '\''
+        + "}";
+  }
+
+  /** An error of the import, on a given line or on the whole file when the line is null. */
+  public static class RowError {
+
+    private Integer line;
+
+    private String message;
+
+    public RowError() {
+      // Empty constructor needed for Jackson.
+    }
+
+    public RowError(Integer line, String message) {
+      this.line = line;
+      this.message = message;
+    }
+
+    public Integer getLine() {
+      return line;
+    }
+
+    public void setLine(Integer line) {
+      this.line = line;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public void setMessage(String message) {
+      this.message = message;
+    }
+  }
+}
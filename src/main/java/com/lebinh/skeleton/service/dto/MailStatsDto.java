@@ -0,0 +1,126 @@
+package com.lebinh.skeleton.service.dto;
+
+import com.lebinh.skeleton.config.ExecutorStats;
+
+/** A Dto representing the state of the mail outbox and of the mail executor. */
+public class MailStatsDto {
+
+  private long pendingMails;
+
+  private long deadMails;
+
+  private int batchesInFlight;
+
+  private int queuedTasks;
+
+  private int activeTasks;
+
+  private long completedTasks;
+
+  private long rejectedTasks;
+
+  private double averageWaitMillis;
+
+  private double maxWaitMillis;
+
+  private double averageRunMillis;
+
+  public MailStatsDto() {
+    // Empty constructor needed for Jackson.
+  }
+
+  public MailStatsDto(
+      long pendingMails, long deadMails, int batchesInFlight, ExecutorStats executorStats) {
+    this.pendingMails = pendingMails;
+    this.deadMails = deadMails;
+    this.batchesInFlight = batchesInFlight;
+    this.queuedTasks = executorStats.getQueued();
+    this.activeTasks = executorStats.getActive();
+    this.completedTasks = executorStats.getCompleted();
+    this.rejectedTasks = executorStats.getRejected();
+    this.averageWaitMillis = executorStats.getAverageWaitMillis();
+    this.maxWaitMillis = executorStats.getMaxWaitMillis();
+    this.averageRunMillis = executorStats.getAverageRunMillis();
+  }
+
+  /** @return the mails waiting to be sent or retried, including the batches in flight */
+  public long getPendingMails() {
+    return pendingMails;
+  }
+
+  public void setPendingMails(long pendingMails) {
+    this.pendingMails = pendingMails;
+  }
+
+  public long getDeadMails() {
+    return deadMails;
+  }
+
+  public void setDeadMails(long deadMails) {
+    this.deadMails = deadMails;
+  }
+
+  public int getBatchesInFlight() {
+    return batchesInFlight;
+  }
+
+  public void setBatchesInFlight(int batchesInFlight) {
+    this.batchesInFlight = batchesInFlight;
+  }
+
+  public int getQueuedTasks() {
+    return queuedTasks;
+  }
+
+  public void setQueuedTasks(int queuedTasks) {
+    this.queuedTasks = queuedTasks;
+  }
+
+  public int getActiveTasks() {
+    return activeTasks;
+  }
+
+  public void setActiveTasks(int activeTasks) {
+    this.activeTasks = activeTasks;
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks;
+  }
+
+  public void setCompletedTasks(long completedTasks) {
+    this.completedTasks = completedTasks;
+  }
+
+  public long getRejectedTasks() {
+    return rejectedTasks;
+  }
+
+  public void setRejectedTasks(long rejectedTasks) {
+    this.rejectedTasks = rejectedTasks;
+  }
+
+  public double getAverageWaitMillis() {
+    return averageWaitMillis;
+  }
+
+  public void setAverageWaitMillis(double averageWaitMillis) {
+    this.averageWaitMillis = averageWaitMillis;
+  }
+
+  public double getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  public void setMaxWaitMillis(double maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  public double getAverageRunMillis() {
+    return averageRunMillis;
+  }
+
+  public void setAverageRunMillis(double averageRunMillis) {
+    this.averageRunMillis = averageRunMillis;
+  }
+}
@@ -0,0 +1,168 @@
+package com.lebinh.skeleton.service.dto;
+
+import java.time.Instant;
+import java.util.List;
+import com.lebinh.skeleton.entity.UploadSession;
+
+/** A Dto representing an upload session and the ranges of its file received so far. */
+public class UploadSessionDto {
+
+  private Long id;
+
+  private String username;
+
+  private String fileName;
+
+  private long size;
+
+  private long receivedSize;
+
+  private List<Range> receivedRanges;
+
+  private UploadSession.Status status;
+
+  private Long importJobId;
+
+  private Instant createdDate;
+
+  public UploadSessionDto() {
+    // Empty constructor needed for Jackson.
+  }
+
+  public UploadSessionDto(UploadSession uploadSession, List<Range> receivedRanges) {
+    this.id = uploadSession.getId();
+    this.username = uploadSession.getUsername();
+    this.fileName = uploadSession.getFileName();
+    this.size = uploadSession.getSize();
+    this.receivedSize = receivedRanges.stream().mapToLong(range -> range.end - range.start).sum();
+    this.receivedRanges = receivedRanges;
+    this.status = uploadSession.getStatus();
+    this.importJobId = uploadSession.getImportJobId();
+    this.createdDate = uploadSession.getCreatedDate();
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  public long getReceivedSize() {
+    return receivedSize;
+  }
+
+  public void setReceivedSize(long receivedSize) {
+    this.receivedSize = receivedSize;
+  }
+
+  /** @return the received bytes, as disjoint ranges in file order */
+  public List<Range> getReceivedRanges() {
+    return receivedRanges;
+  }
+
+  public void setReceivedRanges(List<Range> receivedRanges) {
+    this.receivedRanges = receivedRanges;
+  }
+
+  public UploadSession.Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(UploadSession.Status status) {
+    this.status = status;
+  }
+
+  public Long getImportJobId() {
+    return importJobId;
+  }
+
+  public void setImportJobId(Long importJobId) {
+    this.importJobId = importJobId;
+  }
+
+  public Instant getCreatedDate() {
+    return createdDate;
+  }
+
+  public void setCreatedDate(Instant createdDate) {
+    this.createdDate = createdDate;
+  }
+
+  @Override
+  public String toString() {
+    return "UploadSessionDto{"
+        + "id="
+        + id
+        + ", fileName='"
+        + fileName
+        + '\''
+        + ", size="
+        + size
+        + ", receivedSize="
+        + receivedSize
+        + ", status="
+        + status
+        + ", importJobId="
+        + importJobId
+        + "}";
+  }
+
+  /** A range of bytes of the file, from start inclusive to end exclusive. */
+  public static class Range {
+
+    private long start;
+
+    private long end;
+
+    public Range() {
+      // Empty constructor needed for Jackson.
+    }
+
+    public Range(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public void setStart(long start) {
+      this.start = start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public void setEnd(long end) {
+      this.end = end;
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package com.lebinh.skeleton.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the records of a UTF-8 CSV file into {@link SheetRecord}s of a schema, like {@link
+ * SpreadSheetUtil#readSheet} for an xlsx sheet.
+ *
+ * <p>The file is memory mapped and parsed straight from the mapped bytes. {@link #split} scans it
+ * once for the record boundaries, outside of quoted fields, and cuts it in byte ranges of a given
+ * number of records; each range can then be parsed by {@link #read(Range)} on another thread.
+ * Only the fields of the schema columns are decoded, each into a single string, the others are
+ * skipped.
+ *
+ * <p>The fields are separated by commas and may be quoted with double quotes, a quote in a quoted
+ * field being doubled, as in RFC 4180. Lines end with LF or CRLF. The line of a record is its
+ * 1-based number in the file, which is its line number unless a quoted field spans several lines.
+ * Blank lines are skipped.
+ */
+public class CsvReader {
+
+  private static final byte QUOTE = '"';
+
+  private static final byte SEPARATOR = ',';
+
+  private static final byte CR = '\r';
+
+  private static final byte LF = '\n';
+
+  private final SheetSchema schema;
+
+  private final MappedByteBuffer buffer;
+
+  // schema column of each file column, -1 if not read
+  private final int[] columns;
+
+  // offset and 0-based number of the first data record
+  private final int dataStart;
+
+  private final int dataRecordNo;
+
+  private CsvReader(SheetSchema schema, MappedByteBuffer buffer, int[] columns, int dataStart) {
+    this.schema = schema;
+    this.buffer = buffer;
+    this.columns = columns;
+    this.dataStart = dataStart;
+    this.dataRecordNo = schema.getHeaderRow() + 1;
+  }
+
+  /**
+   * Map a CSV file and resolve the schema columns from its header record.
+   *
+   * @param file the CSV file, of at most 2 GB
+   * @param schema the columns to read
+   * @return the reader of the data records
+   * @throws IOException if the file could not be mapped
+   * @throws IllegalArgumentException if the header record or a required column is missing
+   */
+  public static CsvReader open(Path file, SheetSchema schema) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("CSV file too large " + file.getFileName());
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    int position = hasByteOrderMark(buffer) ? 3 : 0;
+    for (int i = 0; i < schema.getHeaderRow(); i++) {
+      position = nextRecord(buffer, position);
+    }
+    if (position >= buffer.limit()) {
+      throw new IllegalArgumentException("Missing header on line " + (schema.getHeaderRow() + 1));
+    }
+    List<String> header = new ArrayList<>();
+    int end =
+        new Parser(buffer)
+            .parse(
+                position,
+                null,
+                (fieldNo, text) -> {
+                  while (header.size() <= fieldNo) {
+                    header.add(null);
+                  }
+                  header.set(fieldNo, text);
+                });
+    int[] columns = toFileColumns(schema.resolve(header.toArray(new String[0])));
+    return new CsvReader(schema, buffer, columns, end);
+  }
+
+  /**
+   * Cut the data records in ranges, in file order. This scans the bytes of the file for quotes,
+   * separators and line ends without decoding them.
+   *
+   * @param recordsPerRange the number of records of a range, blank lines included
+   * @param rangeHandler receives each range as soon as it is found
+   */
+  public void split(int recordsPerRange, Consumer<Range> rangeHandler) {
+    int limit = buffer.limit();
+    int rangeStart = dataStart;
+    int rangeRecordNo = dataRecordNo;
+    int records = 0;
+    int position = dataStart;
+    while (position < limit) {
+      position = nextRecord(buffer, position);
+      if (++records == recordsPerRange) {
+        rangeHandler.accept(new Range(rangeStart, position, rangeRecordNo));
+        rangeStart = position;
+        rangeRecordNo += records;
+        records = 0;
+      }
+    }
+    if (rangeStart < limit) {
+      rangeHandler.accept(new Range(rangeStart, limit, rangeRecordNo));
+    }
+  }
+
+  /**
+   * Parse the records of a range. Ranges can be read concurrently.
+   *
+   * @param range a range found by {@link #split}
+   * @return the non blank records of the range, converted and completed
+   */
+  public List<SheetRecord> read(Range range) {
+    List<SheetRecord> records = new ArrayList<>();
+    Parser parser = new Parser(buffer);
+    int position = range.start;
+    int recordNo = range.firstRecordNo;
+    while (position < range.end) {
+      SheetRecord record = new SheetRecord(schema);
+      record.reset(recordNo++);
+      position = parser.parse(position, columns, record::set);
+      if (!record.isEmpty()) {
+        record.complete();
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  private static boolean hasByteOrderMark(MappedByteBuffer buffer) {
+    return buffer.limit() >= 3
+        && buffer.get(0) == (byte) 0xEF
+        && buffer.get(1) == (byte) 0xBB
+        && buffer.get(2) == (byte) 0xBF;
+  }
+
+  /**
+   * Find the end of a record with the quoting rules of {@link Parser#parse}: a quote only opens a
+   * quoted field at the start of the field, and is literal anywhere else.
+   *
+   * @return the offset of the record following the one starting at the given offset
+   */
+  private static int nextRecord(MappedByteBuffer buffer, int start) {
+    int limit = buffer.limit();
+    boolean fieldStart = true;
+    boolean quoted = false;
+    for (int i = start; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (quoted) {
+        if (b == QUOTE) {
+          // a doubled quote is part of the field, a single one closes it
+          if (i + 1 < limit && buffer.get(i + 1) == QUOTE) {
+            i++;
+          } else {
+            quoted = false;
+          }
+        }
+      } else if (b == LF) {
+        return i + 1;
+      } else {
+        quoted = fieldStart && b == QUOTE;
+        fieldStart = b == SEPARATOR;
+      }
+    }
+    return limit;
+  }
+
+  private static int[] toFileColumns(int[] schemaToFile) {
+    int[] fileToSchema = new int[Arrays.stream(schemaToFile).max().orElse(-1) + 1];
+    Arrays.fill(fileToSchema, -1);
+    for (int i = 0; i < schemaToFile.length; i++) {
+      if (schemaToFile[i] >= 0) {
+        fileToSchema[schemaToFile[i]] = i;
+      }
+    }
+    return fileToSchema;
+  }
+
+  /** A range of whole records of the file. */
+  public static class Range {
+
+    private final int start;
+
+    private final int end;
+
+    private final int firstRecordNo;
+
+    Range(int start, int end, int firstRecordNo) {
+      this.start = start;
+      this.end = end;
+      this.firstRecordNo = firstRecordNo;
+    }
+
+    /** @return the 1-based line of the first record of the range */
+    public int getFirstLine() {
+      return firstRecordNo + 1;
+    }
+  }
+
+  /** Receives the non empty fields of a record. */
+  private interface FieldHandler {
+
+    void field(int column, String text);
+  }
+
+  /** Parses the records of a mapped file, with a reused buffer for the bytes of a field. */
+  private static class Parser {
+
+    private final MappedByteBuffer buffer;
+
+    private byte[] field = new byte[256];
+
+    Parser(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Parse the record starting at an offset.
+     *
+     * @param columns the column to which each field is passed, -1 to skip it; null to pass every
+     *     field with its number
+     * @return the offset of the next record
+     */
+    int parse(int start, int[] columns, FieldHandler handler) {
+      int limit = buffer.limit();
+      int position = start;
+      int fieldNo = 0;
+      while (true) {
+        int column = columns == null ? fieldNo : fieldNo < columns.length ? columns[fieldNo] : -1;
+        fieldNo++;
+        int length = 0;
+        boolean quoted = position < limit && buffer.get(position) == QUOTE;
+        if (quoted) {
+          position++;
+          while (position < limit) {
+            byte b = buffer.get(position++);
+            if (b == QUOTE) {
+              if (position < limit && buffer.get(position) == QUOTE) {
+                position++;
+              } else {
+                break;
+              }
+            }
+            if (column >= 0) {
+              length = append(length, b);
+            }
+          }
+        }
+        // the unquoted field, or what follows the closing quote
+        while (position < limit) {
+          byte b = buffer.get(position);
+          if (b == SEPARATOR || b == LF) {
+            break;
+          }
+          position++;
+          if (column >= 0 && !(b == CR && isLineEnd(position))) {
+            length = append(length, b);
+          }
+        }
+        if (column >= 0 && length > 0) {
+          handler.field(column, new String(field, 0, length, StandardCharsets.UTF_8));
+        }
+        if (position >= limit) {
+          return limit;
+        }
+        if (buffer.get(position++) == LF) {
+          return position;
+        }
+      }
+    }
+
+    private boolean isLineEnd(int position) {
+      return position >= buffer.limit() || buffer.get(position) == LF;
+    }
+
+    private int append(int length, byte b) {
+      if (length == field.length) {
+        field = Arrays.copyOf(field, length * 2);
+      }
+      field[length] = b;
+      return length + 1;
+    }
+  }
+}
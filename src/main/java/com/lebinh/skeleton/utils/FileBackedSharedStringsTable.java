@@ -0,0 +1,273 @@
+package com.lebinh.skeleton.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.StaxHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.SAXException;
+
+/**
+ * A shared strings table which keeps the strings of an xlsx file on disk instead of the heap.
+ *
+ * <p>{@link ReadOnlySharedStringsTable} loads every distinct string of the workbook in a list,
+ * which for string-heavy files takes far more memory than the rows being read. This table streams
+ * xl/sharedStrings.xml once with StAX into a temporary file of length-prefixed UTF-8 strings and a
+ * memory mapped index of their offsets. Only the last used strings are kept in heap, up to the
+ * size of the cache, so the memory used does not depend on the number of distinct strings.
+ *
+ * <p>Like Excel, the text of a string is the concatenation of its runs, without the phonetic runs.
+ * The table is not thread-safe and must be closed to delete its temporary files.
+ */
+public class FileBackedSharedStringsTable extends ReadOnlySharedStringsTable implements Closeable {
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = StaxHelper.newXMLInputFactory();
+
+  private static final int OFFSET_SIZE = Long.BYTES;
+
+  // least recently used strings, by index
+  private final Map<Integer, String> cache;
+
+  private final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+
+  // false while the super constructor runs, as it calls readFrom before this one
+  private boolean initialized;
+
+  private Path dataFile;
+
+  private Path indexFile;
+
+  private FileChannel data;
+
+  private MappedByteBuffer index;
+
+  private int count;
+
+  private int uniqueCount;
+
+  /**
+   * Read the shared strings of a package.
+   *
+   * @param pkg the xlsx package
+   * @param cacheSize the number of strings kept in heap
+   * @throws IOException if the shared strings could not be read or written to disk
+   * @throws SAXException never, declared by the super constructor
+   */
+  public FileBackedSharedStringsTable(OPCPackage pkg, int cacheSize)
+      throws IOException, SAXException {
+    super(pkg, false);
+    this.cache =
+        new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > cacheSize;
+          }
+        };
+    this.initialized = true;
+    List<PackagePart> parts =
+        pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+    if (!parts.isEmpty()) {
+      try (InputStream in = parts.get(0).getInputStream()) {
+        readFrom(in);
+      }
+    }
+  }
+
+  /**
+   * Read the strings of a shared strings part into the temporary files, replacing the strings read
+   * before.
+   *
+   * @param is the content of xl/sharedStrings.xml, not closed
+   * @throws IOException if the part is not valid or could not be written to disk
+   */
+  @Override
+  public void readFrom(InputStream is) throws IOException {
+    if (!initialized) {
+      // the strings are read once the cache is set
+      is.close();
+      return;
+    }
+    close();
+    cache.clear();
+    count = 0;
+    uniqueCount = 0;
+    dataFile = Files.createTempFile("shared-strings-", ".data");
+    indexFile = Files.createTempFile("shared-strings-", ".index");
+    try {
+      writeStrings(is);
+      data = FileChannel.open(dataFile, StandardOpenOption.READ);
+      try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+        index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+      }
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void writeStrings(InputStream is) throws IOException {
+    try (DataOutputStream dataOut = newDataOutputStream(dataFile);
+        DataOutputStream indexOut = newDataOutputStream(indexFile)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+      try {
+        long offset = 0;
+        boolean inPhoneticRun = false;
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("sst".equals(element)) {
+              String countValue = reader.getAttributeValue(null, "count");
+              count = countValue == null ? 0 : Integer.parseInt(countValue);
+            } else if ("si".equals(element)) {
+              text.setLength(0);
+            } else if ("rPh".equals(element)) {
+              inPhoneticRun = true;
+            } else if ("t".equals(element) && !inPhoneticRun) {
+              text.append(reader.getElementText());
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("rPh".equals(element)) {
+              inPhoneticRun = false;
+            } else if ("si".equals(element)) {
+              if ((long) (uniqueCount + 1) * OFFSET_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Too many shared strings");
+              }
+              byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+              indexOut.writeLong(offset);
+              dataOut.writeInt(bytes.length);
+              dataOut.write(bytes);
+              offset += Integer.BYTES + bytes.length;
+              uniqueCount++;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException | NumberFormatException e) {
+      throw new IOException("Invalid shared strings", e);
+    }
+  }
+
+  private static DataOutputStream newDataOutputStream(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+  }
+
+  @Override
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public int getUniqueCount() {
+    return uniqueCount;
+  }
+
+  /**
+   * @param idx the index of the string
+   * @return the string, read from disk unless it is in the cache
+   * @throws UncheckedIOException if the string could not be read
+   */
+  @Override
+  public String getEntryAt(int idx) {
+    if (idx < 0 || idx >= uniqueCount) {
+      throw new IndexOutOfBoundsException("Shared string " + idx + " of " + uniqueCount);
+    }
+    String entry = cache.get(idx);
+    if (entry == null) {
+      try {
+        entry = readEntry(index.getLong(idx * OFFSET_SIZE));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      cache.put(idx, entry);
+    }
+    return entry;
+  }
+
+  /** @return a view of the strings, each read by {@link #getEntryAt(int)} */
+  @Override
+  public List<String> getItems() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return getEntryAt(index);
+      }
+
+      @Override
+      public int size() {
+        return uniqueCount;
+      }
+    };
+  }
+
+  private String readEntry(long offset) throws IOException {
+    lengthBuffer.clear();
+    readFully(lengthBuffer, offset);
+    ByteBuffer bytes = ByteBuffer.allocate(lengthBuffer.getInt(0));
+    readFully(bytes, offset + Integer.BYTES);
+    return new String(bytes.array(), StandardCharsets.UTF_8);
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    long next = position;
+    while (buffer.hasRemaining()) {
+      int read = data.read(buffer, next);
+      if (read < 0) {
+        throw new EOFException("Truncated shared strings file " + dataFile);
+      }
+      next += read;
+    }
+  }
+
+  /** Delete the temporary files of the strings. */
+  @Override
+  public void close() throws IOException {
+    index = null;
+    uniqueCount = 0;
+    try {
+      if (data != null) {
+        data.close();
+      }
+    } finally {
+      data = null;
+      deleteIfExists(dataFile);
+      deleteIfExists(indexFile);
+      dataFile = null;
+      indexFile = null;
+    }
+  }
+
+  private static void deleteIfExists(Path file) throws IOException {
+    if (file != null) {
+      Files.deleteIfExists(file);
+    }
+  }
+}
@@ -1,11 +1,33 @@
 package com.lebinh.skeleton.utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 import liquibase.util.file.FilenameUtils;
 
 public class FileCheckUtil {
 
+  // Local file header signature which starts every zip archive, hence every OOXML file
+  private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+  // Parts every xlsx package has, whatever the application which wrote it
+  private static final String[] XLSX_REQUIRED_ENTRIES = {"[Content_Types].xml", "xl/workbook.xml"};
+
+  // Entries smaller than this are not checked for their compression ratio, small XML parts
+  // legitimately compress very well
+  private static final long MIN_RATIO_CHECKED_SIZE = 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 8192;
+
   public static boolean checkFileExtension(File file, String... allowExtensions) {
     String fileExtension = FilenameUtils.getExtension(file.getName());
 
@@ -15,4 +37,133 @@ public class FileCheckUtil {
     return result;
   }
 
+  /**
+   * Check that a stream holds an xlsx file which is safe to parse, reading it once.
+   *
+   * <p>The stream must start with the zip signature and be a zip archive holding the xlsx parts.
+   * The entries are inflated to count their size, without keeping them, and the check stops as
+   * soon as a limit is exceeded, so a zip bomb is rejected after reading at most the configured
+   * limits instead of being expanded by the parser.
+   *
+   * @param in the content to check, read but not closed
+   * @param limits the limits of the archive
+   * @return the reason why the content is rejected, or empty if it is valid
+   * @throws IOException if the stream could not be read
+   */
+  public static Optional<String> checkXlsxContent(InputStream in, ZipLimits limits)
+      throws IOException {
+    CountingInputStream counter = new CountingInputStream(in);
+    BufferedInputStream buffered = new BufferedInputStream(counter, BUFFER_SIZE);
+    buffered.mark(ZIP_MAGIC.length);
+    byte[] magic = new byte[ZIP_MAGIC.length];
+    if (readFully(buffered, magic) < magic.length || !Arrays.equals(magic, ZIP_MAGIC)) {
+      return Optional.of("Not an xlsx file");
+    }
+    buffered.reset();
+
+    Set<String> missingEntries = new LinkedHashSet<>(Arrays.asList(XLSX_REQUIRED_ENTRIES));
+    ZipInputStream zip = new ZipInputStream(buffered);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long totalSize = 0;
+    int entryCount = 0;
+    try {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        if (++entryCount > limits.maxEntries) {
+          return Optional.of("Too many entries in the archive, the limit is " + limits.maxEntries);
+        }
+        missingEntries.remove(entry.getName());
+        long compressedStart = counter.count;
+        long size = 0;
+        for (int n = zip.read(buffer); n != -1; n = zip.read(buffer)) {
+          size += n;
+          totalSize += n;
+          if (totalSize > limits.maxUncompressedSize) {
+            return Optional.of(
+                "Uncompressed content too large, the limit is "
+                    + limits.maxUncompressedSize
+                    + " bytes");
+          }
+          long compressedSize = counter.count - compressedStart;
+          if (size > MIN_RATIO_CHECKED_SIZE && size > compressedSize * limits.maxCompressionRatio) {
+            return Optional.of("Suspicious compression ratio of entry " + entry.getName());
+          }
+        }
+      }
+    } catch (ZipException e) {
+      return Optional.of("Corrupt xlsx file: " + e.getMessage());
+    }
+    if (!missingEntries.isEmpty()) {
+      return Optional.of("Not an xlsx file, missing " + String.join(", ", missingEntries));
+    }
+    return Optional.empty();
+  }
+
+  private static int readFully(InputStream in, byte[] bytes) throws IOException {
+    int length = 0;
+    while (length < bytes.length) {
+      int n = in.read(bytes, length, bytes.length - length);
+      if (n == -1) {
+        break;
+      }
+      length += n;
+    }
+    return length;
+  }
+
+  /** Limits of the zip archives accepted by {@link #checkXlsxContent}. */
+  public static class ZipLimits {
+
+    private final int maxEntries;
+
+    private final long maxUncompressedSize;
+
+    private final int maxCompressionRatio;
+
+    /**
+     * @param maxEntries the maximum number of entries
+     * @param maxUncompressedSize the maximum total size of the inflated entries, in bytes
+     * @param maxCompressionRatio the maximum ratio between the inflated and the compressed size of
+     *     an entry
+     */
+    public ZipLimits(int maxEntries, long maxUncompressedSize, int maxCompressionRatio) {
+      this.maxEntries = maxEntries;
+      this.maxUncompressedSize = maxUncompressedSize;
+      this.maxCompressionRatio = maxCompressionRatio;
+    }
+  }
+
+  /** Counts the bytes read from the underlying stream. */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
 }
@@ -1,5 +1,273 @@
 package com.lebinh.skeleton.utils;
 
-public class FileUtil {
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
 
+/**
+ * Utility class for the content-addressed file store.
+ *
+ * <p>A blob is stored once under the hex SHA-256 of its content, in <code>
+ * root/ab/cd/abcd...</code>, so identical uploads share the same file and the hash can be used as
+ * a strong ETag.
+ */
+public final class FileUtil {
+
+  private static final Pattern SHA_256_HEX = Pattern.compile("^[0-9a-f]{64}$");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String TEMP_DIRECTORY = "tmp";
+
+  private static final String CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+  // the only types served inline, any other content is downloaded as an attachment
+  private static final Set<String> INLINE_CONTENT_TYPES =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  MediaType.IMAGE_PNG_VALUE,
+                  MediaType.IMAGE_GIF_VALUE,
+                  MediaType.IMAGE_JPEG_VALUE)));
+
+  // Tomcat request attributes used to hand the file over to the connector (sendfile)
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private FileUtil() {}
+
+  /**
+   * Store the content of a channel, computing its SHA-256 while it is written to disk.
+   *
+   * @param root the root directory of the store
+   * @param source the content to store, read until its end but not closed
+   * @return the hex SHA-256 of the content, which identifies the stored file
+   * @throws IOException if the content could not be read or stored
+   */
+  public static String store(Path root, ReadableByteChannel source) throws IOException {
+    Path tempDirectory = Files.createDirectories(root.resolve(TEMP_DIRECTORY));
+    Path tempFile = Files.createTempFile(tempDirectory, "upload-", ".part");
+    try {
+      MessageDigest digest = sha256();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+        while (source.read(buffer) != -1) {
+          buffer.flip();
+          digest.update(buffer.duplicate());
+          while (buffer.hasRemaining()) {
+            target.write(buffer);
+          }
+          buffer.clear();
+        }
+        target.force(false);
+      }
+      String hash = toHex(digest.digest());
+      Path file = resolve(root, hash);
+      if (Files.exists(file)) {
+        return hash;
+      }
+      Files.createDirectories(file.getParent());
+      try {
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // stored concurrently with the same content
+      }
+      return hash;
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Resolve the path of a stored file. The file may not exist.
+   *
+   * @param root the root directory of the store
+   * @param hash the hex SHA-256 of the file
+   * @return the path of the file
+   * @throws IllegalArgumentException if the hash is not a lower case hex SHA-256
+   */
+  public static Path resolve(Path root, String hash) {
+    if (!isSha256(hash)) {
+      throw new IllegalArgumentException("Invalid file hash: " + hash);
+    }
+    return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+  }
+
+  /**
+   * @param hash the value to check
+   * @return true if the value is a lower case hex SHA-256
+   */
+  public static boolean isSha256(String hash) {
+    return hash != null && SHA_256_HEX.matcher(hash).matches();
+  }
+
+  /**
+   * Copy a region of a file to a channel with {@link FileChannel#transferTo}, which lets the
+   * kernel copy the data when the target is a socket or a file.
+   *
+   * @param file the file to read
+   * @param position the position of the first byte to copy
+   * @param count the number of bytes to copy
+   * @param target the channel to write to, not closed
+   * @throws IOException if the region could not be copied
+   */
+  public static void transfer(Path file, long position, long count, WritableByteChannel target)
+      throws IOException {
+    try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+      long transferred = 0;
+      while (transferred < count) {
+        long written = source.transferTo(position + transferred, count - transferred, target);
+        if (written <= 0) {
+          throw new IOException("Unexpected end of file " + file);
+        }
+        transferred += written;
+      }
+    }
+  }
+
+  /**
+   * Serve a stored file, honouring conditional and range requests.
+   *
+   * <p>Only PNG, GIF and JPEG images are served inline with their type. Any other content is
+   * served as application/octet-stream, as an attachment unless the caller set its own
+   * Content-Disposition, so that an uploaded HTML page or script is never rendered on the origin of
+   * the application. Browsers are told not to sniff the type.
+   *
+   * <p>The hash is used as a strong ETag: a matching If-None-Match gets a 304 (Not Modified). A
+   * single byte range gets a 206 (Partial Content), several ranges get the whole file, and an
+   * unsatisfiable range gets a 416. The body is handed to Tomcat's sendfile when the connector
+   * supports it, so the kernel copies it to the socket. Otherwise it is copied to the response
+   * stream with {@link FileChannel#transferTo}, through the bounded buffers of the channels, so the
+   * file is streamed and never held in memory.
+   *
+   * @param file the stored file
+   * @param hash the hex SHA-256 of the file
+   * @param request the HTTP request, GET or HEAD
+   * @param response the HTTP response
+   * @throws IOException if the file could not be sent
+   */
+  public static void serve(
+      Path file, String hash, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String etag = "\"" + hash + "\"";
+    response.setHeader(HttpHeaders.ETAG, etag);
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    response.setHeader("X-Content-Type-Options", "nosniff");
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long length = Files.size(file);
+    long start = 0;
+    long end = length - 1;
+    HttpRange range = requestedRange(request, etag);
+    if (range != null) {
+      start = range.getRangeStart(length);
+      end = range.getRangeEnd(length);
+      if (start >= length || start > end) {
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        return;
+      }
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+    }
+    long count = end - start + 1;
+    String contentType = probeContentType(file);
+    if (!INLINE_CONTENT_TYPES.contains(contentType)) {
+      contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+      if (!response.containsHeader(HttpHeaders.CONTENT_DISPOSITION)) {
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment");
+      }
+    }
+    response.setContentType(contentType);
+    response.setContentLengthLong(count);
+    if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+      return;
+    }
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, end + 1);
+    } else {
+      transfer(file, start, count, Channels.newChannel(response.getOutputStream()));
+    }
+  }
+
+  private static HttpRange requestedRange(HttpServletRequest request, String etag) {
+    String range = request.getHeader(HttpHeaders.RANGE);
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (range == null || (ifRange != null && !ifRange.equals(etag))) {
+      return null;
+    }
+    try {
+      List<HttpRange> ranges = HttpRange.parseRanges(range);
+      // several ranges would need a multipart body, sending the whole file is allowed instead
+      return ranges.size() == 1 ? ranges.get(0) : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static String probeContentType(Path file) throws IOException {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 16)) {
+      String contentType = URLConnection.guessContentTypeFromStream(in);
+      return contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+  }
+
+  /** @return a new SHA-256 message digest */
+  public static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  /**
+   * @param bytes the bytes to encode
+   * @return the lower case hex representation of the bytes
+   */
+  public static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
 }
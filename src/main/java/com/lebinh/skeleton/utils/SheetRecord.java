@@ -0,0 +1,164 @@
+package com.lebinh.skeleton.utils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import com.lebinh.skeleton.utils.SheetSchema.Column;
+
+/**
+ * A data row of a sheet, converted according to a {@link SheetSchema}.
+ *
+ * <p>The same record is refilled for every row of a sheet, so it must not be kept by the handler
+ * once it returns, unless it is {@link #copy() copied}. Values are accessed by the index of their
+ * column in the schema. Cells which could not be converted are null and described by {@link
+ * #getError()}, their text is still available from {@link #getText(int)}.
+ */
+public class SheetRecord {
+
+  private final SheetSchema schema;
+
+  private final Object[] values;
+
+  private final boolean[] invalid;
+
+  private final String[] texts;
+
+  private int rowNo;
+
+  private String error;
+
+  SheetRecord(SheetSchema schema) {
+    this.schema = schema;
+    this.values = new Object[schema.size()];
+    this.invalid = new boolean[schema.size()];
+    this.texts = new String[schema.size()];
+  }
+
+  /**
+   * Copy the record, so that it can be kept once the handler returns.
+   *
+   * @return a record with the same row number, values and errors
+   */
+  public SheetRecord copy() {
+    SheetRecord copy = new SheetRecord(schema);
+    System.arraycopy(values, 0, copy.values, 0, values.length);
+    System.arraycopy(invalid, 0, copy.invalid, 0, invalid.length);
+    System.arraycopy(texts, 0, copy.texts, 0, texts.length);
+    copy.rowNo = rowNo;
+    copy.error = error;
+    return copy;
+  }
+
+  /** Clear the record before filling it with the cells of a row. */
+  void reset(int rowNo) {
+    Arrays.fill(values, null);
+    Arrays.fill(invalid, false);
+    Arrays.fill(texts, null);
+    this.rowNo = rowNo;
+    this.error = null;
+  }
+
+  /** Convert and set the formatted value of a cell. */
+  void set(int column, String text) {
+    String value = StringUtils.trimToNull(text);
+    if (value == null) {
+      return;
+    }
+    texts[column] = value;
+    Column definition = schema.getColumn(column);
+    try {
+      values[column] = convert(definition, value);
+    } catch (NumberFormatException | ArithmeticException e) {
+      invalid[column] = true;
+      addError(definition.getName() + ": not a number '" + value + "'");
+    } catch (IllegalArgumentException e) {
+      invalid[column] = true;
+      addError(definition.getName() + ": " + e.getMessage() + " '" + value + "'");
+    }
+  }
+
+  /** Check the required columns once all the cells of the row are set. */
+  void complete() {
+    for (int i = 0; i < values.length; i++) {
+      Column definition = schema.getColumn(i);
+      if (values[i] == null && !invalid[i] && definition.isRequired()) {
+        addError(definition.getName() + ": must not be empty");
+      }
+    }
+  }
+
+  private static Object convert(Column column, String value) {
+    switch (column.getType()) {
+      case LONG:
+        return new BigDecimal(value).longValueExact();
+      case DECIMAL:
+        return new BigDecimal(value);
+      case BOOLEAN:
+        Boolean bool = BooleanUtils.toBooleanObject(value);
+        if (bool == null) {
+          throw new IllegalArgumentException("not a boolean");
+        }
+        return bool;
+      default:
+        return value;
+    }
+  }
+
+  /** @return true if no cell of the record has a value */
+  boolean isEmpty() {
+    for (String text : texts) {
+      if (text != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void addError(String message) {
+    error = error == null ? message : error + ", " + message;
+  }
+
+  /** @return the 0-based number of the row in the sheet */
+  public int getRowNo() {
+    return rowNo;
+  }
+
+  /** @return the 1-based line number of the row, as displayed by Excel */
+  public int getLine() {
+    return rowNo + 1;
+  }
+
+  /** @return the conversion errors of the row, null if there is none */
+  public String getError() {
+    return error;
+  }
+
+  public boolean isValid() {
+    return error == null;
+  }
+
+  /**
+   * @param column the index of the column in the schema
+   * @return the trimmed formatted text of the cell, as read before its conversion, null if empty
+   */
+  public String getText(int column) {
+    return texts[column];
+  }
+
+  public String getString(int column) {
+    return (String) values[column];
+  }
+
+  public Long getLong(int column) {
+    return (Long) values[column];
+  }
+
+  public BigDecimal getDecimal(int column) {
+    return (BigDecimal) values[column];
+  }
+
+  public Boolean getBoolean(int column) {
+    return (Boolean) values[column];
+  }
+}
@@ -0,0 +1,118 @@
+package com.lebinh.skeleton.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The columns of a sheet read by {@link SpreadSheetUtil#readSheet}, with their declared types.
+ *
+ * <p>Columns are looked up by name in the header row, case insensitively and in any order, once
+ * per sheet. Values are then accessed by the index of the column in the schema.
+ */
+public class SheetSchema {
+
+  /** The types to which the cell values are converted. */
+  public enum ColumnType {
+    STRING,
+    LONG,
+    DECIMAL,
+    BOOLEAN
+  }
+
+  private final int headerRow;
+
+  private final List<Column> columns = new ArrayList<>();
+
+  /** @param headerRow the 0-based number of the header row, data rows follow it */
+  public SheetSchema(int headerRow) {
+    this.headerRow = headerRow;
+  }
+
+  /**
+   * Add a column.
+   *
+   * @param name the name of the column in the header row
+   * @param type the type of the values
+   * @param required true if the column must be present and its cells not empty
+   * @return this schema
+   */
+  public SheetSchema column(String name, ColumnType type, boolean required) {
+    columns.add(new Column(name, type, required));
+    return this;
+  }
+
+  public int getHeaderRow() {
+    return headerRow;
+  }
+
+  public int size() {
+    return columns.size();
+  }
+
+  public Column getColumn(int index) {
+    return columns.get(index);
+  }
+
+  /**
+   * Resolve the position of each column of the schema in the sheet.
+   *
+   * @param header the cells of the header row, by sheet column index
+   * @return the sheet column index of each schema column, -1 for a missing optional column
+   * @throws IllegalArgumentException if a required column is missing
+   */
+  public int[] resolve(String[] header) {
+    int[] indexes = new int[columns.size()];
+    Arrays.fill(indexes, -1);
+    for (int i = 0; i < header.length; i++) {
+      String name = StringUtils.lowerCase(StringUtils.trimToNull(header[i]), Locale.ENGLISH);
+      for (int j = 0; name != null && j < columns.size(); j++) {
+        if (indexes[j] == -1 && columns.get(j).name.equalsIgnoreCase(name)) {
+          indexes[j] = i;
+          break;
+        }
+      }
+    }
+    List<String> missing = new ArrayList<>();
+    for (int j = 0; j < columns.size(); j++) {
+      if (indexes[j] == -1 && columns.get(j).required) {
+        missing.add(columns.get(j).name);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Missing columns " + String.join(", ", missing) + " on line " + (headerRow + 1));
+    }
+    return indexes;
+  }
+
+  /** A column of the schema. */
+  public static class Column {
+
+    private final String name;
+
+    private final ColumnType type;
+
+    private final boolean required;
+
+    Column(String name, ColumnType type, boolean required) {
+      this.name = name;
+      this.type = type;
+      this.required = required;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public ColumnType getType() {
+      return type;
+    }
+
+    public boolean isRequired() {
+      return required;
+    }
+  }
+}
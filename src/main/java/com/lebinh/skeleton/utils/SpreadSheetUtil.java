@@ -1,18 +1,48 @@
 package com.lebinh.skeleton.utils;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 public class SpreadSheetUtil {
 
+  /** Number of rows kept in memory by a {@link StreamingSheetWriter} before flushing to disk. */
+  public static final int DEFAULT_ROW_ACCESS_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+
+  /** Number of shared strings kept in heap when reading a sheet from a file. */
+  public static final int DEFAULT_SHARED_STRINGS_CACHE_SIZE = 10000;
+
+  private static final int MAX_ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
   public static boolean checkNumberOfSheet(Workbook workbook, int allowNumberOfSheets) {
     if (workbook != null) {
       return workbook.getNumberOfSheets() == allowNumberOfSheets;
@@ -43,50 +73,420 @@ public class SpreadSheetUtil {
     return "";
   }
 
+  /**
+   * Read a single cell. To read several cells of a sheet, use a {@link #cellReader(Sheet)}.
+   *
+   * @param sheet the sheet, may be null
+   * @param rowNo the 0-based row number
+   * @param columnNo the 0-based column number
+   * @return the value of the cell formatted as Excel displays it, empty if there is no such cell
+   */
   public static String getDataInCell(Sheet sheet, int rowNo, int columnNo) {
     if (sheet != null) {
+      return cellReader(sheet).getDataInCell(rowNo, columnNo);
+    }
+
+    return "";
+  }
+
+  /**
+   * Create a reader of the cells of a sheet, which shares its formatter and formula evaluator
+   * between the cells it reads.
+   *
+   * @param sheet the sheet to read
+   * @return the reader
+   */
+  public static CellReader cellReader(Sheet sheet) {
+    return new CellReader(sheet);
+  }
+
+  /** Reads cells of a loaded sheet formatted as Excel displays them. */
+  public static class CellReader {
+
+    private final Sheet sheet;
+
+    private final DataFormatter formatter = new DataFormatter();
+
+    private final FormulaEvaluator evaluator;
+
+    private CellReader(Sheet sheet) {
+      this.sheet = sheet;
+      this.evaluator = createFormulaEvaluator(sheet);
+    }
+
+    /**
+     * @param rowNo the 0-based row number
+     * @param columnNo the 0-based column number
+     * @return the value of the cell formatted as Excel displays it, empty if there is no such cell
+     */
+    public String getDataInCell(int rowNo, int columnNo) {
       Row row = sheet.getRow(rowNo);
       if (row != null) {
-        Cell cell = row.getCell(columnNo, MissingCellPolicy.CREATE_NULL_AS_BLANK);
-        return cell.getStringCellValue();
+        Cell cell = row.getCell(columnNo, MissingCellPolicy.RETURN_BLANK_AS_NULL);
+        if (cell != null) {
+          return formatter.formatCellValue(cell, evaluator);
+        }
       }
+
+      return "";
     }
+  }
 
-    return "";
+  /**
+   * Read the data rows of a loaded sheet into records of the given schema.
+   *
+   * <p>The columns are resolved once from the header row, then only the cells of the schema
+   * columns are read, formatted as Excel displays them and converted to their declared type. Empty
+   * rows are skipped.
+   *
+   * @param sheet the sheet to read
+   * @param schema the columns to read
+   * @param handler receives the records, in sheet order
+   * @throws IllegalArgumentException if the header row or a required column is missing
+   */
+  public static void readSheet(Sheet sheet, SheetSchema schema, RecordHandler handler) {
+    DataFormatter formatter = new DataFormatter();
+    FormulaEvaluator evaluator = createFormulaEvaluator(sheet);
+    SheetRecord record = new SheetRecord(schema);
+    int[] columns = null;
+    for (Row row : sheet) {
+      if (row.getRowNum() < schema.getHeaderRow()) {
+        continue;
+      }
+      if (columns == null) {
+        checkHeaderRow(schema, row.getRowNum());
+        String[] header = new String[Math.max(row.getLastCellNum(), 0)];
+        for (Cell cell : row) {
+          header[cell.getColumnIndex()] = formatter.formatCellValue(cell, evaluator);
+        }
+        columns = schema.resolve(header);
+        continue;
+      }
+      record.reset(row.getRowNum());
+      boolean empty = true;
+      for (int i = 0; i < columns.length; i++) {
+        Cell cell = columns[i] < 0 ? null : row.getCell(columns[i]);
+        if (cell != null) {
+          String value = formatter.formatCellValue(cell, evaluator);
+          if (!value.isEmpty()) {
+            record.set(i, value);
+            empty = false;
+          }
+        }
+      }
+      if (!empty) {
+        record.complete();
+        if (!handler.handle(record)) {
+          return;
+        }
+      }
+    }
+    if (columns == null) {
+      checkHeaderRow(schema, -1);
+    }
   }
 
-  public static List<Map<String, String>> getDataInSheet(
-      Workbook workbook,
-      String sheetName,
-      Map<Integer, String> dataInfo,
-      int limit,
-      int offset) {
+  private static FormulaEvaluator createFormulaEvaluator(Sheet sheet) {
+    return sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
+  }
 
-    Sheet sheet = workbook.getSheet(sheetName);
-    if (sheet != null) {
-      return getDataInSheet(sheet, dataInfo, limit, offset);
+  private static void checkHeaderRow(SheetSchema schema, int rowNo) {
+    if (rowNo != schema.getHeaderRow()) {
+      throw new IllegalArgumentException(
+          "Missing header on line " + (schema.getHeaderRow() + 1));
     }
+  }
 
-    return new ArrayList<>();
+  /**
+   * Create a writer which streams rows into an xlsx workbook.
+   *
+   * <p>Only the last {@code rowAccessWindow} rows are kept in memory, older rows are flushed to
+   * compressed temporary files. When a sheet is full, the writer continues on a new sheet which
+   * starts with the same header.
+   *
+   * @param sheetName the name of the first sheet
+   * @param rowAccessWindow the number of rows kept in memory
+   * @param header the header row, written at the top of every sheet
+   * @return the writer, to be closed once the workbook is written
+   */
+  public static StreamingSheetWriter createStreamingWriter(
+      String sheetName, int rowAccessWindow, String... header) {
+    return new StreamingSheetWriter(sheetName, rowAccessWindow, header);
   }
 
-  public static List<Map<String, String>> getDataInSheet(
-      Sheet sheet, Map<Integer, String> dataInfo, int limit, int offset) {
+  /** Writes rows to an {@link SXSSFWorkbook} with a bounded number of rows in memory. */
+  public static class StreamingSheetWriter implements Closeable {
 
-    List<Map<String, String>> result = new ArrayList<>();
-    // if from = 0 to = 0 -> get all
-    int rowTotal = sheet.getPhysicalNumberOfRows();
-    if (offset < 0 || limit < 0 || rowTotal <= offset) {
-      return result;
-    } else {
-      for (int i = offset; i <= limit; i++) {
-        final int rowNo = i;
-        Map<String, String> record = new HashMap<>();
-        dataInfo.forEach((k, v) -> record.put("label", getDataInCell(sheet, rowNo, k)));
-        result.add(record);
+    private final SXSSFWorkbook workbook;
+
+    private final String sheetName;
+
+    private final String[] header;
+
+    private SXSSFSheet sheet;
+
+    private int rowNo;
+
+    private StreamingSheetWriter(String sheetName, int rowAccessWindow, String... header) {
+      this.workbook = new SXSSFWorkbook(rowAccessWindow);
+      this.workbook.setCompressTempFiles(true);
+      this.sheetName = sheetName;
+      this.header = header;
+      nextSheet();
+    }
+
+    /**
+     * Append a row. Numbers and booleans are written as such, other values as their string
+     * representation, and null values leave the cell empty.
+     *
+     * @param values the cell values, from the first column
+     */
+    public void writeRow(Object... values) {
+      if (rowNo == MAX_ROWS_PER_SHEET) {
+        nextSheet();
+      }
+      Row row = sheet.createRow(rowNo++);
+      for (int i = 0; i < values.length; i++) {
+        Object value = values[i];
+        if (value instanceof Number) {
+          row.createCell(i).setCellValue(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+          row.createCell(i).setCellValue((Boolean) value);
+        } else if (value != null) {
+          row.createCell(i).setCellValue(value.toString());
+        }
       }
     }
 
-    return result;
+    /**
+     * Write the workbook to the given stream. The stream is not closed.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the workbook could not be written
+     */
+    public void finish(OutputStream out) throws IOException {
+      workbook.write(out);
+    }
+
+    /** Delete the temporary files backing the workbook. */
+    @Override
+    public void close() throws IOException {
+      workbook.dispose();
+      workbook.close();
+    }
+
+    private void nextSheet() {
+      int sheetCount = workbook.getNumberOfSheets();
+      sheet =
+          workbook.createSheet(
+              sheetCount == 0 ? sheetName : sheetName + " (" + (sheetCount + 1) + ")");
+      rowNo = 0;
+      if (header.length > 0) {
+        writeRow((Object[]) header);
+      }
+    }
+  }
+
+  /**
+   * Read the data rows of an xlsx sheet into records of the given schema, with the POI event API.
+   *
+   * <p>No {@link Workbook} is built: the sheet XML is parsed with SAX and each row is pushed to the
+   * handler as soon as it is read, so the memory used does not depend on the number of rows. The
+   * columns are resolved once from the header row, cells outside the schema are ignored, and the
+   * others are formatted as Excel displays them and converted to their declared type. Empty rows
+   * are skipped.
+   *
+   * @param file the xlsx file
+   * @param sheetName the name of the sheet to read
+   * @param schema the columns to read
+   * @param handler receives the records, in sheet order
+   * @return false if the workbook has no sheet with that name
+   * @throws IOException if the file is not a readable xlsx file
+   * @throws IllegalArgumentException if the header row or a required column is missing
+   */
+  public static boolean readSheet(
+      Path file, String sheetName, SheetSchema schema, RecordHandler handler) throws IOException {
+    return readSheet(file, sheetName, schema, DEFAULT_SHARED_STRINGS_CACHE_SIZE, handler);
+  }
+
+  /**
+   * Read the data rows of an xlsx sheet into records of the given schema, like {@link
+   * #readSheet(Path, String, SheetSchema, RecordHandler)}.
+   *
+   * <p>The shared strings of the workbook are kept on disk by a {@link
+   * FileBackedSharedStringsTable}, with only the given number of strings in heap.
+   *
+   * @param file the xlsx file
+   * @param sheetName the name of the sheet to read
+   * @param schema the columns to read
+   * @param sharedStringsCacheSize the number of shared strings kept in heap
+   * @param handler receives the records, in sheet order
+   * @return false if the workbook has no sheet with that name
+   * @throws IOException if the file is not a readable xlsx file
+   * @throws IllegalArgumentException if the header row or a required column is missing
+   */
+  public static boolean readSheet(
+      Path file,
+      String sheetName,
+      SheetSchema schema,
+      int sharedStringsCacheSize,
+      RecordHandler handler)
+      throws IOException {
+    try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+      XSSFReader reader = new XSSFReader(pkg);
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+      while (sheets.hasNext()) {
+        try (InputStream sheet = sheets.next()) {
+          if (sheetName.equals(sheets.getSheetName())) {
+            RecordCollector collector = new RecordCollector(schema, handler);
+            try (FileBackedSharedStringsTable strings =
+                new FileBackedSharedStringsTable(pkg, sharedStringsCacheSize)) {
+              parseSheet(sheet, reader.getStylesTable(), strings, collector);
+            }
+            if (collector.columns == null) {
+              checkHeaderRow(schema, -1);
+            }
+            return true;
+          }
+        }
+      }
+      return false;
+    } catch (StopReadingException e) {
+      return true;
+    } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+      throw new IOException("Invalid xlsx file " + file.getFileName(), e);
+    }
+  }
+
+  private static void parseSheet(
+      InputStream sheet,
+      StylesTable styles,
+      ReadOnlySharedStringsTable strings,
+      SheetContentsHandler contentsHandler)
+      throws IOException, SAXException, ParserConfigurationException {
+    XMLReader parser = SAXHelper.newXMLReader();
+    parser.setContentHandler(
+        new XSSFSheetXMLHandler(styles, strings, contentsHandler, new DataFormatter(), false));
+    parser.parse(new InputSource(sheet));
+  }
+
+  /** Receives the records of a sheet read by {@code readSheet}. */
+  public interface RecordHandler {
+
+    /**
+     * Handle a data row.
+     *
+     * @param record the converted row; the record is reused for the next row and must not be kept
+     * @return false to stop reading the sheet
+     */
+    boolean handle(SheetRecord record);
+  }
+
+  /** Resolves the columns from the header row, then fills a reused record with each data row. */
+  private static class RecordCollector implements SheetContentsHandler {
+
+    private final SheetSchema schema;
+
+    private final RecordHandler handler;
+
+    private final SheetRecord record;
+
+    private final List<String> header = new ArrayList<>();
+
+    // schema column of each sheet column, -1 if not read; null until the header row is read
+    private int[] columns;
+
+    private int rowNo;
+
+    private boolean empty;
+
+    RecordCollector(SheetSchema schema, RecordHandler handler) {
+      this.schema = schema;
+      this.handler = handler;
+      this.record = new SheetRecord(schema);
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+      rowNo = rowNum;
+      empty = true;
+      if (columns != null) {
+        record.reset(rowNum);
+      }
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+      if (empty || rowNum < schema.getHeaderRow()) {
+        return;
+      }
+      if (columns == null) {
+        checkHeaderRow(schema, rowNum);
+        columns = toSheetColumns(schema.resolve(header.toArray(new String[0])));
+        return;
+      }
+      record.complete();
+      if (!handler.handle(record)) {
+        throw new StopReadingException();
+      }
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+      if (cellReference == null || formattedValue == null || formattedValue.isEmpty()) {
+        return;
+      }
+      int column = columnIndex(cellReference);
+      if (columns == null) {
+        if (rowNo == schema.getHeaderRow()) {
+          while (header.size() <= column) {
+            header.add(null);
+          }
+          header.set(column, formattedValue);
+        }
+        empty = false;
+      } else if (column < columns.length && columns[column] >= 0) {
+        record.set(columns[column], formattedValue);
+        empty = false;
+      }
+    }
+
+    @Override
+    public void headerFooter(String text, boolean isHeader, String tagName) {
+      // not needed
+    }
+
+    private static int[] toSheetColumns(int[] schemaToSheet) {
+      int[] sheetToSchema = new int[Arrays.stream(schemaToSheet).max().orElse(-1) + 1];
+      Arrays.fill(sheetToSchema, -1);
+      for (int i = 0; i < schemaToSheet.length; i++) {
+        if (schemaToSheet[i] >= 0) {
+          sheetToSchema[schemaToSheet[i]] = i;
+        }
+      }
+      return sheetToSchema;
+    }
+
+    private static int columnIndex(String cellReference) {
+      int column = 0;
+      for (int i = 0; i < cellReference.length(); i++) {
+        char c = cellReference.charAt(i);
+        if (c < 'A' || c > 'Z') {
+          break;
+        }
+        column = column * 26 + (c - 'A' + 1);
+      }
+      return column - 1;
+    }
+  }
+
+  /** Thrown from the SAX callbacks to stop reading a sheet. */
+  private static class StopReadingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    StopReadingException() {
+      super(null, null, false, false);
+    }
   }
 }
@@ -0,0 +1,305 @@
+package com.lebinh.skeleton.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.StaxHelper;
+
+/**
+ * The structure of an xlsx file: its sheets, in workbook order, with the first row of each.
+ *
+ * <p>It is read by {@link #read(Path)} straight from the zip entries with StAX: xl/workbook.xml
+ * and its relationships, then each sheet up to the end of its first row, and the shared strings up
+ * to the last one used by these rows. Structural checks therefore cost a few milliseconds and no
+ * memory, whatever the number of rows.
+ */
+public class WorkbookInfo {
+
+  private static final String WORKBOOK = "xl/workbook.xml";
+
+  private static final String WORKBOOK_RELATIONSHIPS = "xl/_rels/workbook.xml.rels";
+
+  private static final String SHARED_STRINGS = "xl/sharedStrings.xml";
+
+  private static final String RELATIONSHIPS_NAMESPACE =
+      "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = StaxHelper.newXMLInputFactory();
+
+  private final List<SheetInfo> sheets;
+
+  private WorkbookInfo(List<SheetInfo> sheets) {
+    this.sheets = Collections.unmodifiableList(sheets);
+  }
+
+  public List<SheetInfo> getSheets() {
+    return sheets;
+  }
+
+  public List<String> getSheetNames() {
+    return sheets.stream().map(SheetInfo::getName).collect(Collectors.toList());
+  }
+
+  /**
+   * @param name the name of a sheet
+   * @return the sheet with that name, if any
+   */
+  public Optional<SheetInfo> getSheet(String name) {
+    return sheets.stream().filter(sheet -> sheet.getName().equals(name)).findFirst();
+  }
+
+  /**
+   * Read the structure of an xlsx file.
+   *
+   * @param file the xlsx file
+   * @return the sheets of the workbook with their first row
+   * @throws IOException if the file is not a readable xlsx file, or one of its parts is malformed
+   */
+  public static WorkbookInfo read(Path file) throws IOException {
+    try (ZipFile zip = new ZipFile(file.toFile())) {
+      List<String[]> workbookSheets = readWorkbookSheets(zip);
+      Map<String, String> targets = readRelationshipTargets(zip);
+
+      List<SheetInfo> sheets = new ArrayList<>(workbookSheets.size());
+      Map<Integer, String> sharedStrings = new HashMap<>();
+      for (String[] workbookSheet : workbookSheets) {
+        String target = targets.get(workbookSheet[1]);
+        if (target == null) {
+          throw new IOException("Missing part of sheet " + workbookSheet[0]);
+        }
+        sheets.add(readFirstRow(zip, workbookSheet[0], target, sharedStrings));
+      }
+      resolveSharedStrings(zip, sharedStrings, sheets);
+      return new WorkbookInfo(sheets);
+    } catch (XMLStreamException | IllegalArgumentException e) {
+      // a malformed row number, cell reference or shared string index
+      throw new IOException("Invalid xlsx file " + file.getFileName(), e);
+    }
+  }
+
+  /** @return the name and relationship id of each sheet, in workbook order */
+  private static List<String[]> readWorkbookSheets(ZipFile zip)
+      throws IOException, XMLStreamException {
+    List<String[]> sheets = new ArrayList<>();
+    try (InputStream in = open(zip, WORKBOOK)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT && "sheet".equals(reader.getLocalName())) {
+            String name = reader.getAttributeValue(null, "name");
+            if (name == null) {
+              throw new IOException("Missing name of sheet " + (sheets.size() + 1));
+            }
+            sheets.add(
+                new String[] {name, reader.getAttributeValue(RELATIONSHIPS_NAMESPACE, "id")});
+          } else if (event == XMLStreamConstants.END_ELEMENT
+              && "sheets".equals(reader.getLocalName())) {
+            break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return sheets;
+  }
+
+  /** @return the zip entry name targeted by each relationship id of the workbook */
+  private static Map<String, String> readRelationshipTargets(ZipFile zip)
+      throws IOException, XMLStreamException {
+    Map<String, String> targets = new HashMap<>();
+    try (InputStream in = open(zip, WORKBOOK_RELATIONSHIPS)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT
+              && "Relationship".equals(reader.getLocalName())) {
+            String target = reader.getAttributeValue(null, "Target");
+            if (target == null) {
+              // not a part, the sheet of this id is reported as missing
+              continue;
+            }
+            targets.put(
+                reader.getAttributeValue(null, "Id"),
+                target.startsWith("/") ? target.substring(1) : "xl/" + target);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return targets;
+  }
+
+  /**
+   * Read the cells of the first row of a sheet. Shared string cells are left null and their index
+   * is added to the shared strings to resolve.
+   */
+  private static SheetInfo readFirstRow(
+      ZipFile zip, String name, String entryName, Map<Integer, String> sharedStrings)
+      throws IOException, XMLStreamException {
+    SheetInfo sheet = new SheetInfo(name);
+    try (InputStream in = open(zip, entryName)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        int column = -1;
+        String type = null;
+        boolean inRow = false;
+        StringBuilder value = new StringBuilder();
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("row".equals(element)) {
+              String rowNo = reader.getAttributeValue(null, "r");
+              sheet.firstRowNo = rowNo == null ? 0 : Integer.parseInt(rowNo) - 1;
+              inRow = true;
+            } else if (inRow && "c".equals(element)) {
+              String reference = reader.getAttributeValue(null, "r");
+              column = reference == null ? column + 1 : new CellReference(reference).getCol();
+              type = reader.getAttributeValue(null, "t");
+              value.setLength(0);
+            } else if (inRow && ("v".equals(element) || "t".equals(element))) {
+              value.append(reader.getElementText());
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            String element = reader.getLocalName();
+            if (inRow && "c".equals(element)) {
+              sheet.setCell(column, type, value.toString(), sharedStrings);
+            } else if ("row".equals(element) || "sheetData".equals(element)) {
+              break;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return sheet;
+  }
+
+  /** Read the shared strings up to the last index used and set them in the cells. */
+  private static void resolveSharedStrings(
+      ZipFile zip, Map<Integer, String> sharedStrings, List<SheetInfo> sheets)
+      throws IOException, XMLStreamException {
+    if (sharedStrings.isEmpty()) {
+      return;
+    }
+    int lastIndex = Collections.max(sharedStrings.keySet());
+    try (InputStream in = open(zip, SHARED_STRINGS)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        int index = -1;
+        StringBuilder value = new StringBuilder();
+        while (reader.hasNext() && index <= lastIndex) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            if ("si".equals(reader.getLocalName())) {
+              index++;
+              value.setLength(0);
+            } else if ("t".equals(reader.getLocalName())) {
+              value.append(reader.getElementText());
+            } else if ("rPh".equals(reader.getLocalName())) {
+              skipElement(reader);
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT
+              && "si".equals(reader.getLocalName())
+              && sharedStrings.containsKey(index)) {
+            sharedStrings.put(index, value.toString());
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    for (SheetInfo sheet : sheets) {
+      sheet.resolveSharedStrings(sharedStrings);
+    }
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    for (int depth = 1; depth > 0; ) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static InputStream open(ZipFile zip, String entryName) throws IOException {
+    ZipEntry entry = zip.getEntry(entryName);
+    if (entry == null) {
+      throw new IOException("Missing part " + entryName);
+    }
+    return zip.getInputStream(entry);
+  }
+
+  /** A sheet of the workbook, with the cells of its first row. */
+  public static class SheetInfo {
+
+    private final String name;
+
+    private int firstRowNo = -1;
+
+    private final List<String> firstRow = new ArrayList<>();
+
+    // index in the shared strings of the cells of the first row which reference one
+    private final Map<Integer, Integer> sharedStringCells = new HashMap<>();
+
+    SheetInfo(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** @return the 0-based number of the first row, -1 if the sheet is empty */
+    public int getFirstRowNo() {
+      return firstRowNo;
+    }
+
+    /** @return the raw values of the cells of the first row, by column, null for empty cells */
+    public String[] getFirstRow() {
+      return firstRow.toArray(new String[0]);
+    }
+
+    private void setCell(
+        int column, String type, String value, Map<Integer, String> sharedStrings) {
+      if (column < 0) {
+        throw new IllegalArgumentException("Invalid cell reference in sheet " + name);
+      }
+      while (firstRow.size() <= column) {
+        firstRow.add(null);
+      }
+      if ("s".equals(type)) {
+        int index = Integer.parseInt(value.trim());
+        sharedStringCells.put(column, index);
+        sharedStrings.put(index, null);
+      } else if (!value.isEmpty()) {
+        firstRow.set(column, value);
+      }
+    }
+
+    private void resolveSharedStrings(Map<Integer, String> sharedStrings) {
+      sharedStringCells.forEach((column, index) -> firstRow.set(column, sharedStrings.get(index)));
+    }
+  }
+}
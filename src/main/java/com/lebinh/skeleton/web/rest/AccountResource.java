@@ -17,7 +17,6 @@ import org.springframework.web.bind.annotation.RestController;
 import com.lebinh.skeleton.entity.User;
 import com.lebinh.skeleton.repository.UserRepository;
 import com.lebinh.skeleton.security.SecurityUtils;
-import com.lebinh.skeleton.service.MailService;
 import com.lebinh.skeleton.service.UserService;
 import com.lebinh.skeleton.service.dto.UserDto;
 import com.lebinh.skeleton.web.rest.vm.KeyAndPasswordVm;
@@ -34,14 +33,10 @@ public class AccountResource {
 
   private final UserService userService;
 
-  private final MailService mailService;
-
-  public AccountResource(
-      UserRepository userRepository, UserService userService, MailService mailService) {
+  public AccountResource(UserRepository userRepository, UserService userService) {
 
     this.userRepository = userRepository;
     this.userService = userService;
-    this.mailService = mailService;
   }
 
   /**
@@ -58,8 +53,7 @@ public class AccountResource {
     if (!checkPasswordLength(managedUserVm.getPassword())) {}
     userRepository.findOneByLogin(managedUserVm.getLogin().toLowerCase()).ifPresent(u -> {});
     userRepository.findOneByEmailIgnoreCase(managedUserVm.getEmail()).ifPresent(u -> {});
-    User user = userService.registerUser(managedUserVm, managedUserVm.getPassword());
-    mailService.sendActivationEmail(user);
+    userService.registerUser(managedUserVm, managedUserVm.getPassword());
   }
 
   /**
@@ -143,8 +137,7 @@ public class AccountResource {
    */
   @PostMapping(path = "/account/reset-password/init")
   public void requestPasswordReset(@RequestBody String mail) {
-    mailService.sendPasswordResetMail(
-        userService.requestPasswordReset(mail).orElseThrow(RuntimeException::new));
+    userService.requestPasswordReset(mail).orElseThrow(RuntimeException::new);
   }
 
   /**
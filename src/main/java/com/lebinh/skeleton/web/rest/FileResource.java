@@ -0,0 +1,92 @@
+package com.lebinh.skeleton.web.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.service.FileStoreService;
+import com.lebinh.skeleton.utils.FileUtil;
+import com.lebinh.skeleton.web.rest.vm.StoredFileVm;
+
+/** REST controller for the content-addressed file store, used for avatars and attachments. */
+@RestController
+@RequestMapping("/api")
+public class FileResource {
+
+  private final Logger log = LoggerFactory.getLogger(FileResource.class);
+
+  private final FileStoreService fileStoreService;
+
+  public FileResource(FileStoreService fileStoreService) {
+    this.fileStoreService = fileStoreService;
+  }
+
+  /**
+   * POST /files : store a file.
+   *
+   * <p>The file is identified by the SHA-256 of its content, so uploading the same content twice
+   * returns the same file. Only administrators may store files, as the store has no quota.
+   *
+   * @param file the file to store
+   * @return the ResponseEntity with status 201 (Created) and with body the stored file
+   * @throws IOException if the file could not be stored
+   * @throws URISyntaxException if the Location URI syntax is incorrect
+   */
+  @PostMapping("/files")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<StoredFileVm> uploadFile(@RequestParam("file") MultipartFile file)
+      throws IOException, URISyntaxException {
+    log.debug("REST request to store file : {}", file.getOriginalFilename());
+    String hash;
+    try (InputStream in = file.getInputStream()) {
+      hash = fileStoreService.store(in);
+    }
+    String url = "/api/files/" + hash;
+    return ResponseEntity.created(new URI(url))
+        .header(HttpHeaders.ETAG, "\"" + hash + "\"")
+        .body(new StoredFileVm(hash, url));
+  }
+
+  /**
+   * GET /files/:hash : download a stored file.
+   *
+   * <p>Supports If-None-Match against the strong ETag (the hash) and single byte Range requests.
+   *
+   * @param hash the SHA-256 of the file
+   * @param request the HTTP request
+   * @param response the HTTP response, 200 (OK), 206 (Partial Content), 304 (Not Modified), 404
+   *     (Not Found) or 416 (Range Not Satisfiable)
+   * @throws IOException if the file could not be sent
+   */
+  @RequestMapping(
+      value = "/files/{hash}",
+      method = {RequestMethod.GET, RequestMethod.HEAD})
+  public void getFile(
+      @PathVariable String hash, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    log.debug("REST request to get file : {}", hash);
+    Optional<Path> file = fileStoreService.find(hash);
+    if (!file.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    FileUtil.serve(file.get(), hash, request, response);
+  }
+}
@@ -0,0 +1,131 @@
+package com.lebinh.skeleton.web.rest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.security.SecurityUtils;
+import com.lebinh.skeleton.service.FileStoreService;
+import com.lebinh.skeleton.service.ImportJobService;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
+import com.lebinh.skeleton.service.dto.ImportResultDto;
+import com.lebinh.skeleton.utils.FileUtil;
+import com.lebinh.skeleton.utils.ResponseUtil;
+
+/**
+ * REST controller for following the import jobs created by /api/upload. A job is only visible to
+ * the user who created it and to the administrators.
+ */
+@RestController
+@RequestMapping("/api")
+public class ImportJobResource {
+
+  private final Logger log = LoggerFactory.getLogger(ImportJobResource.class);
+
+  private final ImportJobService importJobService;
+
+  private final FileStoreService fileStoreService;
+
+  public ImportJobResource(ImportJobService importJobService, FileStoreService fileStoreService) {
+    this.importJobService = importJobService;
+    this.fileStoreService = fileStoreService;
+  }
+
+  /**
+   * GET /import-jobs/:id : get the state and progress of an import job.
+   *
+   * @param id the id of the job
+   * @return the ResponseEntity with status 200 (OK) and with body the job, or with status 404 (Not
+   *     Found)
+   */
+  @GetMapping("/import-jobs/{id}")
+  public ResponseEntity<ImportJobDto> getImportJob(@PathVariable Long id) {
+    log.debug("REST request to get ImportJob : {}", id);
+    return ResponseUtil.wrapOrNotFound(findVisible(id));
+  }
+
+  /**
+   * GET /import-jobs/:id/events : follow the progress of an import job with Server-Sent Events.
+   *
+   * @param id the id of the job
+   * @return the ResponseEntity with status 200 (OK) and the event stream, or with status 404 (Not
+   *     Found)
+   */
+  @GetMapping(value = "/import-jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> getImportJobEvents(@PathVariable Long id) {
+    log.debug("REST request to follow ImportJob : {}", id);
+    return findVisible(id)
+        .flatMap(job -> importJobService.subscribe(id))
+        .map(ResponseEntity::ok)
+        .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+  }
+
+  /**
+   * GET /import-jobs/:id/results/:index/errors : download the failed rows of a file of an import
+   * job, as an xlsx workbook with their original cells, line and error.
+   *
+   * @param id the id of the job
+   * @param index the 0-based index of the file in the results of the job
+   * @param request the HTTP request
+   * @param response the HTTP response, 200 (OK), or 404 (Not Found) if the job, the file or its
+   *     failed rows do not exist
+   * @throws IOException if the workbook could not be sent
+   */
+  @GetMapping("/import-jobs/{id}/results/{index}/errors")
+  public void getImportJobErrors(
+      @PathVariable Long id,
+      @PathVariable int index,
+      HttpServletRequest request,
+      HttpServletResponse response)
+      throws IOException {
+    log.debug("REST request to get the failed rows of file {} of ImportJob : {}", index, id);
+    Optional<ImportResultDto> result =
+        findVisible(id)
+            .map(ImportJobDto::getResults)
+            .filter(results -> index >= 0 && index < results.size())
+            .map(results -> results.get(index));
+    Optional<Path> file =
+        result.map(ImportResultDto::getErrorFile).flatMap(fileStoreService::findPrivate);
+    if (!file.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    // encoded as RFC 5987, as the name of an uploaded file may contain any character
+    String fileName = StringUtils.substringBeforeLast(result.get().getFileName(), ".");
+    response.setHeader(
+        HttpHeaders.CONTENT_DISPOSITION,
+        ContentDisposition.builder("attachment")
+            .filename(fileName + "-errors.xlsx", StandardCharsets.UTF_8)
+            .build()
+            .toString());
+    FileUtil.serve(file.get(), result.get().getErrorFile(), request, response);
+  }
+
+  /** @return the job, if it exists and the current user created it or is an administrator */
+  private Optional<ImportJobDto> findVisible(Long id) {
+    return importJobService
+        .find(id)
+        .filter(
+            job ->
+                SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)
+                    || SecurityUtils.getCurrentUserLogin()
+                        .filter(login -> login.equals(job.getUsername()))
+                        .isPresent());
+  }
+}
@@ -1,16 +1,23 @@
 package com.lebinh.skeleton.web.rest;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import com.lebinh.skeleton.constant.ImportConstant;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.security.SecurityUtils;
+import com.lebinh.skeleton.service.ImportJobService;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
 
 @RestController
 @RequestMapping("/api")
@@ -18,26 +25,45 @@ public class InterfaceController {
 
   private final Logger log = LoggerFactory.getLogger(InterfaceController.class);
 
+  private final ImportJobService importJobService;
+
+  public InterfaceController(ImportJobService importJobService) {
+    this.importJobService = importJobService;
+  }
+
+  /**
+   * POST /upload : Import users from xlsx workbooks or CSV files, in the background.
+   *
+   * <p>Each workbook must have a "users" sheet with the header {@link ImportConstant#DATA_COLUMNS}
+   * on its first row. The files are imported by an import job, whose progress is available at
+   * /api/import-jobs/:id. Files already imported by the user are not imported again, and rows
+   * which did not change since their last import are skipped, unless forced. The import creates
+   * and updates users, so only an administrator can upload, and the job belongs to the current
+   * user.
+   *
+   * @param files the workbooks to import
+   * @param force true to import all the files and rows, even if they were already imported
+   * @return the ResponseEntity with status 202 (Accepted) and with body the import job, with
+   *     status 200 (OK) and with body the earlier job which imported the same files, or with
+   *     status 503 (Service Unavailable) if too many imports are in progress
+   * @throws URISyntaxException if the Location URI syntax is incorrect
+   * @throws IOException if an upload could not be spooled
+   */
   @RequestMapping(
       value = "/upload",
       method = RequestMethod.POST,
       produces = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<String> createAttachment(
-      @RequestParam(value = "username") String username,
-      @RequestParam(value = "files") MultipartFile[] files)
-      throws URISyntaxException {
-
-    // 1. check file
-    // check extension: xlsx
-    // check content: 
-    //  - 2 sheet
-    //  - data sheet project name
-    //  - check number of columns 
-    // 2. read file
-    // 3. insert or update data
-
-    
-
-    return ResponseEntity.created(new URI("/api/upload")).body("success");
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<ImportJobDto> createAttachment(
+      @RequestParam(value = "files") MultipartFile[] files,
+      @RequestParam(value = "force", defaultValue = "false") boolean force)
+      throws URISyntaxException, IOException {
+    String username =
+        SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new RuntimeException());
+    log.debug("REST request to import {} files uploaded by {}", files.length, username);
+    ImportJobDto job = importJobService.submit(username, files, force);
+    return (job.isDuplicate() ? ResponseEntity.ok() : ResponseEntity.accepted())
+        .location(new URI("/api/import-jobs/" + job.getId()))
+        .body(job);
   }
 }
@@ -0,0 +1,97 @@
+package com.lebinh.skeleton.web.rest;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import javax.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.service.BulkMailService;
+import com.lebinh.skeleton.service.MailDispatcher;
+import com.lebinh.skeleton.service.dto.BulkMailDto;
+import com.lebinh.skeleton.service.dto.MailStatsDto;
+import com.lebinh.skeleton.utils.ResponseUtil;
+
+/** REST controller for following the mail outbox and sending bulk mails. */
+@RestController
+@RequestMapping("/api")
+public class MailResource {
+
+  private final Logger log = LoggerFactory.getLogger(MailResource.class);
+
+  private final MailDispatcher mailDispatcher;
+
+  private final BulkMailService bulkMailService;
+
+  public MailResource(MailDispatcher mailDispatcher, BulkMailService bulkMailService) {
+    this.mailDispatcher = mailDispatcher;
+    this.bulkMailService = bulkMailService;
+  }
+
+  /**
+   * GET /mail/stats : get the mails waiting in the outbox and the tasks of the mail executor.
+   *
+   * @return the ResponseEntity with status 200 (OK) and with body the statistics
+   */
+  @GetMapping("/mail/stats")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<MailStatsDto> getMailStats() {
+    log.debug("REST request to get the mail statistics");
+    return ResponseEntity.ok(mailDispatcher.getStats());
+  }
+
+  /**
+   * POST /mail/bulk : send a mail to all the activated users, at the bulk mail rate.
+   *
+   * @param bulkMailDto the subject and the content of the mail
+   * @return the ResponseEntity with status 202 (Accepted) and with body the bulk mail, or with
+   *     status 400 (Bad Request) if the subject or the content is missing
+   * @throws URISyntaxException if the Location URI syntax is incorrect
+   */
+  @PostMapping("/mail/bulk")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<BulkMailDto> createBulkMail(@Valid @RequestBody BulkMailDto bulkMailDto)
+      throws URISyntaxException {
+    log.debug("REST request to send a bulk mail : {}", bulkMailDto);
+    BulkMailDto bulkMail = bulkMailService.create(bulkMailDto);
+    return ResponseEntity.accepted()
+        .location(new URI("/api/mail/bulk/" + bulkMail.getId()))
+        .body(bulkMail);
+  }
+
+  /**
+   * GET /mail/bulk/:id : get a bulk mail and its progress.
+   *
+   * @param id the id of the bulk mail
+   * @return the ResponseEntity with status 200 (OK) and with body the bulk mail, or with status
+   *     404 (Not Found)
+   */
+  @GetMapping("/mail/bulk/{id}")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<BulkMailDto> getBulkMail(@PathVariable Long id) {
+    log.debug("REST request to get BulkMail : {}", id);
+    return ResponseUtil.wrapOrNotFound(bulkMailService.find(id));
+  }
+
+  /**
+   * POST /mail/bulk/:id/cancel : stop writing the mails of a bulk mail to the outbox.
+   *
+   * @param id the id of the bulk mail
+   * @return the ResponseEntity with status 200 (OK) and with body the bulk mail, or with status
+   *     404 (Not Found)
+   */
+  @PostMapping("/mail/bulk/{id}/cancel")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<BulkMailDto> cancelBulkMail(@PathVariable Long id) {
+    log.debug("REST request to cancel BulkMail : {}", id);
+    return ResponseUtil.wrapOrNotFound(bulkMailService.cancel(id));
+  }
+}
@@ -0,0 +1,148 @@
+package com.lebinh.skeleton.web.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.security.SecurityUtils;
+import com.lebinh.skeleton.service.UploadSessionService;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
+import com.lebinh.skeleton.service.dto.UploadSessionDto;
+import com.lebinh.skeleton.utils.ResponseUtil;
+
+/**
+ * REST controller for uploading large files in chunks, which can be resumed after an interruption.
+ * A committed file is imported like a file posted to /api/upload. A session is only visible to the
+ * user who opened it.
+ */
+@RestController
+@RequestMapping("/api")
+public class UploadSessionResource {
+
+  /** Header of the hex SHA-256 of a chunk, verified when it is present. */
+  public static final String CHUNK_SHA256_HEADER = "X-Chunk-Sha256";
+
+  private final Logger log = LoggerFactory.getLogger(UploadSessionResource.class);
+
+  private final UploadSessionService uploadSessionService;
+
+  public UploadSessionResource(UploadSessionService uploadSessionService) {
+    this.uploadSessionService = uploadSessionService;
+  }
+
+  /**
+   * POST /upload-sessions : open an upload session for a file, uploaded by the current user.
+   *
+   * @param fileName the name of the file, an xlsx workbook or a CSV file
+   * @param size the size of the file, in bytes
+   * @return the ResponseEntity with status 201 (Created) and with body the session, or with status
+   *     400 (Bad Request) if the size is not allowed
+   * @throws URISyntaxException if the Location URI syntax is incorrect
+   * @throws IOException if the file could not be allocated
+   */
+  @PostMapping("/upload-sessions")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<UploadSessionDto> createUploadSession(
+      @RequestParam("fileName") String fileName, @RequestParam("size") long size)
+      throws URISyntaxException, IOException {
+    String username = currentUserLogin();
+    log.debug("REST request to open an upload session of {} for {}", fileName, username);
+    UploadSessionDto session = uploadSessionService.create(username, fileName, size);
+    return ResponseEntity.created(new URI("/api/upload-sessions/" + session.getId()))
+        .body(session);
+  }
+
+  /**
+   * GET /upload-sessions/:id : get an upload session and the ranges received so far.
+   *
+   * @param id the id of the session
+   * @return the ResponseEntity with status 200 (OK) and with body the session, or with status 404
+   *     (Not Found)
+   */
+  @GetMapping("/upload-sessions/{id}")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<UploadSessionDto> getUploadSession(@PathVariable Long id) {
+    log.debug("REST request to get UploadSession : {}", id);
+    return ResponseUtil.wrapOrNotFound(uploadSessionService.find(id, currentUserLogin()));
+  }
+
+  /**
+   * PUT /upload-sessions/:id/chunks : write a chunk of the file, sent as the raw request body.
+   *
+   * @param id the id of the session
+   * @param offset the offset of the chunk in the file
+   * @param length the length of the chunk, from the Content-Length header
+   * @param sha256 the hex SHA-256 of the chunk, from the X-Chunk-Sha256 header, if any
+   * @param request the HTTP request
+   * @return the ResponseEntity with status 200 (OK) and with body the session, with status 400 (Bad
+   *     Request) if the chunk is out of the file, its checksum does not match or the session is
+   *     committed, or with status 404 (Not Found)
+   * @throws IOException if the chunk could not be written
+   */
+  @PutMapping("/upload-sessions/{id}/chunks")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<UploadSessionDto> putUploadChunk(
+      @PathVariable Long id,
+      @RequestParam("offset") long offset,
+      @RequestHeader(HttpHeaders.CONTENT_LENGTH) long length,
+      @RequestHeader(value = CHUNK_SHA256_HEADER, required = false) String sha256,
+      HttpServletRequest request)
+      throws IOException {
+    log.debug("REST request to write {} bytes at {} of UploadSession : {}", length, offset, id);
+    String username = currentUserLogin();
+    Optional<UploadSessionDto> session;
+    try (InputStream in = request.getInputStream()) {
+      session = uploadSessionService.writeChunk(id, username, offset, length, sha256, in);
+    }
+    return ResponseUtil.wrapOrNotFound(session);
+  }
+
+  /**
+   * POST /upload-sessions/:id/commit : import the file of an upload session, once all its bytes
+   * were received.
+   *
+   * @param id the id of the session
+   * @param force true to import the file and all its rows even if they were already imported
+   * @return the ResponseEntity with status 202 (Accepted) and with body the import job, with
+   *     status 200 (OK) and with body the job of an earlier commit or import of the same file, with
+   *     status 400 (Bad Request) if bytes are missing or the session failed, with status 404 (Not
+   *     Found), or with status 503 (Service Unavailable) if too many imports are in progress, which
+   *     fails the session
+   * @throws URISyntaxException if the Location URI syntax is incorrect
+   * @throws IOException if the file could not be read
+   */
+  @PostMapping("/upload-sessions/{id}/commit")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public ResponseEntity<ImportJobDto> commitUploadSession(
+      @PathVariable Long id, @RequestParam(value = "force", defaultValue = "false") boolean force)
+      throws URISyntaxException, IOException {
+    log.debug("REST request to commit UploadSession : {}", id);
+    Optional<ImportJobDto> job = uploadSessionService.commit(id, currentUserLogin(), force);
+    if (!job.isPresent()) {
+      return ResponseEntity.notFound().build();
+    }
+    return (job.get().isDuplicate() ? ResponseEntity.ok() : ResponseEntity.accepted())
+        .location(new URI("/api/import-jobs/" + job.get().getId()))
+        .body(job.get());
+  }
+
+  private static String currentUserLogin() {
+    return SecurityUtils.getCurrentUserLogin().orElseThrow(() -> new RuntimeException());
+  }
+}
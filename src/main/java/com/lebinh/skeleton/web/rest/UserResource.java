@@ -1,9 +1,11 @@
 package com.lebinh.skeleton.web.rest;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Optional;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,12 +22,14 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.lebinh.skeleton.constant.CommonConstant;
 import com.lebinh.skeleton.entity.User;
 import com.lebinh.skeleton.repository.UserRepository;
 import com.lebinh.skeleton.security.AuthoritiesConstants;
-import com.lebinh.skeleton.service.MailService;
+import com.lebinh.skeleton.service.UserExportService;
+import com.lebinh.skeleton.service.UserSearchService;
 import com.lebinh.skeleton.service.UserService;
 import com.lebinh.skeleton.service.dto.UserDto;
 import com.lebinh.skeleton.utils.HeaderUtil;
@@ -67,14 +71,20 @@ public class UserResource {
 
   private final UserService userService;
 
-  private final MailService mailService;
+  private final UserExportService userExportService;
+
+  private final UserSearchService userSearchService;
 
   public UserResource(
-      UserRepository userRepository, UserService userService, MailService mailService) {
+      UserRepository userRepository,
+      UserService userService,
+      UserExportService userExportService,
+      UserSearchService userSearchService) {
 
     this.userRepository = userRepository;
     this.userService = userService;
-    this.mailService = mailService;
+    this.userExportService = userExportService;
+    this.userSearchService = userSearchService;
   }
 
   /**
@@ -100,7 +110,6 @@ public class UserResource {
     } else if (userRepository.findOneByEmailIgnoreCase(userDto.getEmail()).isPresent()) {
     } else {
       User newUser = userService.createUser(userDto);
-      mailService.sendCreationEmail(newUser);
       return ResponseEntity.created(new URI("/api/users/" + newUser.getLogin()))
           .headers(
               HeaderUtil.createAlert(
@@ -147,6 +156,48 @@ public class UserResource {
     return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
   }
 
+  /**
+   * GET /users/search : find users by prefix of their login, email, first name or last name.
+   *
+   * @param query the prefix to search, case insensitive
+   * @param size the maximum number of users to return
+   * @return the ResponseEntity with status 200 (OK) and with body the matching users
+   */
+  @GetMapping("/users/search")
+  public ResponseEntity<List<UserDto>> searchUsers(
+      @RequestParam(value = "q") String query,
+      @RequestParam(value = "size", defaultValue = "10") int size) {
+    log.debug("REST request to search Users for : {}", query);
+    return ResponseEntity.ok(userSearchService.search(query, size));
+  }
+
+  /**
+   * GET /users/export : stream all users.
+   *
+   * <p>The users are written to the response while they are read from the database, so the whole
+   * directory can be exported without paging through GET /users.
+   *
+   * @param format the output format, CSV, NDJSON or XLSX
+   * @param response the HTTP response to write the users to
+   * @throws IOException if the response could not be written
+   */
+  @GetMapping("/users/export")
+  @Secured(AuthoritiesConstants.ADMIN)
+  public void exportUsers(
+      @RequestParam(value = "format", defaultValue = "CSV") UserExportService.Format format,
+      HttpServletResponse response)
+      throws IOException {
+    log.debug("REST request to export Users as {}", format);
+    response.setContentType(format.getContentType());
+    if (format != UserExportService.Format.XLSX) {
+      response.setCharacterEncoding("UTF-8");
+    }
+    response.setHeader(
+        HttpHeaders.CONTENT_DISPOSITION,
+        "attachment; filename=\"users." + format.getExtension() + "\"");
+    userExportService.exportUsers(format, response.getOutputStream());
+  }
+
   /** @return a string list of the all of the roles */
   @GetMapping("/users/authorities")
   @Secured(AuthoritiesConstants.ADMIN)
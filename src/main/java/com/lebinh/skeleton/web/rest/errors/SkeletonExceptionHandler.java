@@ -4,6 +4,8 @@ import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CONFLICT;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.http.HttpStatus.UNSUPPORTED_MEDIA_TYPE;
 import javax.servlet.http.HttpServletRequest;
 import org.hibernate.exception.ConstraintViolationException;
@@ -22,6 +24,10 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import com.lebinh.skeleton.service.ImportQueueFullException;
+import com.lebinh.skeleton.service.InvalidUploadException;
+import com.lebinh.skeleton.service.UploadCapacityExceededException;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
@@ -174,6 +180,60 @@ public class SkeletonExceptionHandler {
     return buildResponseEntity(new ApiError(INTERNAL_SERVER_ERROR, req.getRequestURI(), ex));
   }
 
+  /**
+   * Handle MaxUploadSizeExceededException. Triggered by the container when a multipart request is
+   * larger than spring.servlet.multipart.max-request-size or max-file-size.
+   *
+   * @param ex the MaxUploadSizeExceededException
+   * @return the ApiError object
+   */
+  @ExceptionHandler(MaxUploadSizeExceededException.class)
+  protected ResponseEntity<Object> handleMaxUploadSizeExceeded(
+      MaxUploadSizeExceededException ex, HttpServletRequest req) {
+    String error = "Upload too large";
+    return buildResponseEntity(new ApiError(PAYLOAD_TOO_LARGE, error, req.getRequestURI(), ex));
+  }
+
+  /**
+   * Handle UploadCapacityExceededException. Triggered when the spooled uploads use all the space
+   * allowed to them.
+   *
+   * @param ex the UploadCapacityExceededException
+   * @return the ApiError object
+   */
+  @ExceptionHandler(UploadCapacityExceededException.class)
+  protected ResponseEntity<Object> handleUploadCapacityExceeded(
+      UploadCapacityExceededException ex, HttpServletRequest req) {
+    String error = "Upload capacity exceeded";
+    return buildResponseEntity(new ApiError(SERVICE_UNAVAILABLE, error, req.getRequestURI(), ex));
+  }
+
+  /**
+   * Handle ImportQueueFullException. Triggered when the queue of the import jobs is full.
+   *
+   * @param ex the ImportQueueFullException
+   * @return the ApiError object
+   */
+  @ExceptionHandler(ImportQueueFullException.class)
+  protected ResponseEntity<Object> handleImportQueueFull(
+      ImportQueueFullException ex, HttpServletRequest req) {
+    return buildResponseEntity(
+        new ApiError(SERVICE_UNAVAILABLE, ex.getMessage(), req.getRequestURI(), ex));
+  }
+
+  /**
+   * Handle InvalidUploadException. Triggered when a chunked upload is out of its file, does not
+   * match its checksum, or is committed with missing chunks.
+   *
+   * @param ex the InvalidUploadException
+   * @return the ApiError object
+   */
+  @ExceptionHandler(InvalidUploadException.class)
+  protected ResponseEntity<Object> handleInvalidUpload(
+      InvalidUploadException ex, HttpServletRequest req) {
+    return buildResponseEntity(new ApiError(BAD_REQUEST, ex.getMessage(), req.getRequestURI(), ex));
+  }
+
   /**
    * Handle Exception, handle generic Exception.class
    *
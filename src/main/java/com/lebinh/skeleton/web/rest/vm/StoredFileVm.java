@@ -0,0 +1,44 @@
+package com.lebinh.skeleton.web.rest.vm;
+
+/**
+ * View Model object for a file of the file store.
+ */
+public class StoredFileVm {
+
+    private String hash;
+
+    private String url;
+
+    public StoredFileVm(String hash, String url) {
+        this.hash = hash;
+        this.url = url;
+    }
+
+    public StoredFileVm() {
+        // Empty public constructor used by Jackson.
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredFileVm{" +
+            "hash='" + hash + '\'' +
+            ", url='" + url + '\'' +
+            '}';
+    }
+}
@@ -0,0 +1,70 @@
+--liquibase formatted sql
+--changeset lebinh:5
+create table sys_user_search_term (
+    id bigint auto_increment primary key,
+    user_id bigint not null,
+    term varchar(100) not null,
+    constraint fk_user_search_term_user_id foreign key (user_id) references sys_user (id)
+);
+create index idx_user_search_term on sys_user_search_term (term, user_id);
+create index idx_user_search_term_user_id on sys_user_search_term (user_id);
+--rollback drop table sys_user_search_term;
+
+--changeset lebinh:6
+-- the same terms as UserSearchService.termsOf: the login, the email, the names, the full name and
+-- each word of the names, lower-cased with their white space normalized and cut to 100 characters
+create table tmp_user_search_name (
+    user_id bigint not null primary key,
+    first_name varchar(50),
+    last_name varchar(50)
+);
+-- a name holds at most 25 words of one character
+create table tmp_user_search_word_no (n int not null primary key);
+insert into tmp_user_search_word_no (n)
+values (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15), (16),
+       (17), (18), (19), (20), (21), (22), (23), (24), (25);
+insert into tmp_user_search_name (user_id, first_name, last_name)
+select id,
+       lower(replace(replace(replace(first_name, char(9), ' '), char(10), ' '), char(13), ' ')),
+       lower(replace(replace(replace(last_name, char(9), ' '), char(10), ' '), char(13), ' '))
+  from sys_user;
+-- each pass halves the runs of spaces, six passes collapse the runs of a 50 characters name
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name
+   set first_name = replace(first_name, '  ', ' '), last_name = replace(last_name, '  ', ' ');
+update tmp_user_search_name set first_name = trim(first_name), last_name = trim(last_name);
+insert into sys_user_search_term (user_id, term)
+select id, left(lower(trim(login)), 100) from sys_user where trim(login) <> ''
+union
+select id, left(lower(trim(email)), 100) from sys_user where trim(email) <> ''
+union
+select user_id, first_name from tmp_user_search_name where first_name <> ''
+union
+select user_id, last_name from tmp_user_search_name where last_name <> ''
+union
+select user_id, left(trim(concat_ws(' ', first_name, last_name)), 100)
+  from tmp_user_search_name where first_name <> '' or last_name <> ''
+union
+select t.user_id, substring_index(substring_index(t.first_name, ' ', w.n), ' ', -1)
+  from tmp_user_search_name t
+  join tmp_user_search_word_no w
+    on w.n <= 1 + char_length(t.first_name) - char_length(replace(t.first_name, ' ', ''))
+ where t.first_name <> ''
+union
+select t.user_id, substring_index(substring_index(t.last_name, ' ', w.n), ' ', -1)
+  from tmp_user_search_name t
+  join tmp_user_search_word_no w
+    on w.n <= 1 + char_length(t.last_name) - char_length(replace(t.last_name, ' ', ''))
+ where t.last_name <> '';
+drop table tmp_user_search_name;
+drop table tmp_user_search_word_no;
+--rollback delete from sys_user_search_term;
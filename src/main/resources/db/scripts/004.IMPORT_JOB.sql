@@ -0,0 +1,21 @@
+--liquibase formatted sql
+--changeset lebinh:7
+create table sys_import_job (
+    id bigint auto_increment primary key,
+    username varchar(50) not null,
+    status varchar(20) not null,
+    file_count int not null,
+    rows_read bigint not null,
+    rows_written bigint not null,
+    rows_failed bigint not null,
+    message varchar(255),
+    result longtext,
+    started_date timestamp null,
+    finished_date timestamp null,
+    created_by varchar(50) not null,
+    created_date timestamp not null,
+    last_modified_by varchar(50),
+    last_modified_date timestamp null
+);
+create index idx_import_job_username on sys_import_job (username, created_date);
+--rollback drop table sys_import_job;
@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--changeset lebinh:8
+create table sys_upload_digest (
+    id bigint auto_increment primary key,
+    username varchar(50) not null,
+    sha256 varchar(64) not null,
+    import_job_id bigint not null,
+    created_by varchar(50) not null,
+    created_date timestamp not null,
+    last_modified_by varchar(50),
+    last_modified_date timestamp null,
+    constraint ux_upload_digest unique (username, sha256),
+    constraint fk_upload_digest_import_job_id foreign key (import_job_id) references sys_import_job (id)
+);
+create index idx_upload_digest_last_modified_date on sys_upload_digest (last_modified_date);
+--rollback drop table sys_upload_digest;
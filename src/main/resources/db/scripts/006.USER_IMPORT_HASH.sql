@@ -0,0 +1,13 @@
+--liquibase formatted sql
+--changeset lebinh:9
+create table sys_user_import_hash (
+    user_id bigint primary key,
+    row_hash varchar(64) not null,
+    imported_date timestamp null,
+    constraint fk_user_import_hash_user_id foreign key (user_id) references sys_user (id) on delete cascade
+);
+--rollback drop table sys_user_import_hash;
+
+--changeset lebinh:10
+alter table sys_import_job add column rows_unchanged bigint not null default 0 after rows_written;
+--rollback alter table sys_import_job drop column rows_unchanged;
@@ -0,0 +1,30 @@
+--liquibase formatted sql
+--changeset lebinh:11
+create table sys_upload_session (
+    id bigint auto_increment primary key,
+    username varchar(50) not null,
+    file_name varchar(255) not null,
+    size bigint not null,
+    path varchar(1024),
+    status varchar(20) not null,
+    import_job_id bigint,
+    created_by varchar(50) not null,
+    created_date timestamp not null,
+    last_modified_by varchar(50),
+    last_modified_date timestamp null,
+    constraint fk_upload_session_import_job_id foreign key (import_job_id) references sys_import_job (id)
+);
+create index idx_upload_session_created_date on sys_upload_session (created_date);
+--rollback drop table sys_upload_session;
+
+--changeset lebinh:12
+create table sys_upload_chunk (
+    id bigint auto_increment primary key,
+    upload_session_id bigint not null,
+    start_offset bigint not null,
+    length bigint not null,
+    sha256 varchar(64) not null,
+    constraint ux_upload_chunk unique (upload_session_id, start_offset),
+    constraint fk_upload_chunk_upload_session_id foreign key (upload_session_id) references sys_upload_session (id) on delete cascade
+);
+--rollback drop table sys_upload_chunk;
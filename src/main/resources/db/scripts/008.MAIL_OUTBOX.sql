@@ -0,0 +1,21 @@
+--liquibase formatted sql
+--changeset lebinh:13
+create table sys_mail_outbox (
+    id bigint auto_increment primary key,
+    recipient varchar(254) not null,
+    subject varchar(1000) not null,
+    content longtext not null,
+    is_multipart bit not null,
+    is_html bit not null,
+    status varchar(20) not null,
+    attempts int not null,
+    next_attempt_date timestamp not null,
+    last_error varchar(1024),
+    sent_date timestamp null,
+    created_by varchar(50) not null,
+    created_date timestamp not null,
+    last_modified_by varchar(50),
+    last_modified_date timestamp null
+);
+create index idx_mail_outbox_status on sys_mail_outbox (status, next_attempt_date);
+--rollback drop table sys_mail_outbox;
@@ -0,0 +1,8 @@
+--liquibase formatted sql
+--changeset lebinh:14
+alter table sys_mail_outbox add column template_name varchar(100) after recipient;
+alter table sys_mail_outbox add column title_key varchar(100) after template_name;
+alter table sys_mail_outbox add column user_id bigint after title_key;
+alter table sys_mail_outbox modify subject varchar(1000) null;
+alter table sys_mail_outbox modify content longtext null;
+--rollback alter table sys_mail_outbox drop column template_name, drop column title_key, drop column user_id;
@@ -0,0 +1,18 @@
+--liquibase formatted sql
+--changeset lebinh:15
+create table sys_bulk_mail (
+    id bigint auto_increment primary key,
+    subject varchar(1000) not null,
+    content longtext not null,
+    status varchar(20) not null,
+    last_user_id bigint not null,
+    queued_count bigint not null,
+    finished_date timestamp null,
+    version bigint not null,
+    created_by varchar(50) not null,
+    created_date timestamp not null,
+    last_modified_by varchar(50),
+    last_modified_date timestamp null
+);
+create index idx_bulk_mail_status on sys_bulk_mail (status);
+--rollback drop table sys_bulk_mail;
@@ -0,0 +1,4 @@
+--liquibase formatted sql
+--changeset lebinh:16
+alter table sys_mail_outbox add column version bigint not null default 0 after sent_date;
+--rollback alter table sys_mail_outbox drop column version;
@@ -0,0 +1,4 @@
+--liquibase formatted sql
+--changeset lebinh:17
+alter table sys_import_job add column version bigint not null default 0 after finished_date;
+--rollback alter table sys_import_job drop column version;
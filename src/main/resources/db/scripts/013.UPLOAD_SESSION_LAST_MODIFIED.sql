@@ -0,0 +1,4 @@
+--liquibase formatted sql
+--changeset lebinh:18
+create index idx_upload_session_last_modified_date on sys_upload_session (last_modified_date);
+--rollback drop index idx_upload_session_last_modified_date on sys_upload_session;
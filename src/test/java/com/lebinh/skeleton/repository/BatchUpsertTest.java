@@ -0,0 +1,40 @@
+package com.lebinh.skeleton.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class BatchUpsertTest {
+
+  private final BatchUpsert<String[]> upsert =
+      new BatchUpsert<String[]>(null, "sys_user", 100)
+          .key("login", row -> row[0])
+          .column("email", row -> row[1])
+          .keepIfNullColumn("lang_key", row -> row[2], "en")
+          .insertOnlyColumn("password_hash", row -> row[3]);
+
+  @Test
+  public void mysqlUpsertOnlyUpdatesTheUpdatableColumns() {
+    assertThat(upsert.upsertSql(BatchUpsert.Dialect.MYSQL))
+        .isEqualTo(
+            "insert into sys_user (login, email, lang_key, password_hash) values (?, ?, ?, ?)"
+                + " on duplicate key update email = values(email),"
+                + " lang_key = coalesce(values(lang_key), lang_key)");
+  }
+
+  @Test
+  public void h2UpsertMergesOnTheKey() {
+    assertThat(upsert.upsertSql(BatchUpsert.Dialect.H2))
+        .isEqualTo(
+            "merge into sys_user t using (select ? as login, ? as email, ? as lang_key,"
+                + " ? as password_hash) s on (t.login = s.login) when matched then update set"
+                + " email = s.email, lang_key = coalesce(s.lang_key, t.lang_key)"
+                + " when not matched then insert (login, email, lang_key, password_hash)"
+                + " values (s.login, s.email, s.lang_key, s.password_hash)");
+  }
+
+  @Test
+  public void dialectIsDetectedFromTheProductName() {
+    assertThat(BatchUpsert.Dialect.of("MySQL")).isEqualTo(BatchUpsert.Dialect.MYSQL);
+    assertThat(BatchUpsert.Dialect.of("H2")).isEqualTo(BatchUpsert.Dialect.H2);
+  }
+}
@@ -0,0 +1,121 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.BulkMail;
+import com.lebinh.skeleton.entity.OutboxMail;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.repository.BulkMailRepository;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+import com.lebinh.skeleton.repository.UserRepository;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class BulkMailServiceTest {
+
+  @Mock private BulkMailRepository bulkMailRepository;
+
+  @Mock private UserRepository userRepository;
+
+  @Mock private OutboxMailRepository outboxMailRepository;
+
+  @Mock private MailTemplateRenderer mailTemplateRenderer;
+
+  @Mock private PlatformTransactionManager transactionManager;
+
+  private BulkMailService bulkMailService;
+
+  private BulkMail bulkMail;
+
+  @Before
+  public void setUp() {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getMail().setBulkMessagesPerSecond(2);
+    applicationProperties.getMail().setBulkIntervalMillis(1000);
+    // the locales are rendered on the calling thread
+    bulkMailService =
+        new BulkMailService(
+            bulkMailRepository,
+            userRepository,
+            outboxMailRepository,
+            mailTemplateRenderer,
+            Runnable::run,
+            transactionManager,
+            applicationProperties);
+    bulkMail = new BulkMail();
+    bulkMail.setId(1L);
+    bulkMail.setSubject("Maintenance");
+    bulkMail.setContent("Down tonight.\nBack tomorrow.");
+    bulkMail.setStatus(BulkMail.Status.RUNNING);
+    when(bulkMailRepository.findFirstByStatusOrderById(BulkMail.Status.RUNNING))
+        .thenReturn(Optional.of(bulkMail));
+    when(bulkMailRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+    when(mailTemplateRenderer.render(eq("bulkEmail"), any(), any()))
+        .thenAnswer(i -> "<p>" + i.getArgument(1) + "</p>");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void queuesBatchesAtRateFromCheckpoint() {
+    bulkMail.setLastUserId(10);
+    when(userRepository.findAllByActivatedIsTrueAndIdGreaterThanOrderById(
+            10L, PageRequest.of(0, 2)))
+        .thenReturn(Arrays.asList(user(11, "en"), user(12, "fr")));
+
+    bulkMailService.queueNextBatch();
+    // no token left for a second batch within the interval
+    bulkMailService.queueNextBatch();
+
+    ArgumentCaptor<List<OutboxMail>> mails = ArgumentCaptor.forClass(List.class);
+    verify(outboxMailRepository).saveAll(mails.capture());
+    assertThat(mails.getValue())
+        .extracting(OutboxMail::getRecipient, OutboxMail::getContent)
+        .containsExactlyInAnyOrder(
+            tuple("user11@localhost", "<p>en</p>"),
+            tuple("user12@localhost", "<p>fr</p>"));
+    verify(mailTemplateRenderer).render(eq("bulkEmail"), eq(Locale.FRENCH), any());
+    assertThat(bulkMail.getLastUserId()).isEqualTo(12);
+    assertThat(bulkMail.getQueuedCount()).isEqualTo(2);
+    assertThat(bulkMail.getStatus()).isEqualTo(BulkMail.Status.RUNNING);
+  }
+
+  @Test
+  public void completesOnceAllUsersAreQueued() {
+    when(userRepository.findAllByActivatedIsTrueAndIdGreaterThanOrderById(anyLong(), any()))
+        .thenReturn(Collections.emptyList());
+
+    bulkMailService.queueNextBatch();
+
+    verify(mailTemplateRenderer, never()).render(any(), any(), any());
+    assertThat(bulkMail.getStatus()).isEqualTo(BulkMail.Status.COMPLETED);
+    assertThat(bulkMail.getFinishedDate()).isNotNull();
+  }
+
+  private static User user(long id, String langKey) {
+    User user = new User();
+    user.setId(id);
+    user.setLogin("user" + id);
+    user.setEmail("user" + id + "@localhost");
+    user.setLangKey(langKey);
+    return user;
+  }
+}
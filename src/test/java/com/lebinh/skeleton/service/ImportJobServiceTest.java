@@ -0,0 +1,142 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.ImportJob;
+import com.lebinh.skeleton.repository.ImportJobRepository;
+import com.lebinh.skeleton.repository.UploadDigestRepository;
+import com.lebinh.skeleton.service.dto.ImportResultDto;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ImportJobServiceTest {
+
+  private static final int ROWS_PER_FILE = 50;
+
+  @Mock private ImportJobRepository importJobRepository;
+
+  @Mock private UserImportService userImportService;
+
+  @Mock private UploadSpoolService uploadSpoolService;
+
+  @Mock private UploadDigestRepository uploadDigestRepository;
+
+  private final ExecutorService fileExecutor = Executors.newFixedThreadPool(2, named("file"));
+
+  private final ExecutorService eventExecutor = Executors.newSingleThreadExecutor(named("event"));
+
+  private ImportJobService importJobService;
+
+  // thread, status and rows read of each saved state of the job
+  private final List<Object[]> saves = Collections.synchronizedList(new ArrayList<>());
+
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    // the job runs on the calling thread, its files on the file executor
+    importJobService =
+        new ImportJobService(
+            importJobRepository,
+            userImportService,
+            uploadSpoolService,
+            uploadDigestRepository,
+            new ConcurrentTaskExecutor(Runnable::run),
+            fileExecutor,
+            eventExecutor,
+            new ObjectMapper(),
+            new ApplicationProperties());
+    when(importJobRepository.save(any()))
+        .thenAnswer(
+            i -> {
+              ImportJob job = i.getArgument(0);
+              job.setId(1L);
+              saves.add(
+                  new Object[] {
+                    Thread.currentThread().getName(), job.getStatus(), job.getRowsRead()
+                  });
+              if (job.isFinished()) {
+                finished.countDown();
+              }
+              return job;
+            });
+    when(importJobRepository.findById(1L))
+        .thenAnswer(
+            i -> {
+              ImportJob job = new ImportJob();
+              job.setStatus(ImportJob.Status.QUEUED);
+              return Optional.of(job);
+            });
+    when(userImportService.preflight(anyString(), any())).thenReturn(Optional.empty());
+  }
+
+  @After
+  public void tearDown() {
+    fileExecutor.shutdownNow();
+    eventExecutor.shutdownNow();
+  }
+
+  @Test
+  public void savesProgressOffTheFileThreadsInOrder() throws IOException, InterruptedException {
+    when(userImportService.importFile(anyString(), any(), anyBoolean(), any()))
+        .thenAnswer(
+            i -> {
+              Consumer<ImportResultDto> listener = i.getArgument(3);
+              ImportResultDto result = new ImportResultDto(i.getArgument(0));
+              for (int row = 0; row < ROWS_PER_FILE; row++) {
+                result.rowRead();
+                result.rowWritten();
+                listener.accept(result);
+              }
+              return result;
+            });
+
+    importJobService.submit(
+        "admin",
+        Arrays.asList("a.csv", "b.csv"),
+        Arrays.asList(
+            new UploadSpoolService.SpooledFile(Paths.get("a.csv"), "a"),
+            new UploadSpoolService.SpooledFile(Paths.get("b.csv"), "b")),
+        true);
+
+    assertThat(finished.await(10, TimeUnit.SECONDS)).isTrue();
+    List<Object[]> progress = new ArrayList<>(saves);
+    // queued and started on the calling thread, then flushed by the event executor only
+    assertThat(progress.subList(2, progress.size()))
+        .allSatisfy(save -> assertThat((String) save[0]).startsWith("event"));
+    for (int i = 1; i < progress.size(); i++) {
+      assertThat((long) progress.get(i)[2]).isGreaterThanOrEqualTo((long) progress.get(i - 1)[2]);
+    }
+    Object[] last = progress.get(progress.size() - 1);
+    assertThat(last[1]).isEqualTo(ImportJob.Status.COMPLETED);
+    assertThat(last[2]).isEqualTo(2L * ROWS_PER_FILE);
+  }
+
+  private static ThreadFactory named(String prefix) {
+    return task -> new Thread(task, prefix + "-" + task.hashCode());
+  }
+}
@@ -0,0 +1,157 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.config.ExecutorStats;
+import com.lebinh.skeleton.entity.OutboxMail;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class MailDispatcherTest {
+
+  @Mock private OutboxMailRepository outboxMailRepository;
+
+  @Mock private MailService mailService;
+
+  @Mock private JavaMailSender javaMailSender;
+
+  private MailDispatcher mailDispatcher;
+
+  @Before
+  public void setUp() {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getMail().setMaxAttempts(3);
+    // the stages run on the calling thread
+    mailDispatcher =
+        new MailDispatcher(
+            outboxMailRepository,
+            mailService,
+            javaMailSender,
+            Runnable::run,
+            new ExecutorStats(),
+            applicationProperties);
+    when(outboxMailRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
+    Session session = Session.getInstance(new Properties());
+    when(javaMailSender.createMimeMessage()).thenAnswer(i -> new MimeMessage(session));
+  }
+
+  @Test
+  public void sendsBatchOnceAndRetriesFailedMailsWithBackoff() {
+    OutboxMail sent = mail("sent@localhost", 0);
+    OutboxMail retried = mail("retried@localhost", 1);
+    whenPending(sent, retried);
+    doAnswer(
+            i -> {
+              // the server rejects the second message of the batch
+              MimeMessage rejected = i.getArgument(1);
+              throw new MailSendException(
+                  Collections.singletonMap(rejected, new MessagingException("421")));
+            })
+        .when(javaMailSender)
+        .send((MimeMessage[]) any());
+
+    Instant before = Instant.now();
+    mailDispatcher.dispatch();
+
+    verify(javaMailSender, times(1)).send((MimeMessage[]) any());
+    assertThat(sent.getStatus()).isEqualTo(OutboxMail.Status.SENT);
+    assertThat(sent.getAttempts()).isEqualTo(1);
+    assertThat(retried.getStatus()).isEqualTo(OutboxMail.Status.PENDING);
+    assertThat(retried.getAttempts()).isEqualTo(2);
+    assertThat(retried.getLastError()).isEqualTo("421");
+    // second failed attempt: twice the initial delay
+    assertThat(retried.getNextAttemptDate()).isAfterOrEqualTo(before.plusSeconds(120));
+  }
+
+  @Test
+  public void marksMailDeadAfterLastAttempt() {
+    OutboxMail mail = mail("dead@localhost", 2);
+    whenPending(mail);
+    doThrow(new MailAuthenticationException("Authentication failed"))
+        .when(javaMailSender)
+        .send((MimeMessage[]) any());
+
+    mailDispatcher.dispatch();
+
+    assertThat(mail.getStatus()).isEqualTo(OutboxMail.Status.DEAD);
+    assertThat(mail.getAttempts()).isEqualTo(3);
+  }
+
+  @Test
+  public void rendersTemplateMailsBeforeSendingThem() {
+    OutboxMail mail = mail("template@localhost", 0);
+    mail.setContent(null);
+    mail.setTemplateName("activationEmail");
+    whenPending(mail);
+    doAnswer(
+            i -> {
+              OutboxMail rendered = i.getArgument(0);
+              rendered.setSubject("activation");
+              rendered.setContent("<p>activate</p>");
+              return null;
+            })
+        .when(mailService)
+        .render(mail);
+
+    mailDispatcher.dispatch();
+
+    verify(mailService).render(mail);
+    verify(javaMailSender).send((MimeMessage[]) any());
+    assertThat(mail.getStatus()).isEqualTo(OutboxMail.Status.SENT);
+  }
+
+  @Test
+  public void skipsBatchClaimedByAnotherNode() {
+    OutboxMail mail = mail("claimed@localhost", 0);
+    whenPending(mail);
+    when(outboxMailRepository.saveAll(any()))
+        .thenThrow(new OptimisticLockingFailureException("Row was updated by another node"));
+
+    mailDispatcher.dispatch();
+
+    verify(javaMailSender, never()).send((MimeMessage[]) any());
+    assertThat(mail.getAttempts()).isEqualTo(0);
+  }
+
+  private void whenPending(OutboxMail... mails) {
+    when(outboxMailRepository.findAllByStatusAndNextAttemptDateLessThanEqualOrderById(
+            eq(OutboxMail.Status.PENDING), any(), any()))
+        .thenReturn(Arrays.asList(mails))
+        .thenReturn(Collections.emptyList());
+  }
+
+  private static OutboxMail mail(String recipient, int attempts) {
+    OutboxMail mail = new OutboxMail();
+    mail.setRecipient(recipient);
+    mail.setSubject("subject");
+    mail.setContent("content");
+    mail.setStatus(OutboxMail.Status.PENDING);
+    mail.setAttempts(attempts);
+    mail.setNextAttemptDate(Instant.now());
+    return mail;
+  }
+}
@@ -0,0 +1,128 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.MessageSource;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.config.ThymeleafConfiguration;
+import com.lebinh.skeleton.entity.User;
+
+public class MailTemplateRendererTest {
+
+  private static final long BENCHMARK_MILLIS = 1000;
+
+  private final Logger log = LoggerFactory.getLogger(MailTemplateRendererTest.class);
+
+  private MailTemplateRenderer renderer;
+
+  private User user;
+
+  @Before
+  public void setUp() {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getMail().setBaseUrl("http://skeleton.test");
+    ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+    messageSource.setBasename("i18n/messages");
+    messageSource.setDefaultEncoding("UTF-8");
+    renderer =
+        new MailTemplateRenderer(
+            new ThymeleafConfiguration().emailTemplateResolver(applicationProperties),
+            messageSource,
+            applicationProperties);
+    user = new User();
+    user.setLogin("john");
+    user.setActivationKey("12345");
+  }
+
+  @Test
+  public void testRender() {
+    String content = renderer.render("activationEmail", Locale.ENGLISH, variables());
+
+    assertThat(content)
+        .contains("Dear john")
+        .contains("href=\"http://skeleton.test/#/activate?key=12345\"")
+        .contains("skeleton-jh Team.");
+    assertThat(renderer.renderSubject("email.activation.title", Locale.ENGLISH))
+        .isEqualTo("skeleton-jh account activation");
+  }
+
+  @Test
+  public void testMessagesMemoizedPerLocale() {
+    MessageSource delegate = mock(MessageSource.class);
+    when(delegate.getMessage(eq("email.activation.greeting"), any(), any()))
+        .thenReturn("Dear {0}");
+    MessageSource messageSource = new MailTemplateRenderer.CachingMessageSource(delegate);
+
+    assertThat(messageSource.getMessage("email.activation.greeting", new Object[] {"a"}, null))
+        .isEqualTo("Dear a");
+    assertThat(messageSource.getMessage("email.activation.greeting", new Object[] {"b"}, null))
+        .isEqualTo("Dear b");
+    messageSource.getMessage("email.activation.greeting", null, Locale.FRENCH);
+
+    verify(delegate, times(2)).getMessage(eq("email.activation.greeting"), any(), any());
+  }
+
+  /** Logs the rendered emails per second per core, with one rendering thread per core. */
+  @Test
+  public void benchmarkRender() throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    // warm up the template cache and the compiled expressions
+    renderMails(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BENCHMARK_MILLIS / 4));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      long start = System.nanoTime();
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(BENCHMARK_MILLIS);
+      List<Future<Long>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> renderMails(deadline)));
+      }
+      long rendered = 0;
+      for (Future<Long> result : results) {
+        rendered += result.get();
+      }
+      double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+      log.info(
+          "Rendered {} emails on {} cores: {} emails/s/core",
+          rendered,
+          threads,
+          Math.round(rendered / seconds / threads));
+      assertThat(rendered).isPositive();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private long renderMails(long deadline) {
+    long rendered = 0;
+    while (System.nanoTime() < deadline) {
+      renderer.render("passwordResetEmail", Locale.ENGLISH, variables());
+      renderer.renderSubject("email.reset.title", Locale.ENGLISH);
+      rendered++;
+    }
+    return rendered;
+  }
+
+  private Map<String, Object> variables() {
+    return Collections.singletonMap("user", user);
+  }
+}
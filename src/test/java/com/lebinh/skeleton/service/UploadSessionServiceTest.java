@@ -0,0 +1,208 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.ImportJob;
+import com.lebinh.skeleton.entity.UploadChunk;
+import com.lebinh.skeleton.entity.UploadSession;
+import com.lebinh.skeleton.repository.UploadChunkRepository;
+import com.lebinh.skeleton.repository.UploadSessionRepository;
+import com.lebinh.skeleton.service.dto.ImportJobDto;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UploadSessionServiceTest {
+
+  private static final byte[] CONTENT = "login,email\n".getBytes(StandardCharsets.UTF_8);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock private UploadSessionRepository uploadSessionRepository;
+
+  @Mock private UploadChunkRepository uploadChunkRepository;
+
+  @Mock private ImportJobService importJobService;
+
+  private UploadSessionService uploadSessionService;
+
+  private UploadSession session;
+
+  private final List<UploadChunk> chunks = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getUpload().setSpoolDirectory(folder.getRoot().getPath());
+    uploadSessionService =
+        new UploadSessionService(
+            uploadSessionRepository,
+            uploadChunkRepository,
+            new UploadSpoolService(applicationProperties),
+            importJobService,
+            applicationProperties);
+    when(uploadSessionRepository.save(any()))
+        .thenAnswer(
+            i -> {
+              session = i.getArgument(0);
+              session.setId(1L);
+              return session;
+            });
+    when(uploadSessionRepository.findById(1L)).thenAnswer(i -> Optional.ofNullable(session));
+    when(uploadChunkRepository.save(any()))
+        .thenAnswer(
+            i -> {
+              chunks.add(i.getArgument(0));
+              return i.getArgument(0);
+            });
+    when(uploadChunkRepository.findAllByUploadSessionIdOrderByStartOffset(1L))
+        .thenAnswer(i -> new ArrayList<>(chunks));
+
+    uploadSessionService.create("admin", "users.csv", CONTENT.length);
+    uploadSessionService.writeChunk(
+        1L, "admin", 0, CONTENT.length, null, new ByteArrayInputStream(CONTENT));
+  }
+
+  @Test
+  public void hidesSessionOfAnotherUser() throws IOException {
+    assertThat(uploadSessionService.find(1L, "user")).isEmpty();
+    assertThat(uploadSessionService.commit(1L, "user", false)).isEmpty();
+    assertThat(uploadSessionService.find(1L, "admin")).isPresent();
+  }
+
+  @Test
+  public void failsSessionWhenItsFileCannotBeSubmitted() throws IOException {
+    String path = session.getPath();
+    when(importJobService.submit(eq("admin"), anyList(), anyList(), anyBoolean()))
+        .thenThrow(new ImportQueueFullException("Too many imports in progress"));
+
+    assertThatThrownBy(() -> uploadSessionService.commit(1L, "admin", false))
+        .isInstanceOf(ImportQueueFullException.class);
+
+    assertThat(session.getStatus()).isEqualTo(UploadSession.Status.FAILED);
+    assertThat(session.getPath()).isNull();
+    assertThat(Files.exists(Paths.get(path))).isFalse();
+    assertThatThrownBy(
+            () ->
+                uploadSessionService.writeChunk(
+                    1L, "admin", 0, CONTENT.length, null, new ByteArrayInputStream(CONTENT)))
+        .isInstanceOf(InvalidUploadException.class)
+        .hasMessageContaining("failed");
+  }
+
+  @Test
+  public void rejectsChunkWhileCommitting() throws Exception {
+    CountDownLatch submitting = new CountDownLatch(1);
+    CountDownLatch submitted = new CountDownLatch(1);
+    ImportJobDto job = new ImportJobDto();
+    job.setId(7L);
+    job.setStatus(ImportJob.Status.QUEUED);
+    when(importJobService.submit(eq("admin"), anyList(), anyList(), anyBoolean()))
+        .thenAnswer(
+            i -> {
+              submitting.countDown();
+              submitted.await(10, TimeUnit.SECONDS);
+              return job;
+            });
+
+    CompletableFuture<Optional<ImportJobDto>> commit =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return uploadSessionService.commit(1L, "admin", false);
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    assertThat(submitting.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThatThrownBy(
+            () ->
+                uploadSessionService.writeChunk(
+                    1L, "admin", 0, CONTENT.length, null, new ByteArrayInputStream(CONTENT)))
+        .isInstanceOf(InvalidUploadException.class)
+        .hasMessageContaining("being committed");
+    submitted.countDown();
+
+    assertThat(commit.get(10, TimeUnit.SECONDS)).contains(job);
+    assertThat(session.getStatus()).isEqualTo(UploadSession.Status.COMMITTED);
+    assertThat(session.getImportJobId()).isEqualTo(7L);
+  }
+
+  @Test
+  public void removesIdleSessionWithItsFileAndChunks() {
+    String path = session.getPath();
+    session.setLastModifiedDate(Instant.now().minus(2, ChronoUnit.DAYS));
+    when(uploadSessionRepository.findAllByLastModifiedDateBefore(any()))
+        .thenReturn(Collections.singletonList(session));
+
+    uploadSessionService.removeExpiredSessions();
+
+    assertThat(session.getPath()).isNull();
+    assertThat(Files.exists(Paths.get(path))).isFalse();
+    verify(uploadChunkRepository).deleteInBatch(chunks);
+    verify(uploadSessionRepository).delete(session);
+  }
+
+  @Test
+  public void keepsSessionBeingCommitted() throws Exception {
+    CountDownLatch submitting = new CountDownLatch(1);
+    CountDownLatch submitted = new CountDownLatch(1);
+    ImportJobDto job = new ImportJobDto();
+    job.setId(7L);
+    job.setStatus(ImportJob.Status.QUEUED);
+    when(importJobService.submit(eq("admin"), anyList(), anyList(), anyBoolean()))
+        .thenAnswer(
+            i -> {
+              submitting.countDown();
+              submitted.await(10, TimeUnit.SECONDS);
+              return job;
+            });
+    session.setLastModifiedDate(Instant.now().minus(2, ChronoUnit.DAYS));
+    when(uploadSessionRepository.findAllByLastModifiedDateBefore(any()))
+        .thenReturn(Collections.singletonList(session));
+
+    CompletableFuture<Optional<ImportJobDto>> commit =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return uploadSessionService.commit(1L, "admin", false);
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    assertThat(submitting.await(10, TimeUnit.SECONDS)).isTrue();
+    uploadSessionService.removeExpiredSessions();
+    submitted.countDown();
+
+    assertThat(commit.get(10, TimeUnit.SECONDS)).contains(job);
+    assertThat(session.getStatus()).isEqualTo(UploadSession.Status.COMMITTED);
+    verify(uploadSessionRepository, never()).delete(any());
+  }
+}
@@ -0,0 +1,61 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.lebinh.skeleton.config.ApplicationProperties;
+
+public class UploadSpoolServiceTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private UploadSpoolService uploadSpoolService;
+
+  @Before
+  public void setUp() {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getUpload().setSpoolDirectory(folder.getRoot().getPath());
+    applicationProperties.getUpload().setMaxSpooledSize(15);
+    uploadSpoolService = new UploadSpoolService(applicationProperties);
+  }
+
+  @Test
+  public void recoverDeletesOrphansAndReservesKeptFiles() throws IOException {
+    Path kept = spooled("upload-1.part", 10);
+    Path orphan = spooled("upload-2.part", 10);
+    Path other = spooled("notes.txt", 10);
+
+    assertThat(uploadSpoolService.recover(Collections.singletonList(kept))).isEqualTo(1);
+
+    assertThat(kept).exists();
+    assertThat(orphan).doesNotExist();
+    assertThat(other).exists();
+    // the kept file still holds its space until it is deleted
+    assertThatThrownBy(() -> uploadSpoolService.allocate(10))
+        .isInstanceOf(UploadCapacityExceededException.class);
+    uploadSpoolService.delete(kept);
+    uploadSpoolService.delete(uploadSpoolService.allocate(10));
+  }
+
+  @Test
+  public void recoverLeavesFilesSpooledSinceTheStart() throws IOException {
+    Path allocated = uploadSpoolService.allocate(10);
+
+    assertThat(uploadSpoolService.recover(Collections.emptyList())).isEqualTo(0);
+
+    assertThat(allocated).exists();
+    assertThatThrownBy(() -> uploadSpoolService.allocate(10))
+        .isInstanceOf(UploadCapacityExceededException.class);
+  }
+
+  private Path spooled(String name, int size) throws IOException {
+    return Files.write(folder.getRoot().toPath().resolve(name), new byte[size]);
+  }
+}
@@ -0,0 +1,282 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.validation.Validation;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.assertj.core.groups.Tuple;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.StreamUtils;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.repository.BatchUpsert;
+import com.lebinh.skeleton.service.dto.ImportResultDto;
+import com.lebinh.skeleton.service.dto.UserDto;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UserImportServiceTest {
+
+  private static final String HEADER = "login,first_name,last_name,email,lang_key,activated\n";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock private UserService userService;
+
+  @Mock private PasswordEncoder passwordEncoder;
+
+  @Mock private FileStoreService fileStoreService;
+
+  private UserImportService userImportService;
+
+  // the logins written by each call to importUsers, and the row hashes it saved
+  private final List<String> writtenLogins = new ArrayList<>();
+
+  private final Map<String, String> savedHashes = new HashMap<>();
+
+  private byte[] errorWorkbook;
+
+  @Before
+  public void setUp() throws Exception {
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    applicationProperties.getUpload().setChunkSize(2);
+    applicationProperties.getUpload().setMaxPendingChunks(3);
+    userImportService =
+        new UserImportService(
+            userService,
+            passwordEncoder,
+            Validation.buildDefaultValidatorFactory().getValidator(),
+            fileStoreService,
+            reverseOrderWorkers(),
+            applicationProperties);
+    when(passwordEncoder.encode(anyString())).thenReturn("password-hash");
+    when(userService.importUsers(anyList(), anyMap(), anyString()))
+        .thenAnswer(
+            i -> {
+              List<UserDto> userDtos = i.getArgument(0);
+              userDtos.forEach(userDto -> writtenLogins.add(userDto.getLogin()));
+              savedHashes.putAll(i.getArgument(1));
+              return written(userDtos.size());
+            });
+    when(fileStoreService.storePrivate(any()))
+        .thenAnswer(
+            i -> {
+              errorWorkbook = StreamUtils.copyToByteArray(i.<InputStream>getArgument(0));
+              return "error-file";
+            });
+  }
+
+  @Test
+  public void writesChunksAndReportsLinesInFileOrder() throws Exception {
+    ImportResultDto result =
+        importFile(
+            HEADER
+                + "user1,,,,,true\n"
+                + "user2,,,,,maybe\n"
+                + "user3,,,,,true\n"
+                + "user4,,,,,true\n"
+                + "user5,,,,,true\n"
+                + ",,,,,true\n"
+                + "user6,,,,,false\n",
+            false);
+
+    // the workers validate the later chunks first
+    assertThat(writtenLogins).containsExactly("user1", "user3", "user4", "user5", "user6");
+    assertThat(result.getErrors())
+        .extracting(ImportResultDto.RowError::getLine)
+        .containsExactly(3, 7);
+    assertThat(result.getRowsRead()).isEqualTo(7);
+    assertThat(result.getRowsWritten()).isEqualTo(5);
+    assertThat(result.getRowsFailed()).isEqualTo(2);
+  }
+
+  @Test
+  public void replaysFailedChunkRowByRow() throws Exception {
+    doAnswer(
+            i -> {
+              List<UserDto> userDtos = i.getArgument(0);
+              if (userDtos.stream().anyMatch(userDto -> userDto.getLogin().equals("bob"))) {
+                throw new DataIntegrityViolationException("Email already used");
+              }
+              return written(userDtos.size());
+            })
+        .when(userService)
+        .importUsers(anyList(), anyMap(), anyString());
+    when(userService.importUser(any(), anyString(), anyString()))
+        .thenAnswer(
+            i -> {
+              if (i.<UserDto>getArgument(0).getLogin().equals("bob")) {
+                throw new DataIntegrityViolationException("Email already used");
+              }
+              return written(1);
+            });
+
+    ImportResultDto result =
+        importFile(
+            HEADER
+                + "alice,,,alice@example.com,,true\n"
+                + "bob,,,alice@example.com,,true\n"
+                + "carol,,,carol@example.com,,true\n",
+            false);
+
+    assertThat(result.getErrors())
+        .extracting(ImportResultDto.RowError::getLine, ImportResultDto.RowError::getMessage)
+        .containsExactly(Tuple.tuple(3, "login or email already used"));
+    assertThat(result.getRowsWritten()).isEqualTo(2);
+    assertThat(result.getRowsInserted()).isEqualTo(2);
+    // only the rows of the failed chunk are replayed
+    verify(userService, times(2)).importUser(any(), anyString(), anyString());
+  }
+
+  @Test
+  public void skipsRowsUnchangedSinceTheirLastImport() throws Exception {
+    String content =
+        HEADER
+            + "Alice,Alice,Smith,,,true\n"
+            + "bob,Bob,Jones,,,true\n"
+            + "carol,Carol,King,,,true\n";
+    importFile(content, false);
+    when(userService.findImportHashes(anyCollection()))
+        .thenAnswer(
+            i ->
+                i.<Collection<String>>getArgument(0)
+                    .stream()
+                    .filter(savedHashes::containsKey)
+                    .collect(Collectors.toMap(login -> login, savedHashes::get)));
+    writtenLogins.clear();
+
+    ImportResultDto result = importFile(content.replace("Bob,Jones", "Bobby,Jones"), true);
+
+    assertThat(savedHashes).containsOnlyKeys("alice", "bob", "carol");
+    assertThat(writtenLogins).containsExactly("bob");
+    assertThat(result.getRowsUnchanged()).isEqualTo(2);
+    assertThat(result.getRowsWritten()).isEqualTo(1);
+  }
+
+  @Test
+  public void reimportsRowsWithoutImportHash() throws Exception {
+    // a user modified since its last import has no hash, see UserService#findImportHashes
+    when(userService.findImportHashes(anyCollection())).thenReturn(new HashMap<>());
+
+    ImportResultDto result = importFile(HEADER + "alice,,,,,true\n", true);
+
+    assertThat(writtenLogins).containsExactly("alice");
+    assertThat(result.getRowsUnchanged()).isZero();
+  }
+
+  @Test
+  public void writesFailedRowsToPrivateErrorWorkbook() throws Exception {
+    ImportResultDto result =
+        importFile(
+            "activated,email,login\n"
+                + "maybe,john@example.com,john\n"
+                + "true,jane@example.com,jane\n"
+                + "true,joe@example.com,joe doe\n",
+            false);
+
+    assertThat(result.getErrorFile()).isEqualTo("error-file");
+    verify(fileStoreService, never()).store(any());
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(errorWorkbook))) {
+      Sheet sheet = workbook.getSheet("users");
+      assertThat(sheet.getLastRowNum()).isEqualTo(2);
+      assertThat(texts(sheet.getRow(0)))
+          .containsExactly(
+              "login", "first_name", "last_name", "email", "lang_key", "activated", "line",
+              "error");
+      // the cells of a failed row are written as read, in the order of the header
+      Row row = sheet.getRow(1);
+      assertThat(texts(row))
+          .containsExactly(
+              "john", null, null, "john@example.com", null, "maybe", null,
+              "activated: not a boolean 'maybe'");
+      assertThat(row.getCell(6).getNumericCellValue()).isEqualTo(2);
+      assertThat(sheet.getRow(2).getCell(0).getStringCellValue()).isEqualTo("joe doe");
+      assertThat(sheet.getRow(2).getCell(6).getNumericCellValue()).isEqualTo(4);
+      assertThat(sheet.getRow(2).getCell(7).getStringCellValue()).startsWith("login: ");
+    }
+  }
+
+  @Test
+  public void storesNoErrorWorkbookWithoutFailedRows() throws Exception {
+    ImportResultDto result = importFile(HEADER + "alice,,,,,true\n", false);
+
+    assertThat(result.getErrorFile()).isNull();
+    verify(fileStoreService, never()).storePrivate(any());
+  }
+
+  private ImportResultDto importFile(String content, boolean differential) throws Exception {
+    Path file = folder.newFile().toPath();
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return userImportService.importFile("users.csv", file, differential, progress -> {});
+  }
+
+  /** @return workers which delay the first chunks the most, so they are validated last */
+  private static Executor reverseOrderWorkers() {
+    AtomicInteger submitted = new AtomicInteger();
+    return task -> {
+      int delay = Math.max(0, 4 - submitted.getAndIncrement()) * 50;
+      new Thread(
+              () -> {
+                try {
+                  Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                task.run();
+              })
+          .start();
+    };
+  }
+
+  private static BatchUpsert.Result written(int inserted) {
+    BatchUpsert.Result result = mock(BatchUpsert.Result.class);
+    when(result.getInserted()).thenReturn(inserted);
+    return result;
+  }
+
+  /** @return the string cells of a row, null for the blank and numeric cells */
+  private static List<String> texts(Row row) {
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < row.getLastCellNum(); i++) {
+      Cell cell = row.getCell(i);
+      texts.add(
+          cell == null || cell.getCellTypeEnum() != CellType.STRING
+              ? null
+              : cell.getStringCellValue());
+    }
+    return texts;
+  }
+}
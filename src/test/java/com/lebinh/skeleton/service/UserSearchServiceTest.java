@@ -0,0 +1,103 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.entity.UserSearchTerm;
+import com.lebinh.skeleton.repository.UserRepository;
+import com.lebinh.skeleton.repository.UserSearchTermRepository;
+import com.lebinh.skeleton.service.dto.UserDto;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UserSearchServiceTest {
+
+  // the index of the terms, in (term, user id) order
+  private static final List<UserSearchTerm> TERMS =
+      Arrays.asList(
+          new UserSearchTerm(1L, "john"),
+          new UserSearchTerm(2L, "john"),
+          new UserSearchTerm(1L, "john doe"),
+          new UserSearchTerm(2L, "john smith"),
+          new UserSearchTerm(3L, "johnny"),
+          new UserSearchTerm(4L, "johnson"));
+
+  @Mock private UserSearchTermRepository userSearchTermRepository;
+
+  @Mock private UserRepository userRepository;
+
+  private UserSearchService userSearchService;
+
+  @Before
+  public void setUp() {
+    userSearchService = new UserSearchService(userSearchTermRepository, userRepository);
+    when(userSearchTermRepository.findAllByTermLikeAfter(
+            anyString(), anyString(), anyLong(), any()))
+        .thenAnswer(
+            i -> {
+              String prefix = i.<String>getArgument(0).replace("%", "");
+              String term = i.getArgument(1);
+              long userId = i.getArgument(2);
+              Pageable pageable = i.getArgument(3);
+              return TERMS
+                  .stream()
+                  .filter(t -> t.getTerm().startsWith(prefix))
+                  .filter(
+                      t ->
+                          t.getTerm().compareTo(term) > 0
+                              || (t.getTerm().equals(term) && t.getUserId() > userId))
+                  .limit(pageable.getPageSize())
+                  .collect(Collectors.toList());
+            });
+    when(userRepository.findAllWithAuthoritiesByIdIn(anyCollection()))
+        .thenAnswer(
+            i ->
+                i.<Collection<Long>>getArgument(0)
+                    .stream()
+                    .sorted(Comparator.reverseOrder())
+                    .map(UserSearchServiceTest::user)
+                    .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void searchContinuesAfterTheLastTermUntilThePageIsFull() {
+    List<UserDto> users = userSearchService.search("John", 3);
+
+    assertThat(users).extracting(UserDto::getId).containsExactly(1L, 2L, 3L);
+    // the first page of terms only holds users 1 and 2
+    verify(userSearchTermRepository, times(2))
+        .findAllByTermLikeAfter(anyString(), anyString(), anyLong(), any());
+  }
+
+  @Test
+  public void searchStopsWhenTheTermsAreExhausted() {
+    List<UserDto> users = userSearchService.search("johns", 3);
+
+    assertThat(users).extracting(UserDto::getId).containsExactly(4L);
+    verify(userSearchTermRepository, times(1))
+        .findAllByTermLikeAfter(anyString(), anyString(), anyLong(), any());
+  }
+
+  private static User user(Long id) {
+    User user = new User();
+    user.setId(id);
+    user.setLogin("user" + id);
+    return user;
+  }
+}
@@ -0,0 +1,252 @@
+package com.lebinh.skeleton.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.entity.Authority;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.repository.AuthorityRepository;
+import com.lebinh.skeleton.repository.UserRepository;
+import com.lebinh.skeleton.security.AuthoritiesConstants;
+import com.lebinh.skeleton.service.dto.UserDto;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UserServiceTest {
+
+  @Mock private UserRepository userRepository;
+
+  @Mock private PasswordEncoder passwordEncoder;
+
+  @Mock private AuthorityRepository authorityRepository;
+
+  @Mock private UserSearchService userSearchService;
+
+  @Mock private MailService mailService;
+
+  @Mock private NamedParameterJdbcTemplate jdbcTemplate;
+
+  private UserService userService;
+
+  private User user;
+
+  private WriteTrackingSet<Authority> authorities;
+
+  @Before
+  public void setUp() {
+    userService =
+        new UserService(
+            userRepository,
+            passwordEncoder,
+            authorityRepository,
+            userSearchService,
+            mailService,
+            jdbcTemplate,
+            new ApplicationProperties());
+    when(authorityRepository.getOne(anyString())).thenAnswer(i -> authority(i.getArgument(0)));
+
+    authorities = new WriteTrackingSet<>();
+    authorities.addAll(
+        Arrays.asList(authority(AuthoritiesConstants.USER), authority(AuthoritiesConstants.ADMIN)));
+    authorities.writes = 0;
+
+    user = new User();
+    user.setId(1L);
+    user.setLogin("johndoe");
+    user.setAuthorities(authorities);
+    when(userRepository.getOne(1L)).thenReturn(user);
+  }
+
+  @Test
+  public void updateUserWithUnchangedAuthoritiesDoesNotWriteJoinTable() {
+    userService.updateUser(userDto(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER));
+
+    assertThat(authorities.writes).isZero();
+    verify(authorityRepository, never()).getOne(anyString());
+  }
+
+  @Test
+  public void updateUserOnlyWritesChangedAuthorities() {
+    userService.updateUser(userDto(AuthoritiesConstants.USER, AuthoritiesConstants.ANONYMOUS));
+
+    assertThat(authorities.writes).isEqualTo(2);
+    assertThat(authorities)
+        .extracting(Authority::getName)
+        .containsOnly(AuthoritiesConstants.USER, AuthoritiesConstants.ANONYMOUS);
+    verify(authorityRepository, never()).getOne(AuthoritiesConstants.USER);
+  }
+
+  @Test
+  public void importUsersStampsImportHashWithLastModifiedDateOfUser() throws Exception {
+    Map<String, List<Map<String, Object>>> writtenRows = mockBatchUpserts();
+    User imported = new User();
+    imported.setId(1L);
+    imported.setLogin("alice");
+    when(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class)))
+        .thenReturn(Collections.singletonList(imported));
+    UserDto userDto = new UserDto();
+    userDto.setLogin("Alice");
+    userDto.setFirstName("Alice");
+    userDto.setLastName("Smith");
+    userDto.setEmail("alice@example.com");
+    userDto.setLangKey("en");
+    userDto.setActivated(true);
+
+    userService.importUser(userDto, "row-hash", "password-hash");
+
+    Map<String, Object> userRow = writtenRows.get("sys_user").get(0);
+    Map<String, Object> hashRow = writtenRows.get("sys_user_import_hash").get(0);
+    assertThat(hashRow).containsEntry("user_id", 1L).containsEntry("row_hash", "row-hash");
+    // findImportHashes only returns the hash of a user not modified since this date
+    assertThat(hashRow.get("imported_date")).isEqualTo(userRow.get("last_modified_date"));
+  }
+
+  @Test
+  public void findImportHashesMatchesImportedDateWithLastModifiedDate() {
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+
+    userService.findImportHashes(Collections.singleton("alice"));
+
+    verify(jdbcTemplate).query(sql.capture(), anyMap(), any(RowCallbackHandler.class));
+    assertThat(sql.getValue()).contains("h.imported_date = u.last_modified_date");
+  }
+
+  /**
+   * Run the upserts of {@link com.lebinh.skeleton.repository.BatchUpsert} against mocks of a MySQL
+   * database without any row.
+   *
+   * @return the rows written to each table, by column name
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, List<Map<String, Object>>> mockBatchUpserts() throws Exception {
+    Map<String, List<Map<String, Object>>> writtenRows = new HashMap<>();
+    JdbcOperations jdbcOperations = mock(JdbcOperations.class);
+    Connection connection = mock(Connection.class, RETURNS_DEEP_STUBS);
+    when(connection.getMetaData().getDatabaseProductName()).thenReturn("MySQL");
+    when(jdbcTemplate.getJdbcOperations()).thenReturn(jdbcOperations);
+    when(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Object.class)))
+        .thenReturn(new ArrayList<>());
+    when(jdbcOperations.execute(any(ConnectionCallback.class)))
+        .thenAnswer(i -> i.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+    when(jdbcOperations.batchUpdate(
+            anyString(),
+            anyCollection(),
+            anyInt(),
+            any(ParameterizedPreparedStatementSetter.class)))
+        .thenAnswer(
+            i -> {
+              // insert into <table> (<columns>) values ...
+              String sql = i.getArgument(0);
+              String table = sql.split(" ")[2];
+              String[] columns =
+                  sql.substring(sql.indexOf('(') + 1, sql.indexOf(')')).split(", ");
+              ParameterizedPreparedStatementSetter<Object> setter = i.getArgument(3);
+              for (Object row : i.<Collection<Object>>getArgument(1)) {
+                Map<String, Object> values = new HashMap<>();
+                PreparedStatement ps =
+                    mock(
+                        PreparedStatement.class,
+                        call -> {
+                          if (call.getMethod().getName().startsWith("set")) {
+                            int index = call.getArgument(0);
+                            values.put(columns[index - 1], call.getArgument(1));
+                          }
+                          return Mockito.RETURNS_DEFAULTS.answer(call);
+                        });
+                setter.setValues(ps, row);
+                writtenRows.computeIfAbsent(table, key -> new ArrayList<>()).add(values);
+              }
+              return new int[0][];
+            });
+    return writtenRows;
+  }
+
+  private UserDto userDto(String... authorityNames) {
+    UserDto userDto = new UserDto(user);
+    userDto.setAuthorities(new HashSet<>(Arrays.asList(authorityNames)));
+    return userDto;
+  }
+
+  private static Authority authority(String name) {
+    Authority authority = new Authority();
+    authority.setName(name);
+    return authority;
+  }
+
+  /** Counts the mutations Hibernate would see on a persistent collection. */
+  private static class WriteTrackingSet<E> extends AbstractSet<E> {
+
+    private final Set<E> delegate = new HashSet<>();
+
+    private int writes;
+
+    @Override
+    public boolean add(E e) {
+      writes++;
+      return delegate.add(e);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      Iterator<E> iterator = delegate.iterator();
+      return new Iterator<E>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public E next() {
+          return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+          writes++;
+          iterator.remove();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return delegate.size();
+    }
+  }
+}
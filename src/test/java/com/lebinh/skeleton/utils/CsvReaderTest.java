@@ -0,0 +1,107 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.lebinh.skeleton.utils.SheetSchema.ColumnType;
+
+public class CsvReaderTest {
+
+  private SheetSchema schema;
+
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    schema =
+        new SheetSchema(0)
+            .column("login", ColumnType.STRING, true)
+            .column("age", ColumnType.LONG, false)
+            .column("active", ColumnType.BOOLEAN, false);
+    file = Files.createTempFile("csv-", ".csv");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.delete(file);
+  }
+
+  @Test
+  public void readsRangesOfQuotedRecords() throws Exception {
+    write(
+        "\uFEFFActive,ignored,AGE,Login\r\n"
+            + "true,\"x, \"\"quoted\"\"\",42,john\r\n"
+            + "\r\n"
+            + "no,\"two\nlines\",12.0,\"  jane \"\n"
+            + "maybe,,old,\n"
+            + "false,,7,\"\u00e9\"");
+    CsvReader reader = CsvReader.open(file, schema);
+    List<CsvReader.Range> ranges = new ArrayList<>();
+    reader.split(2, ranges::add);
+
+    assertThat(ranges).extracting(CsvReader.Range::getFirstLine).containsExactly(2, 4, 6);
+    List<String> records = new ArrayList<>();
+    for (CsvReader.Range range : ranges) {
+      reader.read(range).forEach(record -> records.add(toString(record)));
+    }
+    assertThat(records)
+        .containsExactly(
+            "2:john:42:true:null",
+            "4:jane:12:false:null",
+            "5:null:null:null:active: not a boolean 'maybe', age: not a number 'old', "
+                + "login: must not be empty",
+            "6:\u00e9:7:false:null");
+  }
+
+  @Test
+  public void splitsOnQuotesInsideUnquotedFields() throws Exception {
+    write(
+        "login,note,age\n"
+            + "john,5\" tall,42\n"
+            + "jane,\"a \"\"b\"\"\nc\",12\n"
+            + "joe,say \"hi,7\n");
+    CsvReader reader = CsvReader.open(file, schema);
+    List<CsvReader.Range> ranges = new ArrayList<>();
+    reader.split(1, ranges::add);
+
+    assertThat(ranges).extracting(CsvReader.Range::getFirstLine).containsExactly(2, 3, 4);
+    List<String> records = new ArrayList<>();
+    for (CsvReader.Range range : ranges) {
+      reader.read(range).forEach(record -> records.add(toString(record)));
+    }
+    assertThat(records)
+        .containsExactly("2:john:42:null:null", "3:jane:12:null:null", "4:joe:7:null:null");
+  }
+
+  @Test
+  public void rejectsMissingRequiredColumn() throws Exception {
+    write("age,active\n1,true\n");
+
+    assertThatThrownBy(() -> CsvReader.open(file, schema))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Missing columns login on line 1");
+  }
+
+  private void write(String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String toString(SheetRecord record) {
+    return record.getLine()
+        + ":"
+        + record.getString(0)
+        + ":"
+        + record.getLong(1)
+        + ":"
+        + record.getBoolean(2)
+        + ":"
+        + record.getError();
+  }
+}
@@ -0,0 +1,49 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class FileBackedSharedStringsTableTest {
+
+  @Test
+  public void readsStringsFromDiskThroughBoundedCache() throws Exception {
+    Path file = Files.createTempFile("shared-strings-", ".xlsx");
+    try (XSSFWorkbook workbook = new XSSFWorkbook();
+        OutputStream out = Files.newOutputStream(file)) {
+      Sheet sheet = workbook.createSheet("users");
+      for (int i = 0; i < 100; i++) {
+        sheet.createRow(i).createCell(0).setCellValue("user " + i + " été");
+      }
+      XSSFFont bold = workbook.createFont();
+      bold.setBold(true);
+      XSSFRichTextString richText = new XSSFRichTextString("rich text");
+      richText.applyFont(0, 4, bold);
+      sheet.createRow(100).createCell(0).setCellValue(richText);
+      workbook.write(out);
+    }
+
+    try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+        FileBackedSharedStringsTable strings = new FileBackedSharedStringsTable(pkg, 10)) {
+      assertThat(strings.getUniqueCount()).isEqualTo(101);
+      assertThat(strings.getEntryAt(0)).isEqualTo("user 0 été");
+      assertThat(strings.getEntryAt(99)).isEqualTo("user 99 été");
+      assertThat(strings.getEntryAt(100)).isEqualTo("rich text");
+      // read again once evicted from the cache
+      for (int i = 0; i < 100; i++) {
+        assertThat(strings.getEntryAt(i)).isEqualTo("user " + i + " été");
+      }
+      assertThat(strings.getItems()).hasSize(101).endsWith("rich text");
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
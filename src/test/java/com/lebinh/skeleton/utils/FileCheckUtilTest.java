@@ -0,0 +1,57 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class FileCheckUtilTest {
+
+  private final FileCheckUtil.ZipLimits limits =
+      new FileCheckUtil.ZipLimits(100, 64 * 1024 * 1024, 100);
+
+  @Test
+  public void checkXlsxContentAcceptsWorkbook() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      workbook.createSheet("users").createRow(0).createCell(0).setCellValue("login");
+      workbook.write(out);
+    }
+
+    assertThat(check(out.toByteArray())).isNull();
+  }
+
+  @Test
+  public void checkXlsxContentRejectsOtherContent() throws IOException {
+    assertThat(check("login,email".getBytes())).isEqualTo("Not an xlsx file");
+    assertThat(check(zip("a.txt", 1)))
+        .isEqualTo("Not an xlsx file, missing [Content_Types].xml, xl/workbook.xml");
+  }
+
+  @Test
+  public void checkXlsxContentRejectsZipBomb() throws IOException {
+    // 8 MB of zeros deflate to about 8 KB
+    assertThat(check(zip("xl/workbook.xml", 8)))
+        .isEqualTo("Suspicious compression ratio of entry xl/workbook.xml");
+  }
+
+  private String check(byte[] content) throws IOException {
+    return FileCheckUtil.checkXlsxContent(new ByteArrayInputStream(content), limits).orElse(null);
+  }
+
+  private static byte[] zip(String entryName, int megabytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.putNextEntry(new ZipEntry(entryName));
+      byte[] zeros = new byte[1024 * 1024];
+      for (int i = 0; i < megabytes; i++) {
+        zip.write(zeros);
+      }
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,109 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class FileUtilTest {
+
+  private static final String HASH =
+      "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+  private static final String ETAG = "\"" + HASH + "\"";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+
+  private MockHttpServletRequest request;
+
+  private MockHttpServletResponse response;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.write(folder.newFile().toPath(), "0123456789".getBytes(StandardCharsets.UTF_8));
+    request = new MockHttpServletRequest("GET", "/api/files/" + HASH);
+    response = new MockHttpServletResponse();
+  }
+
+  @Test
+  public void servesSingleRange() throws IOException {
+    request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+    request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+    assertThat(response.getContentLengthLong()).isEqualTo(3);
+    assertThat(response.getContentAsString()).isEqualTo("234");
+  }
+
+  @Test
+  public void servesWholeFileWhenIfRangeDoesNotMatch() throws IOException {
+    request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+    request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+    assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+    assertThat(response.getContentAsString()).isEqualTo("0123456789");
+  }
+
+  @Test
+  public void rejectsUnsatisfiableRange() throws IOException {
+    request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getStatus()).isEqualTo(416);
+    assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    assertThat(response.getContentAsByteArray()).isEmpty();
+  }
+
+  @Test
+  public void servesHtmlAsAttachment() throws IOException {
+    Files.write(file, "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8));
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getContentType()).isEqualTo("application/octet-stream");
+    assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isEqualTo("attachment");
+    assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+  }
+
+  @Test
+  public void servesImageInline() throws IOException {
+    Files.write(file, new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0});
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getContentType()).isEqualTo("image/png");
+    assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isNull();
+    assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+  }
+
+  @Test
+  public void handsRangeToSendfile() throws IOException {
+    request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+    request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+    FileUtil.serve(file, HASH, request, response);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(7L);
+    assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(10L);
+    assertThat(response.getContentAsByteArray()).isEmpty();
+  }
+}
@@ -0,0 +1,122 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+import com.lebinh.skeleton.utils.SheetSchema.ColumnType;
+
+public class SpreadSheetUtilTest {
+
+  private SheetSchema schema;
+
+  private List<String> records;
+
+  @Before
+  public void setUp() {
+    schema =
+        new SheetSchema(0)
+            .column("login", ColumnType.STRING, true)
+            .column("age", ColumnType.LONG, false)
+            .column("active", ColumnType.BOOLEAN, false);
+    records = new ArrayList<>();
+  }
+
+  @Test
+  public void readSheetResolvesColumnsByNameAndConvertsCells() throws Exception {
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      Sheet sheet = workbook.createSheet("users");
+      // columns in another order than the schema, with an extra column
+      row(sheet, 0, "Active", "ignored", "AGE", "Login");
+      row(sheet, 1, true, "x", 42, "john");
+      row(sheet, 3, "no", null, "12.0", "jane");
+      row(sheet, 4, "maybe", null, "old", null);
+      // a comma is a decimal or a grouping separator depending on the locale, so it is refused
+      row(sheet, 5, null, null, "1,5", "joe");
+
+      SpreadSheetUtil.readSheet(sheet, schema, this::collect);
+    }
+
+    assertThat(records)
+        .containsExactly(
+            "2:john:42:true:null",
+            "4:jane:12:false:null",
+            "5:null:null:null:age: not a number 'old', active: not a boolean 'maybe', "
+                + "login: must not be empty",
+            "6:joe:null:null:age: not a number '1,5'");
+  }
+
+  @Test
+  public void readSheetRejectsMissingRequiredColumn() throws Exception {
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      Sheet sheet = workbook.createSheet("users");
+      row(sheet, 0, "age", "active");
+
+      assertThatThrownBy(() -> SpreadSheetUtil.readSheet(sheet, schema, this::collect))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("Missing columns login on line 1");
+    }
+  }
+
+  @Test
+  public void readSheetStreamsFileWithoutWorkbook() throws Exception {
+    Path file = Files.createTempFile("spreadsheet-", ".xlsx");
+    try (XSSFWorkbook workbook = new XSSFWorkbook();
+        OutputStream out = Files.newOutputStream(file)) {
+      row(workbook.createSheet("info"), 0, "not read");
+      Sheet sheet = workbook.createSheet("users");
+      row(sheet, 0, "login", "age", "active");
+      row(sheet, 1, "john", 42, true);
+      row(sheet, 2, "jane", 7, false);
+      row(sheet, 3, "stop", 0, false);
+      workbook.write(out);
+    }
+    try {
+      assertThat(SpreadSheetUtil.readSheet(file, "missing", schema, this::collect)).isFalse();
+      assertThat(
+              SpreadSheetUtil.readSheet(
+                  file, "users", schema, record -> collect(record) && records.size() < 2))
+          .isTrue();
+    } finally {
+      Files.delete(file);
+    }
+
+    assertThat(records).containsExactly("2:john:42:true:null", "3:jane:7:false:null");
+  }
+
+  private boolean collect(SheetRecord record) {
+    records.add(
+        record.getLine()
+            + ":"
+            + record.getString(0)
+            + ":"
+            + record.getLong(1)
+            + ":"
+            + record.getBoolean(2)
+            + ":"
+            + record.getError());
+    return true;
+  }
+
+  private static void row(Sheet sheet, int rowNo, Object... values) {
+    Row row = sheet.createRow(rowNo);
+    for (int i = 0; i < values.length; i++) {
+      Object value = values[i];
+      if (value instanceof Number) {
+        row.createCell(i).setCellValue(((Number) value).doubleValue());
+      } else if (value instanceof Boolean) {
+        row.createCell(i).setCellValue((Boolean) value);
+      } else if (value != null) {
+        row.createCell(i).setCellValue(value.toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.lebinh.skeleton.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkbookInfoTest {
+
+  private static final String WORKBOOK =
+      "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+          + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+          + "<sheets>"
+          + "<sheet name=\"users\" sheetId=\"2\" r:id=\"rId2\"/>"
+          + "<sheet name=\"info\" sheetId=\"1\" r:id=\"rId1\"/>"
+          + "</sheets></workbook>";
+
+  private static final String RELATIONSHIPS =
+      "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+          + "<Relationship Id=\"rId1\" Target=\"worksheets/sheet1.xml\"/>"
+          + "<Relationship Id=\"rId2\" Target=\"/xl/worksheets/sheet2.xml\"/>"
+          + "<Relationship Id=\"rId3\" TargetMode=\"External\"/>"
+          + "</Relationships>";
+
+  private static final String EMPTY_SHEET = sheet("<sheetData/>");
+
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Files.createTempFile("workbook-", ".xlsx");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.delete(file);
+  }
+
+  @Test
+  public void readsSheetsInWorkbookOrderWithTheirFirstRow() throws Exception {
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      workbook.createSheet("info");
+      Sheet users = workbook.createSheet("users");
+      // the header is not on the first line, and has a gap and a numeric cell
+      Row header = users.createRow(2);
+      header.createCell(0).setCellValue("login");
+      header.createCell(2).setCellValue("email");
+      header.createCell(3).setCellValue(42);
+      users.createRow(3).createCell(0).setCellValue("john");
+      workbook.setSheetOrder("users", 0);
+      try (OutputStream out = Files.newOutputStream(file)) {
+        workbook.write(out);
+      }
+    }
+
+    WorkbookInfo workbook = WorkbookInfo.read(file);
+
+    assertThat(workbook.getSheetNames()).containsExactly("users", "info");
+    WorkbookInfo.SheetInfo users = workbook.getSheet("users").get();
+    assertThat(users.getFirstRowNo()).isEqualTo(2);
+    // the raw value of a numeric cell, as written by POI
+    assertThat(users.getFirstRow()).containsExactly("login", null, "email", "42.0");
+    assertThat(workbook.getSheet("info").get().getFirstRowNo()).isEqualTo(-1);
+    assertThat(workbook.getSheet("info").get().getFirstRow()).isEmpty();
+    assertThat(workbook.getSheet("missing")).isEmpty();
+  }
+
+  @Test
+  public void resolvesSharedStringsWithoutTheirPhoneticRuns() throws Exception {
+    write(
+        sheet(
+            "<sheetData><row r=\"1\">"
+                + "<c r=\"A1\" t=\"s\"><v>2</v></c>"
+                + "<c r=\"B1\" t=\"s\"><v>0</v></c>"
+                + "</row></sheetData>"),
+        "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<si><t>login</t></si>"
+            + "<si><t>unused</t></si>"
+            + "<si><r><t>first</t></r><r><t>_name</t></r>"
+            + "<rPh sb=\"0\" eb=\"5\"><t>furigana</t></rPh></si>"
+            + "</sst>");
+
+    WorkbookInfo.SheetInfo users = WorkbookInfo.read(file).getSheet("users").get();
+
+    assertThat(users.getFirstRowNo()).isEqualTo(0);
+    assertThat(users.getFirstRow()).containsExactly("first_name", "login");
+  }
+
+  @Test
+  public void readsInlineStringsAndCellsWithoutReference() throws Exception {
+    write(
+        sheet(
+            "<sheetData><row>"
+                + "<c t=\"inlineStr\"><is><t>login</t></is></c>"
+                + "<c t=\"inlineStr\"><is><t>email</t></is></c>"
+                + "<c r=\"D1\" t=\"inlineStr\"><is><t>activated</t></is></c>"
+                + "<c><v>1</v></c>"
+                + "</row><row r=\"2\"><c t=\"inlineStr\"><is><t>john</t></is></c></row>"
+                + "</sheetData>"),
+        null);
+
+    WorkbookInfo.SheetInfo users = WorkbookInfo.read(file).getSheet("users").get();
+
+    assertThat(users.getFirstRowNo()).isEqualTo(0);
+    assertThat(users.getFirstRow()).containsExactly("login", "email", null, "activated", "1");
+  }
+
+  @Test
+  public void rejectsBadPartsWithIOException() throws Exception {
+    Files.write(file, "login,email\n".getBytes(StandardCharsets.UTF_8));
+    assertThatThrownBy(() -> WorkbookInfo.read(file)).isInstanceOf(IOException.class);
+
+    // a shared string cell without the shared strings part
+    write(
+        sheet("<sheetData><row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row></sheetData>"),
+        null);
+    assertThatThrownBy(() -> WorkbookInfo.read(file))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Missing part xl/sharedStrings.xml");
+
+    write(sheet("<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></row></sheetData>"), null);
+    assertThatThrownBy(() -> WorkbookInfo.read(file))
+        .isInstanceOf(IOException.class)
+        .hasMessageStartingWith("Invalid xlsx file");
+
+    write(sheet("<sheetData><row r=\"one\"><c r=\"A1\"><v>1</v></c></row></sheetData>"), null);
+    assertThatThrownBy(() -> WorkbookInfo.read(file))
+        .isInstanceOf(IOException.class)
+        .hasMessageStartingWith("Invalid xlsx file");
+
+    write(sheet("<sheetData><row r=\"1\"><c r=\"1A\"><v>1</v></c></row></sheetData>"), null);
+    assertThatThrownBy(() -> WorkbookInfo.read(file))
+        .isInstanceOf(IOException.class)
+        .hasMessageStartingWith("Invalid xlsx file");
+
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put("xl/workbook.xml", WORKBOOK);
+    entries.put("xl/_rels/workbook.xml.rels", RELATIONSHIPS.replace("rId1", "rId9"));
+    entries.put("xl/worksheets/sheet2.xml", EMPTY_SHEET);
+    writeZip(entries);
+    assertThatThrownBy(() -> WorkbookInfo.read(file))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Missing part of sheet info");
+  }
+
+  private static String sheet(String sheetData) {
+    return "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+        + sheetData
+        + "</worksheet>";
+  }
+
+  /** Write a workbook listing the given users sheet before an empty info sheet. */
+  private void write(String usersSheet, String sharedStrings) throws IOException {
+    Map<String, String> entries = new LinkedHashMap<>();
+    entries.put("xl/workbook.xml", WORKBOOK);
+    entries.put("xl/_rels/workbook.xml.rels", RELATIONSHIPS);
+    entries.put("xl/worksheets/sheet1.xml", EMPTY_SHEET);
+    entries.put("xl/worksheets/sheet2.xml", usersSheet);
+    if (sharedStrings != null) {
+      entries.put("xl/sharedStrings.xml", sharedStrings);
+    }
+    writeZip(entries);
+  }
+
+  private void writeZip(Map<String, String> entries) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file))) {
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+}
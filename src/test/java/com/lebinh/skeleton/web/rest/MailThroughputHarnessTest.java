@@ -0,0 +1,395 @@
+package com.lebinh.skeleton.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import com.lebinh.skeleton.config.ApplicationProperties;
+import com.lebinh.skeleton.config.ExecutorStats;
+import com.lebinh.skeleton.config.ThymeleafConfiguration;
+import com.lebinh.skeleton.entity.Authority;
+import com.lebinh.skeleton.entity.OutboxMail;
+import com.lebinh.skeleton.entity.User;
+import com.lebinh.skeleton.repository.AuthorityRepository;
+import com.lebinh.skeleton.repository.OutboxMailRepository;
+import com.lebinh.skeleton.repository.UserRepository;
+import com.lebinh.skeleton.service.MailDispatcher;
+import com.lebinh.skeleton.service.MailService;
+import com.lebinh.skeleton.service.MailTemplateRenderer;
+import com.lebinh.skeleton.service.UserSearchService;
+import com.lebinh.skeleton.service.UserService;
+import com.lebinh.skeleton.service.dto.MailStatsDto;
+import com.lebinh.skeleton.web.rest.vm.ManagedUserVm;
+
+/**
+ * Throughput harness of the mail pipeline, from {@link AccountResource} to an in-process {@link
+ * SmtpSink}: registrations and password resets are requested at a fixed rate, and the dispatcher
+ * sends their mails through the real renderer, executor and {@link JavaMailSenderImpl}. The
+ * database is replaced by in-memory repositories, so that the harness measures the pipeline
+ * itself.
+ *
+ * <p>It reports the delivered mails per second, the latency percentiles from the request to the
+ * delivery, and the depth of the outbox and of the mail executor every sample period. It only runs
+ * with <code>-Dmail.harness=true</code>; the other <code>mail.harness.*</code> properties set the
+ * load, e.g. <code>-Dmail.harness.batch-size=1</code> to compare with one connection per mail.
+ */
+public class MailThroughputHarnessTest {
+
+  private static final String ACTIVATION_TITLE = "email.activation.title";
+
+  private static final String RESET_TITLE = "email.reset.title";
+
+  private final Logger log = LoggerFactory.getLogger(MailThroughputHarnessTest.class);
+
+  private final int rate = Integer.getInteger("mail.harness.rate", 50);
+
+  private final int seconds = Integer.getInteger("mail.harness.seconds", 10);
+
+  private final int batchSize = Integer.getInteger("mail.harness.batch-size", 100);
+
+  private final int workers = Integer.getInteger("mail.harness.workers", 2);
+
+  private final long dispatchIntervalMillis =
+      Long.getLong("mail.harness.dispatch-interval-millis", 100);
+
+  private final long greetingDelayMillis = Long.getLong("mail.harness.greeting-delay-millis", 0);
+
+  private final long sampleMillis = Long.getLong("mail.harness.sample-millis", 1000);
+
+  private final Map<Long, User> users = new ConcurrentHashMap<>();
+
+  private final ConcurrentNavigableMap<Long, OutboxMail> outbox = new ConcurrentSkipListMap<>();
+
+  private final AtomicLong ids = new AtomicLong();
+
+  // request times of the mails not delivered yet, per recipient and subject
+  private final Map<String, Queue<Long>> requested = new ConcurrentHashMap<>();
+
+  private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong lastDeliveryNanos = new AtomicLong();
+
+  private SmtpSink smtpSink;
+
+  private ThreadPoolTaskExecutor mailExecutor;
+
+  private ScheduledExecutorService scheduler;
+
+  private MailTemplateRenderer renderer;
+
+  private MailDispatcher mailDispatcher;
+
+  private AccountResource accountResource;
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue("Set -Dmail.harness=true to run", Boolean.getBoolean("mail.harness"));
+
+    smtpSink = new SmtpSink(this::delivered, greetingDelayMillis);
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    ApplicationProperties.Mail mail = applicationProperties.getMail();
+    mail.setBatchSize(batchSize);
+    mail.setWorkers(workers);
+
+    ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+    messageSource.setBasename("i18n/messages");
+    messageSource.setDefaultEncoding("UTF-8");
+    renderer =
+        new MailTemplateRenderer(
+            new ThymeleafConfiguration().emailTemplateResolver(applicationProperties),
+            messageSource,
+            applicationProperties);
+
+    UserRepository userRepository = userRepository();
+    OutboxMailRepository outboxMailRepository = outboxMailRepository();
+    MailService mailService = new MailService(outboxMailRepository, userRepository, renderer);
+    UserService userService =
+        new UserService(
+            userRepository,
+            stub(PasswordEncoder.class),
+            authorityRepository(),
+            stub(UserSearchService.class),
+            mailService,
+            stub(NamedParameterJdbcTemplate.class),
+            applicationProperties);
+    accountResource = new AccountResource(userRepository, userService);
+
+    // as configured by AsyncConfiguration
+    ExecutorStats mailExecutorStats = new ExecutorStats();
+    mailExecutor = new ThreadPoolTaskExecutor();
+    mailExecutor.setCorePoolSize(workers);
+    mailExecutor.setMaxPoolSize(workers);
+    mailExecutor.setQueueCapacity(workers);
+    mailExecutor.setTaskDecorator(mailExecutorStats);
+    mailExecutor.setRejectedExecutionHandler(
+        mailExecutorStats.countRejections(new ThreadPoolExecutor.AbortPolicy()));
+    mailExecutor.setThreadNamePrefix("harness-Mail-");
+    mailExecutor.initialize();
+
+    JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl();
+    javaMailSender.setHost("localhost");
+    javaMailSender.setPort(smtpSink.getPort());
+    Properties javaMailProperties = new Properties();
+    javaMailProperties.setProperty("mail.smtp.localhost", "harness");
+    javaMailSender.setJavaMailProperties(javaMailProperties);
+
+    mailDispatcher =
+        new MailDispatcher(
+            outboxMailRepository,
+            mailService,
+            javaMailSender,
+            mailExecutor,
+            mailExecutorStats,
+            applicationProperties);
+    scheduler = Executors.newScheduledThreadPool(3);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      mailExecutor.shutdown();
+      smtpSink.close();
+    }
+  }
+
+  @Test
+  public void measureMailThroughput() throws Exception {
+    String activationSubject = renderer.renderSubject(ACTIVATION_TITLE, Locale.ENGLISH);
+    String resetSubject = renderer.renderSubject(RESET_TITLE, Locale.ENGLISH);
+    int total = rate * seconds;
+    AtomicLong requests = new AtomicLong();
+    List<String> samples = Collections.synchronizedList(new ArrayList<>());
+
+    long start = System.nanoTime();
+    // even requests register a user, odd ones activate it and reset its password
+    scheduler.scheduleAtFixedRate(
+        () -> {
+          long n = requests.getAndIncrement();
+          if (n >= total) {
+            return;
+          }
+          String email = "user" + (n / 2) + "@localhost";
+          if (n % 2 == 0) {
+            expect(email, activationSubject);
+            accountResource.registerAccount(managedUser(n / 2, email));
+          } else {
+            accountResource.activateAccount(
+                findUser(u -> email.equals(u.getEmail())).getActivationKey());
+            expect(email, resetSubject);
+            accountResource.requestPasswordReset(email);
+          }
+        },
+        0,
+        TimeUnit.SECONDS.toNanos(1) / rate,
+        TimeUnit.NANOSECONDS);
+    scheduler.scheduleWithFixedDelay(
+        mailDispatcher::dispatch, 0, dispatchIntervalMillis, TimeUnit.MILLISECONDS);
+    scheduler.scheduleAtFixedRate(
+        () -> samples.add(sample(start)), sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+
+    // the load, then at most as long again to drain the outbox
+    long deadline = start + TimeUnit.SECONDS.toNanos(seconds * 2L + 5);
+    while (smtpSink.getMessageCount() < total && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    scheduler.shutdownNow();
+    samples.add(sample(start));
+
+    report(total, start, samples);
+    // a pipeline slower than the load leaves mails pending, which the report shows
+    assertThat(outbox.values()).noneMatch(mail -> mail.getStatus() == OutboxMail.Status.DEAD);
+  }
+
+  private void expect(String recipient, String subject) {
+    requested
+        .computeIfAbsent(recipient + '|' + subject, key -> new ConcurrentLinkedQueue<>())
+        .add(System.nanoTime());
+  }
+
+  private void delivered(List<String> recipients, String subject, long receivedNanos) {
+    for (String recipient : recipients) {
+      Queue<Long> times = requested.get(recipient + '|' + subject);
+      Long requestedNanos = times == null ? null : times.poll();
+      if (requestedNanos != null) {
+        latencies.add(receivedNanos - requestedNanos);
+      }
+    }
+    lastDeliveryNanos.accumulateAndGet(receivedNanos, Math::max);
+  }
+
+  private String sample(long start) {
+    MailStatsDto stats = mailDispatcher.getStats();
+    return String.format(
+        "t=%5.1fs delivered=%6d outbox pending=%5d batches in flight=%d"
+            + " executor queued=%d active=%d",
+        (System.nanoTime() - start) / 1e9,
+        smtpSink.getMessageCount(),
+        stats.getPendingMails(),
+        stats.getBatchesInFlight(),
+        stats.getQueuedTasks(),
+        stats.getActiveTasks());
+  }
+
+  private void report(int total, long start, List<String> samples) {
+    List<Long> sorted = latencies.stream().sorted().collect(Collectors.toList());
+    double elapsedSeconds = (lastDeliveryNanos.get() - start) / 1e9;
+    long delivered = smtpSink.getMessageCount();
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "%nMail throughput: %d mails requested at %d/s, batches of %d, %d workers%n",
+            total, rate, batchSize, workers));
+    samples.forEach(sample -> report.append("  ").append(sample).append(System.lineSeparator()));
+    report.append(
+        String.format(
+            "Delivered %d mails, %d undelivered, in %.1fs: %.1f mails/s"
+                + " over %d connections (%.1f mails each)%n",
+            delivered,
+            total - delivered,
+            elapsedSeconds,
+            delivered / elapsedSeconds,
+            smtpSink.getConnectionCount(),
+            delivered / (double) Math.max(1, smtpSink.getConnectionCount())));
+    report.append(
+        String.format(
+            "Latency ms: p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+            percentile(sorted, 50),
+            percentile(sorted, 90),
+            percentile(sorted, 99),
+            percentile(sorted, 100)));
+    log.info(report.toString());
+  }
+
+  private static double percentile(List<Long> sorted, int percentile) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, index)) / 1e6;
+  }
+
+  private static ManagedUserVm managedUser(long n, String email) {
+    ManagedUserVm user = new ManagedUserVm();
+    user.setLogin("user" + n);
+    user.setEmail(email);
+    user.setPassword("password");
+    user.setLangKey("en");
+    return user;
+  }
+
+  private User findUser(Predicate<User> predicate) {
+    return users.values().stream().filter(predicate).findFirst().orElse(null);
+  }
+
+  private Optional<User> findOneUser(Predicate<User> predicate) {
+    return Optional.ofNullable(findUser(predicate));
+  }
+
+  /** @return a mock which does not record its invocations, to be called from many threads */
+  private static <T> T stub(Class<T> type) {
+    return mock(type, withSettings().stubOnly());
+  }
+
+  private UserRepository userRepository() {
+    UserRepository userRepository = stub(UserRepository.class);
+    when(userRepository.save(any()))
+        .thenAnswer(
+            i -> {
+              User user = i.getArgument(0);
+              if (user.getId() == null) {
+                user.setId(ids.incrementAndGet());
+              }
+              users.put(user.getId(), user);
+              return user;
+            });
+    when(userRepository.findById(any()))
+        .thenAnswer(i -> Optional.ofNullable(users.get(i.<Long>getArgument(0))));
+    when(userRepository.findOneByLogin(anyString()))
+        .thenAnswer(i -> findOneUser(u -> u.getLogin().equals(i.getArgument(0))));
+    when(userRepository.findOneByEmailIgnoreCase(anyString()))
+        .thenAnswer(i -> findOneUser(u -> u.getEmail().equalsIgnoreCase(i.getArgument(0))));
+    when(userRepository.findOneByActivationKey(anyString()))
+        .thenAnswer(i -> findOneUser(u -> i.getArgument(0).equals(u.getActivationKey())));
+    return userRepository;
+  }
+
+  private OutboxMailRepository outboxMailRepository() {
+    OutboxMailRepository outboxMailRepository = stub(OutboxMailRepository.class);
+    when(outboxMailRepository.save(any()))
+        .thenAnswer(
+            i -> {
+              OutboxMail mail = i.getArgument(0);
+              mail.setId(ids.incrementAndGet());
+              outbox.put(mail.getId(), mail);
+              return mail;
+            });
+    when(outboxMailRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
+    when(outboxMailRepository.findAllByStatusAndNextAttemptDateLessThanEqualOrderById(
+            any(), any(), any()))
+        .thenAnswer(
+            i -> {
+              OutboxMail.Status status = i.getArgument(0);
+              Instant date = i.getArgument(1);
+              Pageable pageable = i.getArgument(2);
+              return outbox
+                  .values()
+                  .stream()
+                  .filter(
+                      mail ->
+                          mail.getStatus() == status && !mail.getNextAttemptDate().isAfter(date))
+                  .limit(pageable.getPageSize())
+                  .collect(Collectors.toList());
+            });
+    when(outboxMailRepository.countByStatus(any()))
+        .thenAnswer(
+            i -> outbox.values().stream().filter(m -> m.getStatus() == i.getArgument(0)).count());
+    return outboxMailRepository;
+  }
+
+  private static AuthorityRepository authorityRepository() {
+    AuthorityRepository authorityRepository = stub(AuthorityRepository.class);
+    when(authorityRepository.getOne(anyString()))
+        .thenAnswer(
+            i -> {
+              Authority authority = new Authority();
+              authority.setName(i.getArgument(0));
+              return authority;
+            });
+    return authorityRepository;
+  }
+}
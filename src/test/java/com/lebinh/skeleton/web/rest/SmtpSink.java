@@ -0,0 +1,161 @@
+package com.lebinh.skeleton.web.rest;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process SMTP server accepting every message, for measuring the mail pipeline without a
+ * real mail server. It speaks the commands JavaMail sends, one thread per connection, and hands
+ * each message over with its recipients and subject. A greeting delay simulates the cost of a new
+ * connection to a remote server.
+ */
+class SmtpSink implements Closeable {
+
+  /** Receives the messages accepted by the sink. */
+  interface Listener {
+
+    void received(List<String> recipients, String subject, long receivedNanos);
+  }
+
+  private final ServerSocket serverSocket;
+
+  private final ExecutorService connections = Executors.newCachedThreadPool();
+
+  private final Listener listener;
+
+  private final long greetingDelayMillis;
+
+  private final AtomicLong connectionCount = new AtomicLong();
+
+  private final AtomicLong messageCount = new AtomicLong();
+
+  SmtpSink(Listener listener, long greetingDelayMillis) throws IOException {
+    this.listener = listener;
+    this.greetingDelayMillis = greetingDelayMillis;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    connections.execute(this::accept);
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  long getConnectionCount() {
+    return connectionCount.get();
+  }
+
+  long getMessageCount() {
+    return messageCount.get();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connectionCount.incrementAndGet();
+        connections.execute(() -> serve(socket));
+      } catch (SocketException e) {
+        // closed
+        return;
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1))) {
+      OutputStream out = s.getOutputStream();
+      if (greetingDelayMillis > 0) {
+        Thread.sleep(greetingDelayMillis);
+      }
+      reply(out, "220 sink ESMTP");
+      List<String> recipients = new ArrayList<>();
+      String line;
+      while ((line = in.readLine()) != null) {
+        String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+        switch (command) {
+          case "EHLO":
+          case "HELO":
+          case "NOOP":
+            reply(out, "250 sink");
+            break;
+          case "MAIL":
+          case "RSET":
+            recipients.clear();
+            reply(out, "250 OK");
+            break;
+          case "RCPT":
+            recipients.add(address(line));
+            reply(out, "250 OK");
+            break;
+          case "DATA":
+            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+            String subject = readData(in);
+            messageCount.incrementAndGet();
+            listener.received(new ArrayList<>(recipients), subject, System.nanoTime());
+            recipients.clear();
+            reply(out, "250 OK");
+            break;
+          case "QUIT":
+            reply(out, "221 Bye");
+            return;
+          default:
+            reply(out, "502 Command not implemented");
+        }
+      }
+    } catch (IOException e) {
+      // the client closed the connection
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** @return the subject of the message, whose lines are read up to the terminating dot */
+  private static String readData(BufferedReader in) throws IOException {
+    String subject = null;
+    boolean headers = true;
+    String line;
+    while ((line = in.readLine()) != null && !".".equals(line)) {
+      if (line.isEmpty()) {
+        headers = false;
+      } else if (headers && subject == null && line.startsWith("Subject: ")) {
+        subject = line.substring("Subject: ".length());
+      }
+    }
+    return subject;
+  }
+
+  private static String address(String line) {
+    int start = line.indexOf('<');
+    int end = line.indexOf('>', start + 1);
+    return start >= 0 && end > start ? line.substring(start + 1, end) : line.substring(8).trim();
+  }
+
+  private static void reply(OutputStream out, String reply) throws IOException {
+    out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connections.shutdownNow();
+  }
+}